@@ -35,10 +35,11 @@ CREATE TABLE meal_records (
     dinner DECIMAL(10,2) DEFAULT 0.00 COMMENT '晚饭金额',
     snack DECIMAL(10,2) DEFAULT 0.00 COMMENT '零食金额',
     drink DECIMAL(10,2) DEFAULT 0.00 COMMENT '饮料金额',
-    custom_items TEXT COMMENT '动态餐饮项目(JSON格式)',
+    custom_items TEXT COMMENT '动态餐饮项目(旧JSON格式，已迁移到meal_record_items)',
     total DECIMAL(10,2) DEFAULT 0.00 COMMENT '总金额',
     create_time DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     update_time DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    version INT NOT NULL DEFAULT 0 COMMENT '乐观锁版本号',
     INDEX idx_record_date (record_date),
     INDEX idx_user_id (user_id),
     -- 同一用户同一日期只能有一条记录
@@ -74,6 +75,7 @@ CREATE TABLE diaries (
     content TEXT COMMENT '日记内容',
     create_time DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     update_time DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    version INT NOT NULL DEFAULT 0 COMMENT '乐观锁版本号',
     -- 创建索引
     INDEX idx_user_date (user_id, record_date),
     INDEX idx_user_item_date (user_id, item_name, record_date),
@@ -84,7 +86,43 @@ CREATE TABLE diaries (
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='日记表';
 
 -- ============================================
--- 5. 验证表结构
+-- 5. 创建消费统计汇总表 (meal_stats)
+-- ============================================
+CREATE TABLE meal_stats (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY COMMENT '主键ID',
+    user_id BIGINT NOT NULL COMMENT '用户ID',
+    period VARCHAR(7) NOT NULL COMMENT '统计周期(ALL/yyyy/yyyy-MM)',
+    days INT NOT NULL DEFAULT 0 COMMENT '记录天数',
+    total_amount DECIMAL(14,2) NOT NULL DEFAULT 0.00 COMMENT '消费总额',
+    update_time DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    -- 同一用户同一周期只能有一条汇总
+    UNIQUE KEY uk_user_period (user_id, period),
+    -- 外键约束：删除用户时同时删除其汇总
+    FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='消费统计汇总表';
+
+-- ============================================
+-- 6. 创建餐饮记录动态项目表 (meal_record_items)
+-- ============================================
+CREATE TABLE meal_record_items (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY COMMENT '主键ID',
+    record_id BIGINT NOT NULL COMMENT '餐饮记录ID',
+    user_id BIGINT NOT NULL COMMENT '用户ID',
+    record_date DATE NOT NULL COMMENT '记录日期',
+    item_name VARCHAR(50) COLLATE utf8mb4_bin NOT NULL COMMENT '项目名称(区分大小写，与原JSON键一致)',
+    amount DECIMAL(10,2) DEFAULT NULL COMMENT '项目金额',
+    -- 同一记录的同一项目只能有一行
+    UNIQUE KEY uk_record_item (record_id, item_name),
+    -- 按月读取记录的项目
+    INDEX idx_user_date (user_id, record_date),
+    -- 按项目汇总消费（覆盖索引）
+    INDEX idx_user_item_date (user_id, item_name, record_date, amount),
+    -- 外键约束：删除餐饮记录时同时删除其项目
+    FOREIGN KEY (record_id) REFERENCES meal_records(id) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='餐饮记录动态项目表';
+
+-- ============================================
+-- 7. 验证表结构
 -- ============================================
 -- 查看所有表
 SHOW TABLES;
@@ -94,6 +132,8 @@ DESCRIBE users;
 DESCRIBE meal_records;
 DESCRIBE user_settings;
 DESCRIBE diaries;
+DESCRIBE meal_stats;
+DESCRIBE meal_record_items;
 
 -- ============================================
 -- 脚本执行完成！
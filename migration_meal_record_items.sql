@@ -0,0 +1,26 @@
+-- ============================================
+-- 升级脚本：餐饮记录动态项目表 (meal_record_items)
+-- ============================================
+-- 适用于已有数据的库，可重复执行
+-- 旧的 meal_records.custom_items JSON 数据由应用内的定时任务按主键分批在线迁移
+-- （meal-items.backfill-*），迁移完成的记录其 custom_items 列会被置为 NULL；
+-- 进度和完成标记保存在Redis键 meal_items_backfill:after_id / meal_items_backfill:done 中，
+-- 需要重新扫描时删除这两个键并重启应用。JSON无法解析或项目名称超过50个字符的记录保留原列（日志中有记录）
+
+USE meal_accounting;
+
+CREATE TABLE IF NOT EXISTS meal_record_items (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY COMMENT '主键ID',
+    record_id BIGINT NOT NULL COMMENT '餐饮记录ID',
+    user_id BIGINT NOT NULL COMMENT '用户ID',
+    record_date DATE NOT NULL COMMENT '记录日期',
+    item_name VARCHAR(50) COLLATE utf8mb4_bin NOT NULL COMMENT '项目名称(区分大小写，与原JSON键一致)',
+    amount DECIMAL(10,2) DEFAULT NULL COMMENT '项目金额',
+    UNIQUE KEY uk_record_item (record_id, item_name),
+    INDEX idx_user_date (user_id, record_date),
+    INDEX idx_user_item_date (user_id, item_name, record_date, amount),
+    FOREIGN KEY (record_id) REFERENCES meal_records(id) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='餐饮记录动态项目表';
+
+-- 查看尚未迁移的记录数
+SELECT COUNT(*) AS pending FROM meal_records WHERE custom_items IS NOT NULL AND custom_items <> '';
@@ -0,0 +1,31 @@
+-- ============================================
+-- 升级脚本：消费统计汇总表 (meal_stats)
+-- ============================================
+-- 适用于已有数据的库，可重复执行
+
+USE meal_accounting;
+
+CREATE TABLE IF NOT EXISTS meal_stats (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY COMMENT '主键ID',
+    user_id BIGINT NOT NULL COMMENT '用户ID',
+    period VARCHAR(7) NOT NULL COMMENT '统计周期(ALL/yyyy/yyyy-MM)',
+    days INT NOT NULL DEFAULT 0 COMMENT '记录天数',
+    total_amount DECIMAL(14,2) NOT NULL DEFAULT 0.00 COMMENT '消费总额',
+    update_time DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    UNIQUE KEY uk_user_period (user_id, period),
+    FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='消费统计汇总表';
+
+-- 从明细表回填月、年、全部三级汇总
+INSERT INTO meal_stats (user_id, period, days, total_amount)
+SELECT * FROM (
+    SELECT user_id, DATE_FORMAT(record_date, '%Y-%m') AS period, COUNT(*) AS days, COALESCE(SUM(total), 0) AS total_amount
+    FROM meal_records GROUP BY user_id, DATE_FORMAT(record_date, '%Y-%m')
+    UNION ALL
+    SELECT user_id, DATE_FORMAT(record_date, '%Y'), COUNT(*), COALESCE(SUM(total), 0)
+    FROM meal_records GROUP BY user_id, DATE_FORMAT(record_date, '%Y')
+    UNION ALL
+    SELECT user_id, 'ALL', COUNT(*), COALESCE(SUM(total), 0)
+    FROM meal_records GROUP BY user_id
+) AS s
+ON DUPLICATE KEY UPDATE days = VALUES(days), total_amount = VALUES(total_amount);
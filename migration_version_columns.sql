@@ -0,0 +1,10 @@
+-- ============================================
+-- 升级脚本：餐饮记录和日记的乐观锁版本号 (version)
+-- ============================================
+-- 适用于已有数据的库；已有行的版本号从0开始
+-- MySQL 8.0 下添加带默认值的列为即时操作（ALGORITHM=INSTANT），不会重建表
+
+USE meal_accounting;
+
+ALTER TABLE meal_records ADD COLUMN version INT NOT NULL DEFAULT 0 COMMENT '乐观锁版本号';
+ALTER TABLE diaries ADD COLUMN version INT NOT NULL DEFAULT 0 COMMENT '乐观锁版本号';
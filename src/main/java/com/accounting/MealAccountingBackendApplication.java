@@ -3,9 +3,11 @@ package com.accounting;
 import org.mybatis.spring.annotation.MapperScan;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @MapperScan("com.accounting.mapper")
+@EnableScheduling
 public class MealAccountingBackendApplication {
 
     public static void main(String[] args) {
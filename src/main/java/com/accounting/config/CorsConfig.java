@@ -23,6 +23,9 @@ public class CorsConfig {
         // 允许所有请求方法
         config.addAllowedMethod("*");
         
+        // 允许前端读取ETag，用于 If-Match / If-None-Match 条件请求
+        config.addExposedHeader("ETag");
+        
         // 允许携带凭证
         config.setAllowCredentials(true);
         
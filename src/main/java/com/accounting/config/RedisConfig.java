@@ -1,41 +1,104 @@
 package com.accounting.config;
 
-import com.fasterxml.jackson.annotation.JsonAutoDetect;
-import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.accounting.entity.MealRecord;
+import com.accounting.redis.JsonCodec;
+import com.accounting.redis.MealRecordsCodec;
+import com.accounting.redis.RedisCircuitBreaker;
+import com.accounting.redis.RedisCircuitBreakerPostProcessor;
+import com.accounting.redis.RedisNearCache;
+import com.accounting.redis.RedisValueStore;
+import com.accounting.service.MealMonthCache;
+import com.accounting.service.TokenLocalCache;
+import com.accounting.service.UserCache;
+import com.accounting.service.UserSettingCache;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
-import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.util.List;
 
 @Configuration
 public class RedisConfig {
 
+    /**
+     * 所有Redis访问经过的熔断器
+     */
     @Bean
-    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory connectionFactory) {
-        RedisTemplate<String, Object> template = new RedisTemplate<>();
-        template.setConnectionFactory(connectionFactory);
-
-        // 使用Jackson2JsonRedisSerializer来序列化和反序列化redis的value值
-        Jackson2JsonRedisSerializer<Object> serializer = new Jackson2JsonRedisSerializer<>(Object.class);
+    public RedisCircuitBreaker redisCircuitBreaker(MeterRegistry meterRegistry,
+                                                   @Value("${redis-circuit-breaker.failure-threshold:5}") int failureThreshold,
+                                                   @Value("${redis-circuit-breaker.open-ms:5000}") long openMillis,
+                                                   @Value("${redis-circuit-breaker.slow-call-ms:500}") long slowCallMillis) {
+        return new RedisCircuitBreaker(failureThreshold, openMillis, slowCallMillis, meterRegistry);
+    }
 
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
-        mapper.activateDefaultTyping(LaissezFaireSubTypeValidator.instance, ObjectMapper.DefaultTyping.NON_FINAL);
-        serializer.setObjectMapper(mapper);
+    /**
+     * 给连接工厂套上熔断（BeanPostProcessor需为静态方法，熔断器延迟获取）
+     */
+    @Bean
+    @ConditionalOnProperty(name = "redis-circuit-breaker.enabled", havingValue = "true", matchIfMissing = true)
+    public static RedisCircuitBreakerPostProcessor redisCircuitBreakerPostProcessor(
+            ObjectProvider<RedisCircuitBreaker> redisCircuitBreaker) {
+        return new RedisCircuitBreakerPostProcessor(redisCircuitBreaker);
+    }
 
-        // 使用StringRedisSerializer来序列化和反序列化redis的key值
-        template.setKeySerializer(new StringRedisSerializer());
-        template.setValueSerializer(serializer);
+    /**
+     * 缓存值的编解码：按键前缀选择，默认使用紧凑二进制格式，可逐个前缀切换为普通JSON
+     */
+    @Bean
+    public RedisValueStore redisValueStore(RedisConnectionFactory connectionFactory, ObjectMapper objectMapper,
+                                           @Value("${redis-codec.meal-month:binary}") String mealMonthFormat) {
+        TypeFactory types = objectMapper.getTypeFactory();
+        RedisValueStore store = new RedisValueStore(connectionFactory);
+        store.register(MealMonthCache.CACHE_PREFIX, "json".equals(mealMonthFormat)
+                ? new JsonCodec<List<MealRecord>>(objectMapper, types.constructCollectionType(List.class, MealRecord.class))
+                : new MealRecordsCodec());
+        return store;
+    }
 
-        // Hash的key也采用StringRedisSerializer的序列化方式
-        template.setHashKeySerializer(new StringRedisSerializer());
-        template.setHashValueSerializer(serializer);
+    /**
+     * 用户设置的近端缓存（near-cache.enabled 开启），以键空间通知失效
+     * token校验走 TokenLocalCache 和续期脚本，不经过近端缓存
+     */
+    @Bean
+    public RedisNearCache redisNearCache(RedisConnectionFactory connectionFactory, MeterRegistry meterRegistry,
+                                         @Value("${near-cache.enabled:false}") boolean enabled,
+                                         @Value("${spring.redis.database:0}") int database,
+                                         @Value("${near-cache.maximum-size:10000}") long maximumSize,
+                                         @Value("${near-cache.ttl-seconds:60}") long ttlSeconds,
+                                         @Value("${near-cache.configure-notifications:true}") boolean configureNotifications) {
+        RedisNearCache nearCache = new RedisNearCache(enabled, database, maximumSize, ttlSeconds, meterRegistry)
+                .register(UserSettingCache.CACHE_PREFIX);
+        if (enabled && configureNotifications) {
+            nearCache.enableNotifications(connectionFactory);
+        }
+        return nearCache;
+    }
 
-        template.afterPropertiesSet();
-        return template;
+    /**
+     * 订阅缓存失效广播，使各节点的本地缓存保持一致
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                       TokenLocalCache tokenLocalCache,
+                                                                       UserCache userCache,
+                                                                       MealMonthCache mealMonthCache,
+                                                                       RedisNearCache redisNearCache) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(tokenLocalCache, new ChannelTopic(TokenLocalCache.REVOKE_CHANNEL));
+        container.addMessageListener(userCache, new ChannelTopic(UserCache.EVICT_CHANNEL));
+        container.addMessageListener(mealMonthCache, new ChannelTopic(MealMonthCache.EVICT_CHANNEL));
+        if (redisNearCache.isEnabled()) {
+            container.addMessageListener(redisNearCache, redisNearCache.topics());
+        }
+        return container;
     }
 }
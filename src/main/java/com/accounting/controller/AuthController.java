@@ -1,13 +1,17 @@
 package com.accounting.controller;
 
 import com.accounting.service.UserService;
+import com.accounting.util.JwtPrincipal;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/auth")
@@ -57,7 +61,13 @@ public class AuthController {
             ));
         }
         
-        Map<String, Object> result = userService.register(username, password);
+        Map<String, Object> result;
+        try {
+            result = userService.register(username, password);
+        } catch (RejectedExecutionException e) {
+            logger.warn("密码校验繁忙，拒绝请求: {}", e.getMessage());
+            return tooManyRequests();
+        }
         
         if ((Boolean) result.get("success")) {
             return ResponseEntity.ok(result);
@@ -88,7 +98,13 @@ public class AuthController {
             ));
         }
         
-        Map<String, Object> result = userService.login(username, password);
+        Map<String, Object> result;
+        try {
+            result = userService.login(username, password);
+        } catch (RejectedExecutionException e) {
+            logger.warn("密码校验繁忙，拒绝请求: {}", e.getMessage());
+            return tooManyRequests();
+        }
         
         if ((Boolean) result.get("success")) {
             return ResponseEntity.ok(result);
@@ -97,6 +113,18 @@ public class AuthController {
         }
     }
     
+    /**
+     * 密码哈希线程池已满时快速返回429
+     */
+    private ResponseEntity<Map<String, Object>> tooManyRequests() {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(Map.of(
+                    "success", false,
+                    "message", "服务繁忙，请稍后重试"
+                ));
+    }
+    
     /**
      * 用户登出
      */
@@ -143,16 +171,15 @@ public class AuthController {
         String actualToken = token.substring(7); // 移除 "Bearer " 前缀
         
         try {
-            String username = userService.getJwtUtil().getUsernameFromToken(actualToken);
-            Long userId = userService.getJwtUtil().getUserIdFromToken(actualToken);
+            JwtPrincipal principal = userService.getJwtUtil().parseToken(actualToken);
             
-            if (userService.getJwtUtil().validateToken(actualToken, username)) {
+            if (!principal.isExpired()) {
                 return ResponseEntity.ok(Map.of(
                     "success", true,
                     "message", "token有效",
                     "user", Map.of(
-                        "id", userId,
-                        "username", username
+                        "id", principal.getUserId(),
+                        "username", principal.getUsername()
                     )
                 ));
             } else {
@@ -0,0 +1,53 @@
+package com.accounting.controller;
+
+import com.accounting.util.ETags;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * 条件GET：If-None-Match 与当前ETag一致时返回304，不再读取数据和序列化响应
+ * 响应带 Cache-Control: private, no-cache（只允许客户端缓存，每次使用前用ETag验证）
+ * 按接口统计请求结果（http.conditional.get，result=not_modified/full），可据此计算304比例
+ */
+@Component
+class ConditionalResponses {
+
+    private static final CacheControl CACHE_CONTROL = CacheControl.noCache().cachePrivate();
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * If-None-Match 命中时返回304响应，否则返回null（由调用方生成完整响应）
+     */
+    ResponseEntity<Map<String, Object>> notModified(String endpoint, String ifNoneMatch, String etag) {
+        boolean hit = ifNoneMatch != null && ETags.matchesWeak(ifNoneMatch, etag);
+        counter(endpoint, hit ? "not_modified" : "full").increment();
+        if (!hit) {
+            return null;
+        }
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(CACHE_CONTROL).build();
+    }
+
+    /**
+     * 带ETag和缓存头的200响应
+     */
+    ResponseEntity<Map<String, Object>> ok(String etag, Map<String, Object> body) {
+        return ResponseEntity.ok().eTag(etag).cacheControl(CACHE_CONTROL).body(body);
+    }
+
+    private Counter counter(String endpoint, String result) {
+        return Counter.builder("http.conditional.get")
+                .description("条件GET请求次数")
+                .tag("endpoint", endpoint)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
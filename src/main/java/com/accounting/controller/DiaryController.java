@@ -2,10 +2,14 @@ package com.accounting.controller;
 
 import com.accounting.entity.Diary;
 import com.accounting.service.DiaryService;
+import com.accounting.util.ETags;
+import com.accounting.util.VersionConflictException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -27,11 +31,15 @@ public class DiaryController {
     @Autowired
     private DiaryService diaryService;
     
+    @Autowired
+    private ConditionalResponses conditionalResponses;
+    
     /**
      * 保存或更新日记
      */
     @PostMapping("/save")
-    public ResponseEntity<Map<String, Object>> saveDiary(@RequestBody Map<String, Object> request) {
+    public ResponseEntity<Map<String, Object>> saveDiary(@RequestBody Map<String, Object> request,
+                                                         @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         logger.info("收到保存日记请求: {}", request);
         
         try {
@@ -47,15 +55,21 @@ public class DiaryController {
             }
             
             LocalDate recordDate = LocalDate.parse(dateStr);
-            diaryService.saveOrUpdateDiary(itemName, content, recordDate);
+            Diary diary = diaryService.saveOrUpdateDiary(itemName, content, recordDate, ifMatch);
             
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
             response.put("message", "保存成功");
             
             logger.info("日记保存成功: 项目={}, 日期={}", itemName, recordDate);
-            return ResponseEntity.ok(response);
+            return ResponseEntity.ok().eTag(ETags.of(diary.getId(), diary.getVersion())).body(response);
             
+        } catch (VersionConflictException e) {
+            logger.warn("保存日记版本冲突: {}", e.getMessage());
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(response);
         } catch (Exception e) {
             logger.error("保存日记失败", e);
             Map<String, Object> response = new HashMap<>();
@@ -76,14 +90,17 @@ public class DiaryController {
         logger.info("获取日记内容请求: 项目={}, 日期={}", itemName, date);
         
         try {
-            String content = diaryService.getDiaryContent(itemName, date);
+            Diary diary = diaryService.getDiary(itemName, date);
             
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
-            response.put("data", content);
+            response.put("data", diary != null ? diary.getContent() : "");
             response.put("message", "获取成功");
             
             logger.info("获取日记内容成功: 项目={}, 日期={}", itemName, date);
+            if (diary != null) {
+                return ResponseEntity.ok().eTag(ETags.of(diary.getId(), diary.getVersion())).body(response);
+            }
             return ResponseEntity.ok(response);
             
         } catch (Exception e) {
@@ -100,11 +117,19 @@ public class DiaryController {
      */
     @GetMapping("/list")
     public ResponseEntity<Map<String, Object>> getDiariesByDate(
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         
         logger.info("获取日记列表请求: 日期={}", date);
         
         try {
+            // 先只查询版本摘要，未修改时不再读取日记内容
+            String etag = diaryService.getDiariesETag(date);
+            ResponseEntity<Map<String, Object>> notModified = conditionalResponses.notModified("diary.list", ifNoneMatch, etag);
+            if (notModified != null) {
+                return notModified;
+            }
+            
             List<Diary> diaries = diaryService.getDiariesByDate(date);
             
             Map<String, Object> response = new HashMap<>();
@@ -113,7 +138,7 @@ public class DiaryController {
             response.put("message", "获取成功");
             
             logger.info("获取日记列表成功: 日期={}, 数量={}", date, diaries.size());
-            return ResponseEntity.ok(response);
+            return conditionalResponses.ok(etag, response);
             
         } catch (Exception e) {
             logger.error("获取日记列表失败", e);
@@ -130,12 +155,13 @@ public class DiaryController {
     @DeleteMapping("/delete")
     public ResponseEntity<Map<String, Object>> deleteDiary(
             @RequestParam String itemName,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         
         logger.info("删除日记请求: 项目={}, 日期={}", itemName, date);
         
         try {
-            diaryService.deleteDiary(itemName, date);
+            diaryService.deleteDiary(itemName, date, ifMatch);
             
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
@@ -144,6 +170,12 @@ public class DiaryController {
             logger.info("删除日记成功: 项目={}, 日期={}", itemName, date);
             return ResponseEntity.ok(response);
             
+        } catch (VersionConflictException e) {
+            logger.warn("删除日记版本冲突: {}", e.getMessage());
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(response);
         } catch (Exception e) {
             logger.error("删除日记失败", e);
             Map<String, Object> response = new HashMap<>();
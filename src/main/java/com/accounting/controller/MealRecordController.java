@@ -3,17 +3,29 @@ package com.accounting.controller;
 import com.accounting.dto.MealRecordRequest;
 import com.accounting.dto.DeleteItemsRequest;
 import com.accounting.entity.MealRecord;
+import com.accounting.service.MealExportService;
+import com.accounting.service.MealImportService;
 import com.accounting.service.MealRecordService;
+import com.accounting.util.ETags;
+import com.accounting.util.MealRecordValidator;
+import com.accounting.util.VersionConflictException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import java.math.BigDecimal;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/meal")
@@ -22,6 +34,13 @@ public class MealRecordController {
 
     private static final Logger logger = LoggerFactory.getLogger(MealRecordController.class);
     
+    // 年度对比最多年份数
+    private static final int MAX_COMPARE_YEARS = 10;
+    
+    // 未指定日期时的导出范围（MySQL DATE 的取值范围）
+    private static final LocalDate EXPORT_MIN_DATE = LocalDate.of(1000, 1, 1);
+    private static final LocalDate EXPORT_MAX_DATE = LocalDate.of(9999, 12, 30);
+    
     /**
      * 测试端点
      */
@@ -37,12 +56,22 @@ public class MealRecordController {
 
     @Autowired
     private MealRecordService mealRecordService;
+    
+    @Autowired
+    private MealExportService mealExportService;
+    
+    @Autowired
+    private MealImportService mealImportService;
+    
+    @Autowired
+    private ConditionalResponses conditionalResponses;
 
     /**
      * 保存餐饮记录
      */
     @PostMapping("/save")
-    public ResponseEntity<Map<String, Object>> saveMealRecord(@RequestBody MealRecordRequest request) {
+    public ResponseEntity<Map<String, Object>> saveMealRecord(@RequestBody MealRecordRequest request,
+                                                              @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         logger.info("收到保存餐饮记录请求: {}", request);
         logger.info("请求详情 - 日期: {}, 早饭: {}, 午饭: {}, 晚饭: {}, 零食: {}, 饮料: {}, 动态项目: {}", 
             request.getRecordDate(), request.getBreakfast(), request.getLunch(), 
@@ -50,33 +79,9 @@ public class MealRecordController {
         
         try {
             // 验证请求数据
-            if (request == null) {
-                throw new IllegalArgumentException("请求数据不能为空");
-            }
+            MealRecordValidator.validate(request);
             
-            if (request.getRecordDate() == null) {
-                throw new IllegalArgumentException("记录日期不能为空");
-            }
-            
-            // 验证金额不能为负数
-            if (request.getBreakfast() != null && request.getBreakfast().compareTo(BigDecimal.ZERO) < 0 ||
-                request.getLunch() != null && request.getLunch().compareTo(BigDecimal.ZERO) < 0 ||
-                request.getDinner() != null && request.getDinner().compareTo(BigDecimal.ZERO) < 0 ||
-                request.getSnack() != null && request.getSnack().compareTo(BigDecimal.ZERO) < 0 ||
-                request.getDrink() != null && request.getDrink().compareTo(BigDecimal.ZERO) < 0) {
-                throw new IllegalArgumentException("金额不能为负数");
-            }
-            
-            // 验证动态项目金额不能为负数
-            if (request.getCustomItems() != null) {
-                for (Map.Entry<String, BigDecimal> entry : request.getCustomItems().entrySet()) {
-                    if (entry.getValue() != null && entry.getValue().compareTo(BigDecimal.ZERO) < 0) {
-                        throw new IllegalArgumentException("动态项目 \"" + entry.getKey() + "\" 的金额不能为负数");
-                    }
-                }
-            }
-            
-            MealRecord record = mealRecordService.saveOrUpdate(request);
+            MealRecord record = mealRecordService.saveOrUpdate(request, ifMatch);
             logger.info("餐饮记录保存成功: ID={}, 日期={}", record.getId(), record.getRecordDate());
             
             Map<String, Object> response = new HashMap<>();
@@ -84,7 +89,14 @@ public class MealRecordController {
             response.put("message", "保存成功");
             response.put("data", record);
             
-            return ResponseEntity.ok(response);
+            return ResponseEntity.ok().eTag(ETags.of(record.getId(), record.getVersion())).body(response);
+        } catch (VersionConflictException e) {
+            logger.warn("保存餐饮记录版本冲突: 日期={}", request.getRecordDate());
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(response);
         } catch (IllegalArgumentException e) {
             logger.warn("保存餐饮记录参数错误: {}", e.getMessage());
             Map<String, Object> response = new HashMap<>();
@@ -102,11 +114,49 @@ public class MealRecordController {
         }
     }
 
+    /**
+     * 批量保存多天的餐饮记录，整批在一个事务中写入
+     */
+    @PostMapping("/save-batch")
+    public ResponseEntity<Map<String, Object>> saveMealRecords(@RequestBody List<MealRecordRequest> requests) {
+        logger.info("收到批量保存餐饮记录请求: 条数={}", requests != null ? requests.size() : 0);
+        
+        try {
+            // 与单条保存相同的校验规则，任一条不合法时整批拒绝
+            MealRecordValidator.validateBatch(requests);
+            
+            List<Map<String, Object>> results = mealRecordService.saveBatch(requests);
+            logger.info("批量保存餐饮记录成功: 条数={}", results.size());
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("message", "保存成功");
+            response.put("data", results);
+            
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            logger.warn("批量保存餐饮记录参数错误: {}", e.getMessage());
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "参数错误: " + e.getMessage());
+            
+            return ResponseEntity.badRequest().body(response);
+        } catch (Exception e) {
+            logger.error("批量保存餐饮记录失败", e);
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "保存失败: " + e.getMessage());
+            
+            return ResponseEntity.internalServerError().body(response);
+        }
+    }
+
     /**
      * 根据日期获取餐饮记录
      */
     @GetMapping("/get/{date}")
-    public ResponseEntity<Map<String, Object>> getMealRecord(@PathVariable String date) {
+    public ResponseEntity<Map<String, Object>> getMealRecord(@PathVariable String date,
+                                                             @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         logger.info("收到获取餐饮记录请求: 日期={}", date);
         
         try {
@@ -118,6 +168,13 @@ public class MealRecordController {
             LocalDate recordDate = LocalDate.parse(date);
             MealRecord record = mealRecordService.getByDate(recordDate);
             
+            // 记录取自月快照，ETag由ID和版本号得到；未修改时不再序列化响应
+            String etag = record != null ? ETags.of(record.getId(), record.getVersion()) : ETags.NONE;
+            ResponseEntity<Map<String, Object>> notModified = conditionalResponses.notModified("meal.get", ifNoneMatch, etag);
+            if (notModified != null) {
+                return notModified;
+            }
+            
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
             response.put("data", record);
@@ -128,7 +185,7 @@ public class MealRecordController {
                 logger.info("未找到日期为 {} 的餐饮记录", date);
             }
             
-            return ResponseEntity.ok(response);
+            return conditionalResponses.ok(etag, response);
         } catch (IllegalArgumentException e) {
             logger.warn("获取餐饮记录参数错误: {}", e.getMessage());
             Map<String, Object> response = new HashMap<>();
@@ -150,7 +207,8 @@ public class MealRecordController {
      * 删除指定日期的记录
      */
     @DeleteMapping("/delete/{date}")
-    public ResponseEntity<Map<String, Object>> deleteMealRecord(@PathVariable String date) {
+    public ResponseEntity<Map<String, Object>> deleteMealRecord(@PathVariable String date,
+                                                                @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         logger.info("收到删除餐饮记录请求: 日期={}", date);
         
         try {
@@ -160,7 +218,7 @@ public class MealRecordController {
             }
             
             LocalDate recordDate = LocalDate.parse(date);
-            boolean deleted = mealRecordService.deleteByDate(recordDate);
+            boolean deleted = mealRecordService.deleteByDate(recordDate, ifMatch);
             
             Map<String, Object> response = new HashMap<>();
             response.put("success", deleted);
@@ -173,6 +231,13 @@ public class MealRecordController {
             }
             
             return ResponseEntity.ok(response);
+        } catch (VersionConflictException e) {
+            logger.warn("删除餐饮记录版本冲突: 日期={}", date);
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(response);
         } catch (IllegalArgumentException e) {
             logger.warn("删除餐饮记录参数错误: {}", e.getMessage());
             Map<String, Object> response = new HashMap<>();
@@ -194,7 +259,8 @@ public class MealRecordController {
      * 删除指定日期的动态项目
      */
     @PostMapping("/delete-items/{date}")
-    public ResponseEntity<Map<String, Object>> deleteCustomItems(@PathVariable String date, @RequestBody DeleteItemsRequest request) {
+    public ResponseEntity<Map<String, Object>> deleteCustomItems(@PathVariable String date, @RequestBody DeleteItemsRequest request,
+                                                                 @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         logger.info("收到删除动态项目请求: 日期={}, 项目={}", date, request.getItemNames());
         
         try {
@@ -211,19 +277,26 @@ public class MealRecordController {
                 throw new IllegalArgumentException("要删除的项目名称不能为空");
             }
             
-            boolean updated = mealRecordService.deleteCustomItems(recordDate, itemNames);
+            MealRecord updated = mealRecordService.deleteCustomItems(recordDate, itemNames, ifMatch);
             
             Map<String, Object> response = new HashMap<>();
-            response.put("success", updated);
-            response.put("message", updated ? "动态项目删除成功" : "记录不存在或项目不存在");
+            response.put("success", updated != null);
+            response.put("message", updated != null ? "动态项目删除成功" : "记录不存在或项目不存在");
             
-            if (updated) {
+            if (updated != null) {
                 logger.info("动态项目删除成功: 日期={}, 项目={}", date, itemNames);
-            } else {
-                logger.info("未找到要删除的动态项目: 日期={}, 项目={}", date, itemNames);
+                return ResponseEntity.ok().eTag(ETags.of(updated.getId(), updated.getVersion())).body(response);
             }
+            logger.info("未找到要删除的动态项目: 日期={}, 项目={}", date, itemNames);
             
             return ResponseEntity.ok(response);
+        } catch (VersionConflictException e) {
+            logger.warn("删除动态项目版本冲突: 日期={}", date);
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(response);
         } catch (IllegalArgumentException e) {
             logger.warn("删除动态项目参数错误: {}", e.getMessage());
             Map<String, Object> response = new HashMap<>();
@@ -245,7 +318,8 @@ public class MealRecordController {
      * 完全清空指定日期的所有数据
      */
     @PostMapping("/clear-all/{date}")
-    public ResponseEntity<Map<String, Object>> clearAllData(@PathVariable String date) {
+    public ResponseEntity<Map<String, Object>> clearAllData(@PathVariable String date,
+                                                            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         logger.info("收到清空所有数据请求: 日期={}", date);
         
         try {
@@ -254,19 +328,26 @@ public class MealRecordController {
             }
             
             LocalDate recordDate = LocalDate.parse(date);
-            boolean cleared = mealRecordService.clearAllData(recordDate);
+            MealRecord cleared = mealRecordService.clearAllData(recordDate, ifMatch);
             
             Map<String, Object> response = new HashMap<>();
-            response.put("success", cleared);
-            response.put("message", cleared ? "所有数据已清空" : "清空失败");
+            response.put("success", cleared != null);
+            response.put("message", cleared != null ? "所有数据已清空" : "清空失败");
             
-            if (cleared) {
+            if (cleared != null) {
                 logger.info("所有数据清空成功: 日期={}", date);
-            } else {
-                logger.info("清空失败: 日期={}", date);
+                return ResponseEntity.ok().eTag(ETags.of(cleared.getId(), cleared.getVersion())).body(response);
             }
+            logger.info("清空失败: 日期={}", date);
             
             return ResponseEntity.ok(response);
+        } catch (VersionConflictException e) {
+            logger.warn("清空数据版本冲突: 日期={}", date);
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(response);
         } catch (IllegalArgumentException e) {
             logger.warn("清空数据参数错误: {}", e.getMessage());
             Map<String, Object> response = new HashMap<>();
@@ -288,11 +369,42 @@ public class MealRecordController {
      * 获取指定月份有记录的日期列表
      */
     @GetMapping("/record-dates/{year}/{month}")
-    public ResponseEntity<Map<String, Object>> getRecordDates(@PathVariable int year, @PathVariable int month) {
-        logger.info("获取记录日期请求: 年={}, 月={}", year, month);
+    public ResponseEntity<Map<String, Object>> getRecordDates(@PathVariable int year, @PathVariable int month,
+                                                              @RequestParam(required = false) String format,
+                                                              @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        logger.info("获取记录日期请求: 年={}, 月={}, 格式={}", year, month, format);
         
         try {
+            // 位图格式：第 n 日有记录时第 (n-1) 位为1
+            if ("bitmap".equals(format)) {
+                int days = mealRecordService.getRecordDayBitmap(year, month);
+                String etag = ETags.ofContent("bitmap:" + year + "-" + month + ":" + days);
+                ResponseEntity<Map<String, Object>> notModified =
+                        conditionalResponses.notModified("meal.record-dates", ifNoneMatch, etag);
+                if (notModified != null) {
+                    return notModified;
+                }
+                
+                Map<String, Object> data = new HashMap<>();
+                data.put("year", year);
+                data.put("month", month);
+                data.put("days", days);
+                
+                Map<String, Object> response = new HashMap<>();
+                response.put("success", true);
+                response.put("data", data);
+                response.put("message", "获取成功");
+                return conditionalResponses.ok(etag, response);
+            }
+            
+            // 日期取自月快照（或只查唯一索引），ETag为日期列表的摘要
             List<String> recordDates = mealRecordService.getRecordDates(year, month);
+            String etag = ETags.ofContent(String.join(",", recordDates));
+            ResponseEntity<Map<String, Object>> notModified =
+                    conditionalResponses.notModified("meal.record-dates", ifNoneMatch, etag);
+            if (notModified != null) {
+                return notModified;
+            }
             
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
@@ -300,7 +412,7 @@ public class MealRecordController {
             response.put("message", "获取成功");
             
             logger.info("获取记录日期成功: 年={}, 月={}, 数量={}", year, month, recordDates.size());
-            return ResponseEntity.ok(response);
+            return conditionalResponses.ok(etag, response);
         } catch (Exception e) {
             logger.error("获取记录日期失败", e);
             Map<String, Object> response = new HashMap<>();
@@ -388,18 +500,180 @@ public class MealRecordController {
     }
 
     /**
-     * 获取用户某年消费年度账单统计
+     * 按项目统计指定日期范围内的消费（固定餐饮和动态项目）
+     */
+    @GetMapping("/item-statistics")
+    public ResponseEntity<Map<String, Object>> getItemStatistics(
+            @RequestParam String startDate,
+            @RequestParam String endDate) {
+        logger.info("收到按项目统计请求: 开始日期={}, 结束日期={}", startDate, endDate);
+        try {
+            LocalDate start;
+            LocalDate end;
+            try {
+                start = LocalDate.parse(startDate);
+                end = LocalDate.parse(endDate);
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("日期格式错误，应为yyyy-MM-dd");
+            }
+            if (start.isAfter(end)) {
+                throw new IllegalArgumentException("开始日期不能晚于结束日期");
+            }
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("data", mealRecordService.getItemStatistics(start, end));
+            response.put("message", "获取成功");
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            logger.warn("按项目统计参数错误: {}", e.getMessage());
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "参数错误: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        } catch (Exception e) {
+            logger.error("按项目统计失败", e);
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "获取失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(response);
+        }
+    }
+
+    /**
+     * 流式导出餐饮记录和日记，format 为 ndjson（默认）或 csv，未指定日期时导出全部
+     */
+    @GetMapping("/export")
+    public ResponseEntity<?> export(@RequestParam(required = false) String startDate,
+                                    @RequestParam(required = false) String endDate,
+                                    @RequestParam(defaultValue = "ndjson") String format) {
+        logger.info("收到导出请求: 开始日期={}, 结束日期={}, 格式={}", startDate, endDate, format);
+        try {
+            MealExportService.Format exportFormat;
+            try {
+                exportFormat = MealExportService.Format.valueOf(format.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("不支持的导出格式: " + format);
+            }
+            LocalDate start;
+            LocalDate end;
+            try {
+                start = startDate != null && !startDate.trim().isEmpty() ? LocalDate.parse(startDate) : EXPORT_MIN_DATE;
+                end = endDate != null && !endDate.trim().isEmpty() ? LocalDate.parse(endDate) : EXPORT_MAX_DATE;
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("日期格式错误，应为yyyy-MM-dd");
+            }
+            if (start.isAfter(end)) {
+                throw new IllegalArgumentException("开始日期不能晚于结束日期");
+            }
+
+            StreamingResponseBody body = mealExportService.exportCurrentUser(start, end.plusDays(1), exportFormat);
+            boolean csv = exportFormat == MealExportService.Format.CSV;
+            return ResponseEntity.ok()
+                    .contentType(csv ? new MediaType("text", "csv", StandardCharsets.UTF_8)
+                                     : MediaType.APPLICATION_NDJSON)
+                    .header(HttpHeaders.CONTENT_DISPOSITION,
+                            "attachment; filename=\"meal-export-" + LocalDate.now() + (csv ? ".csv" : ".ndjson") + "\"")
+                    .body(body);
+        } catch (IllegalArgumentException e) {
+            logger.warn("导出参数错误: {}", e.getMessage());
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "参数错误: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        } catch (RejectedExecutionException e) {
+            logger.warn("导出繁忙，拒绝请求: {}", e.getMessage());
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "导出繁忙，请稍后重试");
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .body(response);
+        } catch (Exception e) {
+            logger.error("导出失败", e);
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "导出失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(response);
+        }
+    }
+
+    /**
+     * 批量导入餐饮记录，请求体为CSV或NDJSON（可直接使用导出文件），同一日期已有记录时覆盖
+     * 未指定 format 时根据 Content-Type 判断，默认NDJSON
+     */
+    @PostMapping("/import")
+    public ResponseEntity<Map<String, Object>> importRecords(InputStream body,
+                                                             @RequestParam(required = false) String format,
+                                                             @RequestHeader(value = HttpHeaders.CONTENT_TYPE, required = false) String contentType) {
+        logger.info("收到导入请求: 格式={}, Content-Type={}", format, contentType);
+        try {
+            MealImportService.Format importFormat;
+            if (format != null && !format.trim().isEmpty()) {
+                try {
+                    importFormat = MealImportService.Format.valueOf(format.trim().toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("不支持的导入格式: " + format);
+                }
+            } else {
+                importFormat = contentType != null && contentType.toLowerCase().startsWith("text/csv")
+                        ? MealImportService.Format.CSV : MealImportService.Format.NDJSON;
+            }
+
+            Map<String, Object> result = mealImportService.importRecords(body, importFormat);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("data", result);
+            response.put("message", "导入完成");
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            logger.warn("导入参数错误: {}", e.getMessage());
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "参数错误: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        } catch (Exception e) {
+            logger.error("导入失败", e);
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "导入失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(response);
+        }
+    }
+
+    /**
+     * 获取用户某年消费年度账单统计，传入 years=2023,2024,2025 时一次返回多个年度用于对比
      */
     @GetMapping("/year-statistics")
-    public ResponseEntity<Map<String, Object>> getYearStatistics(@RequestParam(required = false) Integer year) {
-        logger.info("收到获取年度账单统计请求: year={}", year);
+    public ResponseEntity<Map<String, Object>> getYearStatistics(@RequestParam(required = false) Integer year,
+                                                                 @RequestParam(required = false) List<Integer> years) {
+        logger.info("收到获取年度账单统计请求: year={}, years={}", year, years);
         try {
-            Map<String, Object> data = mealRecordService.getYearStatistics(year);
+            Object data;
+            if (years != null && !years.isEmpty()) {
+                if (years.size() > MAX_COMPARE_YEARS) {
+                    throw new IllegalArgumentException("最多同时对比" + MAX_COMPARE_YEARS + "个年度");
+                }
+                // years=2024,,2025 中的空值
+                if (years.contains(null)) {
+                    throw new IllegalArgumentException("年份不能为空");
+                }
+                data = Map.of("years", mealRecordService.getYearStatistics(years));
+            } else {
+                data = mealRecordService.getYearStatistics(year);
+            }
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
             response.put("data", data);
             response.put("message", "获取成功");
             return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            logger.warn("获取年度账单统计参数错误: {}", e.getMessage());
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "参数错误: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
         } catch (Exception e) {
             logger.error("获取年度账单统计失败", e);
             Map<String, Object> response = new HashMap<>();
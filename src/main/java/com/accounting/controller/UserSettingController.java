@@ -2,15 +2,18 @@ package com.accounting.controller;
 
 import com.accounting.dto.UserSettingRequest;
 import com.accounting.service.UserSettingService;
+import com.accounting.util.ETags;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 @RestController
 @RequestMapping("/api/settings")
@@ -22,22 +25,67 @@ public class UserSettingController {
     @Autowired
     private UserSettingService userSettingService;
     
+    @Autowired
+    private ConditionalResponses conditionalResponses;
+    
+    /**
+     * 获取当前用户的全部设置（一次请求、一次Redis往返）
+     */
+    @GetMapping("/all")
+    public ResponseEntity<Map<String, Object>> getAllSettings(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        logger.info("获取用户全部设置");
+
+        try {
+            Map<String, String> settings = userSettingService.getAllSettings();
+            String etag = ETags.ofContent(new TreeMap<>(settings).toString());
+            ResponseEntity<Map<String, Object>> notModified =
+                    conditionalResponses.notModified("settings.all", ifNoneMatch, etag);
+            if (notModified != null) {
+                return notModified;
+            }
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("data", settings);
+            response.put("message", "获取成功");
+
+            return conditionalResponses.ok(etag, response);
+        } catch (Exception e) {
+            logger.error("获取用户全部设置失败", e);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "获取失败: " + e.getMessage());
+
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+
     /**
      * 获取用户默认餐饮项目
      */
     @GetMapping("/default-meal-items")
-    public ResponseEntity<Map<String, Object>> getDefaultMealItems() {
+    public ResponseEntity<Map<String, Object>> getDefaultMealItems(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         logger.info("获取用户默认餐饮项目");
         
         try {
+            // 设置取自Redis缓存，ETag为项目列表的摘要；未修改时不再序列化响应
             List<String> mealItems = userSettingService.getDefaultMealItems();
+            String etag = ETags.ofContent(String.join("\n", mealItems));
+            ResponseEntity<Map<String, Object>> notModified =
+                    conditionalResponses.notModified("settings.default-meal-items", ifNoneMatch, etag);
+            if (notModified != null) {
+                return notModified;
+            }
             
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
             response.put("data", mealItems);
             response.put("message", "获取成功");
             
-            return ResponseEntity.ok(response);
+            return conditionalResponses.ok(etag, response);
         } catch (Exception e) {
             logger.error("获取默认餐饮项目失败", e);
             
@@ -138,6 +186,14 @@ public class UserSettingController {
             response.put("message", success ? "保存成功" : "保存失败");
             
             return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            logger.warn("保存用户设置参数错误: {}", e.getMessage());
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "参数错误: " + e.getMessage());
+            
+            return ResponseEntity.badRequest().body(response);
         } catch (Exception e) {
             logger.error("保存用户设置失败", e);
             
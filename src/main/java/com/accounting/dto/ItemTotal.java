@@ -0,0 +1,20 @@
+package com.accounting.dto;
+
+import com.accounting.util.Money;
+import lombok.Data;
+
+/**
+ * 按项目汇总结果（数据库分组查询）
+ */
+@Data
+public class ItemTotal {
+
+    private String itemName;
+
+    /**
+     * 金额大于0的天数
+     */
+    private Integer days;
+
+    private Money total;
+}
@@ -1,5 +1,6 @@
 package com.accounting.dto;
 
+import com.accounting.util.Money;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 
@@ -13,18 +14,18 @@ public class MealRecordRequest {
     @JsonProperty("recordDate")
     private LocalDate recordDate;
     
-    private BigDecimal breakfast;
+    private Money breakfast;
     
-    private BigDecimal lunch;
+    private Money lunch;
     
-    private BigDecimal dinner;
+    private Money dinner;
     
-    private BigDecimal snack;
+    private Money snack;
     
-    private BigDecimal drink;
+    private Money drink;
     
     // 动态餐饮项目
-    private Map<String, BigDecimal> customItems;
+    private Map<String, Money> customItems;
 }
 
 @Data
@@ -0,0 +1,21 @@
+package com.accounting.dto;
+
+import com.accounting.util.Money;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 单条upsert执行后的结果：记录ID，以及覆盖前的总计、创建时间和版本号（新增时为null）
+ */
+@Data
+public class MealRecordUpsertState {
+
+    private Long id;
+
+    private Money previousTotal;
+
+    private LocalDateTime previousCreateTime;
+
+    private Integer previousVersion;
+}
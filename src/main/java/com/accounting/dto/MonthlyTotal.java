@@ -0,0 +1,20 @@
+package com.accounting.dto;
+
+import com.accounting.util.Money;
+import lombok.Data;
+
+
+/**
+ * 按月汇总结果（数据库分组查询）
+ */
+@Data
+public class MonthlyTotal {
+
+    private Integer year;
+
+    private Integer month;
+
+    private Integer days;
+
+    private Money total;
+}
@@ -3,6 +3,7 @@ package com.accounting.entity;
 import com.baomidou.mybatisplus.annotation.IdType;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
+import com.baomidou.mybatisplus.annotation.Version;
 import lombok.Data;
 
 import java.time.LocalDate;
@@ -47,4 +48,10 @@ public class Diary {
      * 更新时间
      */
     private LocalDateTime updateTime;
+    
+    /**
+     * 乐观锁版本号，每次修改加一
+     */
+    @Version
+    private Integer version;
 }
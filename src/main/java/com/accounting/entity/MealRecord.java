@@ -5,10 +5,11 @@ import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
 import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.FieldStrategy;
+import com.baomidou.mybatisplus.annotation.Version;
 import lombok.Data;
+import com.accounting.util.Money;
 import lombok.EqualsAndHashCode;
 
-import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 
@@ -25,17 +26,17 @@ public class MealRecord {
     @TableField("record_date")
     private LocalDate recordDate;
     
-    private BigDecimal breakfast;
+    private Money breakfast;
     
-    private BigDecimal lunch;
+    private Money lunch;
     
-    private BigDecimal dinner;
+    private Money dinner;
     
-    private BigDecimal snack;
+    private Money snack;
     
-    private BigDecimal drink;
+    private Money drink;
     
-    private BigDecimal total;
+    private Money total;
     
     // 动态餐饮项目，以JSON格式存储
     @TableField(value = "custom_items", updateStrategy = FieldStrategy.IGNORED)
@@ -44,5 +45,9 @@ public class MealRecord {
     private LocalDateTime createTime;
     
     private LocalDateTime updateTime;
+    
+    // 乐观锁版本号，每次修改加一
+    @Version
+    private Integer version;
 }
 
@@ -0,0 +1,38 @@
+package com.accounting.entity;
+
+import com.accounting.util.Money;
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import java.time.LocalDate;
+
+/**
+ * 餐饮记录的动态项目（每个项目一行）
+ * user_id、record_date 冗余自所属记录，便于按用户、项目和日期直接汇总
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@TableName("meal_record_items")
+public class MealRecordItem {
+
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    @TableField("record_id")
+    private Long recordId;
+
+    @TableField("user_id")
+    private Long userId;
+
+    @TableField("record_date")
+    private LocalDate recordDate;
+
+    @TableField("item_name")
+    private String itemName;
+
+    private Money amount;
+}
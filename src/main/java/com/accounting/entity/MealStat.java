@@ -0,0 +1,42 @@
+package com.accounting.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import com.accounting.util.Money;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import java.time.LocalDateTime;
+
+/**
+ * 用户消费统计汇总（增量维护）
+ * period 取值：ALL（全部）、yyyy（年）、yyyy-MM（月）
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@TableName("meal_stats")
+public class MealStat {
+
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    @TableField("user_id")
+    private Long userId;
+
+    private String period;
+
+    /**
+     * 记录天数
+     */
+    private Integer days;
+
+    /**
+     * 消费总额
+     */
+    @TableField("total_amount")
+    private Money totalAmount;
+
+    private LocalDateTime updateTime;
+}
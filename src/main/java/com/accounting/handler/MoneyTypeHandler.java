@@ -0,0 +1,46 @@
+package com.accounting.handler;
+
+import com.accounting.util.Money;
+import org.apache.ibatis.type.BaseTypeHandler;
+import org.apache.ibatis.type.JdbcType;
+import org.apache.ibatis.type.MappedJdbcTypes;
+import org.apache.ibatis.type.MappedTypes;
+
+import java.math.BigDecimal;
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Money 与 DECIMAL(10,2) 列之间的转换
+ * 通过 mybatis-plus.type-handlers-package 自动注册
+ */
+@MappedTypes(Money.class)
+@MappedJdbcTypes(value = JdbcType.DECIMAL, includeNullJdbcType = true)
+public class MoneyTypeHandler extends BaseTypeHandler<Money> {
+
+    @Override
+    public void setNonNullParameter(PreparedStatement ps, int i, Money parameter, JdbcType jdbcType) throws SQLException {
+        ps.setBigDecimal(i, parameter.toBigDecimal());
+    }
+
+    @Override
+    public Money getNullableResult(ResultSet rs, String columnName) throws SQLException {
+        return toMoney(rs.getBigDecimal(columnName));
+    }
+
+    @Override
+    public Money getNullableResult(ResultSet rs, int columnIndex) throws SQLException {
+        return toMoney(rs.getBigDecimal(columnIndex));
+    }
+
+    @Override
+    public Money getNullableResult(CallableStatement cs, int columnIndex) throws SQLException {
+        return toMoney(cs.getBigDecimal(columnIndex));
+    }
+
+    private static Money toMoney(BigDecimal value) {
+        return value != null ? Money.of(value) : null;
+    }
+}
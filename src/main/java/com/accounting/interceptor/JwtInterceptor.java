@@ -1,10 +1,15 @@
 package com.accounting.interceptor;
 
+import com.accounting.util.JwtPrincipal;
 import com.accounting.util.JwtUtil;
+import com.accounting.util.Redact;
 import com.accounting.util.UserContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -13,44 +18,37 @@ import javax.servlet.http.HttpServletResponse;
  * JWT拦截器，用于验证token并设置用户上下文
  */
 @Component
-public class JwtInterceptor implements HandlerInterceptor {
+public class JwtInterceptor implements AsyncHandlerInterceptor {
+    
+    private static final Logger logger = LoggerFactory.getLogger(JwtInterceptor.class);
+    
+    // 日志MDC中的用户ID键（日志格式中以 %X{userId} 输出）
+    public static final String MDC_USER_ID = "userId";
     
     @Autowired
     private JwtUtil jwtUtil;
     
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
-        System.out.println("=== JWT拦截器调试 ===");
-        System.out.println("请求URI: " + request.getRequestURI());
-        
         // 获取Authorization头
         String authHeader = request.getHeader("Authorization");
-        System.out.println("Authorization头: " + authHeader);
+        if (logger.isDebugEnabled()) {
+            logger.debug("JWT拦截: uri={}, authorization={}", request.getRequestURI(), Redact.authorization(authHeader));
+        }
         
         if (authHeader != null && authHeader.startsWith("Bearer ")) {
             String token = authHeader.substring(7);
             
             // 验证token
-            if (jwtUtil.validateToken(token)) {
-                try {
-                    // 从token中提取用户信息
-                    Long userId = jwtUtil.extractUserId(token);
-                    String username = jwtUtil.extractUsername(token);
-                    
-                    // 设置用户上下文
-                    UserContext.setUserId(userId);
-                    UserContext.setUsername(username);
-                    
-                    System.out.println("用户ID: " + userId);
-                    System.out.println("用户名: " + username);
-                    System.out.println("JWT验证成功，放行");
-                    
-                    return true;
-                } catch (Exception e) {
-                    // token解析失败
-                    response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
-                    return false;
-                }
+            JwtPrincipal principal = jwtUtil.verifyToken(token);
+            if (principal != null) {
+                // 设置用户上下文
+                UserContext.setPrincipal(principal);
+                MDC.put(MDC_USER_ID, String.valueOf(principal.getUserId()));
+                
+                logger.debug("JWT验证成功: userId={}, username={}", principal.getUserId(), principal.getUsername());
+                
+                return true;
             }
         }
         
@@ -69,5 +67,13 @@ public class JwtInterceptor implements HandlerInterceptor {
     public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) throws Exception {
         // 请求完成后清除用户上下文
         UserContext.clear();
+        MDC.remove(MDC_USER_ID);
+    }
+    
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        // 异步请求（如流式导出）不会在当前线程调用afterCompletion，需在此清除
+        UserContext.clear();
+        MDC.remove(MDC_USER_ID);
     }
 }
@@ -0,0 +1,18 @@
+package com.accounting.logging;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * 异步输出：事件进入有界队列，由后台线程写出，请求线程不再竞争stdout锁
+ * 队列剩余容量低于 discardingThreshold 时只丢弃 TRACE/DEBUG（默认实现还会丢弃INFO），
+ * INFO及以上在队列满时阻塞等待，不丢失
+ */
+public class DebugDiscardingAsyncAppender extends AsyncAppender {
+
+    @Override
+    protected boolean isDiscardable(ILoggingEvent event) {
+        return event.getLevel().toInt() <= Level.DEBUG_INT;
+    }
+}
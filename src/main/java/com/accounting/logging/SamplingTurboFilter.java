@@ -0,0 +1,72 @@
+package com.accounting.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按包名前缀对高频日志采样：匹配的 TRACE/DEBUG 日志每 N 条只输出1条，INFO及以上（登出等审计事件）不采样
+ * 规则格式为逗号分隔的 "前缀=N"，最长前缀优先，例如
+ * com.accounting.mapper=100,com.accounting.service.MealRecordService=100
+ * 在 logback-spring.xml 中配置，规则来自 logging.sampling.rules
+ */
+public class SamplingTurboFilter extends TurboFilter {
+
+    private final List<Rule> rules = new ArrayList<>();
+
+    public void setRules(String rules) {
+        this.rules.clear();
+        if (rules == null) {
+            return;
+        }
+        for (String entry : rules.split(",")) {
+            entry = entry.trim();
+            int eq = entry.lastIndexOf('=');
+            if (eq <= 0) {
+                continue;
+            }
+            try {
+                long every = Long.parseLong(entry.substring(eq + 1).trim());
+                if (every > 1) {
+                    this.rules.add(new Rule(entry.substring(0, eq).trim(), every));
+                }
+            } catch (NumberFormatException e) {
+                addWarn("忽略无效的采样规则: " + entry);
+            }
+        }
+        this.rules.sort(Comparator.comparingInt((Rule rule) -> rule.prefix.length()).reversed());
+    }
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        // format为null时是 isDebugEnabled() 之类的级别判断，不计数
+        if (format == null || level.isGreaterOrEqual(Level.INFO) || !level.isGreaterOrEqual(logger.getEffectiveLevel())) {
+            return FilterReply.NEUTRAL;
+        }
+        String name = logger.getName();
+        for (Rule rule : rules) {
+            if (name.startsWith(rule.prefix)) {
+                return rule.counter.getAndIncrement() % rule.every == 0 ? FilterReply.NEUTRAL : FilterReply.DENY;
+            }
+        }
+        return FilterReply.NEUTRAL;
+    }
+
+    private static final class Rule {
+        private final String prefix;
+        private final long every;
+        private final AtomicLong counter = new AtomicLong();
+
+        Rule(String prefix, long every) {
+            this.prefix = prefix;
+            this.every = every;
+        }
+    }
+}
@@ -3,10 +3,35 @@ package com.accounting.mapper;
 import com.accounting.entity.Diary;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.cursor.Cursor;
+
+import java.time.LocalDate;
 
 /**
  * 日记Mapper接口
  */
 @Mapper
 public interface DiaryMapper extends BaseMapper<Diary> {
+
+    /**
+     * 用户某天日记的版本摘要（条数、版本号之和、各行 ID.版本号 的CRC32异或），任一日记增删改都会改变
+     */
+    @Select("SELECT CONCAT(COUNT(*), ':', COALESCE(SUM(version), 0), ':', " +
+            "COALESCE(BIT_XOR(CRC32(CONCAT(id, '.', version))), 0)) FROM diaries " +
+            "WHERE user_id = #{userId} AND record_date = #{recordDate}")
+    String selectVersionDigest(@Param("userId") Long userId, @Param("recordDate") LocalDate recordDate);
+
+    /**
+     * 以服务端游标按日期顺序读取 [start, end) 内的日记（需在事务内遍历）
+     */
+    @Select("SELECT id, user_id, record_date, item_name, content, create_time, update_time FROM diaries " +
+            "WHERE user_id = #{userId} AND record_date >= #{start} AND record_date < #{end} " +
+            "ORDER BY record_date, item_name")
+    @Options(fetchSize = MealRecordMapper.CURSOR_FETCH_SIZE)
+    Cursor<Diary> cursorByDateRange(@Param("userId") Long userId,
+                                    @Param("start") LocalDate start,
+                                    @Param("end") LocalDate end);
 }
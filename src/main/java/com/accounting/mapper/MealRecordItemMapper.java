@@ -0,0 +1,109 @@
+package com.accounting.mapper;
+
+import com.accounting.dto.ItemTotal;
+import com.accounting.entity.MealRecordItem;
+import com.accounting.util.Money;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.cursor.Cursor;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Mapper
+public interface MealRecordItemMapper extends BaseMapper<MealRecordItem> {
+
+    /**
+     * 批量写入项目，已存在的项目只更新金额
+     */
+    @Insert("<script>" +
+            "INSERT INTO meal_record_items (record_id, user_id, record_date, item_name, amount) VALUES " +
+            "<foreach collection='items' item='i' separator=','>" +
+            "(#{i.recordId}, #{i.userId}, #{i.recordDate}, #{i.itemName}, #{i.amount})" +
+            "</foreach>" +
+            " ON DUPLICATE KEY UPDATE amount = VALUES(amount)" +
+            "</script>")
+    int upsertBatch(@Param("items") List<MealRecordItem> items);
+
+    /**
+     * 批量写入项目，已存在的项目保持不变（迁移旧数据时使用，不覆盖新写入的值）
+     */
+    @Insert("<script>" +
+            "INSERT IGNORE INTO meal_record_items (record_id, user_id, record_date, item_name, amount) VALUES " +
+            "<foreach collection='items' item='i' separator=','>" +
+            "(#{i.recordId}, #{i.userId}, #{i.recordDate}, #{i.itemName}, #{i.amount})" +
+            "</foreach>" +
+            "</script>")
+    int insertIgnoreBatch(@Param("items") List<MealRecordItem> items);
+
+    /**
+     * 删除记录中的指定项目
+     */
+    @Delete("<script>" +
+            "DELETE FROM meal_record_items WHERE record_id = #{recordId} AND item_name IN " +
+            "<foreach collection='names' item='name' open='(' separator=',' close=')'>#{name}</foreach>" +
+            "</script>")
+    int deleteByNames(@Param("recordId") Long recordId, @Param("names") List<String> names);
+
+    /**
+     * 删除多条记录的全部项目
+     */
+    @Delete("<script>" +
+            "DELETE FROM meal_record_items WHERE record_id IN " +
+            "<foreach collection='recordIds' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+            "</script>")
+    int deleteByRecordIds(@Param("recordIds") List<Long> recordIds);
+
+    /**
+     * 删除记录中不在保留列表里的项目（保留列表为空时删除全部）
+     */
+    @Delete("<script>" +
+            "DELETE FROM meal_record_items WHERE record_id = #{recordId}" +
+            "<if test='keepNames != null and keepNames.size() > 0'> AND item_name NOT IN " +
+            "<foreach collection='keepNames' item='name' open='(' separator=',' close=')'>#{name}</foreach>" +
+            "</if>" +
+            "</script>")
+    int deleteExcept(@Param("recordId") Long recordId, @Param("keepNames") List<String> keepNames);
+
+    /**
+     * 记录中所有项目的金额合计
+     */
+    @Select("SELECT COALESCE(SUM(amount), 0) FROM meal_record_items WHERE record_id = #{recordId}")
+    Money sumByRecordId(@Param("recordId") Long recordId);
+
+    /**
+     * 查询 [start, end) 范围内记录的全部项目，按记录和写入顺序排列
+     */
+    @Select("SELECT id, record_id, user_id, record_date, item_name, amount FROM meal_record_items " +
+            "WHERE user_id = #{userId} AND record_date >= #{start} AND record_date < #{end} " +
+            "ORDER BY record_date, id")
+    List<MealRecordItem> selectByUserAndDateRange(@Param("userId") Long userId,
+                                                  @Param("start") LocalDate start,
+                                                  @Param("end") LocalDate end);
+
+    /**
+     * 按项目名称汇总 [start, end) 内金额大于0的天数和金额，只读取 idx_user_item_date 索引
+     */
+    @Select("SELECT item_name, COUNT(*) AS days, SUM(amount) AS total FROM meal_record_items " +
+            "WHERE user_id = #{userId} AND record_date >= #{start} AND record_date < #{end} AND amount > 0 " +
+            "GROUP BY item_name")
+    List<ItemTotal> sumByItem(@Param("userId") Long userId,
+                              @Param("start") LocalDate start,
+                              @Param("end") LocalDate end);
+
+    /**
+     * 以服务端游标按日期顺序读取 [start, end) 内的项目（需在事务内遍历）
+     */
+    @Select("SELECT id, record_id, user_id, record_date, item_name, amount FROM meal_record_items " +
+            "WHERE user_id = #{userId} AND record_date >= #{start} AND record_date < #{end} " +
+            "ORDER BY record_date, id")
+    @Options(fetchSize = MealRecordMapper.CURSOR_FETCH_SIZE)
+    Cursor<MealRecordItem> cursorByUserAndDateRange(@Param("userId") Long userId,
+                                                    @Param("start") LocalDate start,
+                                                    @Param("end") LocalDate end);
+}
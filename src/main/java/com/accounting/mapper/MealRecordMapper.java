@@ -1,10 +1,163 @@
 package com.accounting.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.accounting.dto.MealRecordUpsertState;
+import com.accounting.dto.MonthlyTotal;
+import com.accounting.util.Money;
 import com.accounting.entity.MealRecord;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.ResultType;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.session.ResultHandler;
+
+import java.time.LocalDate;
+import java.util.List;
 
 @Mapper
 public interface MealRecordMapper extends BaseMapper<MealRecord> {
-}
 
+    /**
+     * 游标查询每次从服务端取回的行数（需要连接参数 useCursorFetch=true）
+     */
+    int CURSOR_FETCH_SIZE = 500;
+
+    /**
+     * 查询 [start, end) 范围内有记录的日期，只读取 uk_user_record_date 索引
+     */
+    @Select("SELECT record_date FROM meal_records " +
+            "WHERE user_id = #{userId} AND record_date >= #{start} AND record_date < #{end} " +
+            "ORDER BY record_date")
+    List<LocalDate> selectRecordDates(@Param("userId") Long userId,
+                                      @Param("start") LocalDate start,
+                                      @Param("end") LocalDate end);
+
+    /**
+     * 按年月分组汇总指定年份的消费（每年最多12行），每个年份条件都是 record_date 上的范围查询
+     */
+    @Select("<script>" +
+            "SELECT YEAR(record_date) AS year, MONTH(record_date) AS month, " +
+            "COUNT(*) AS days, COALESCE(SUM(total), 0) AS total " +
+            "FROM meal_records WHERE user_id = #{userId} AND (" +
+            "<foreach collection='years' item='y' separator=' OR '>" +
+            "(record_date &gt;= MAKEDATE(#{y}, 1) AND record_date &lt; MAKEDATE(#{y} + 1, 1))" +
+            "</foreach>" +
+            ") GROUP BY YEAR(record_date), MONTH(record_date)" +
+            "</script>")
+    List<MonthlyTotal> sumByMonth(@Param("userId") Long userId, @Param("years") List<Integer> years);
+
+    /**
+     * 逐行读取 [start, end) 内记录的固定餐饮金额和旧JSON动态项目，不构建结果列表
+     * 以服务端游标分批取数，内存占用与范围大小无关
+     */
+    @Select("SELECT breakfast, lunch, dinner, snack, drink, custom_items FROM meal_records " +
+            "WHERE user_id = #{userId} AND record_date >= #{start} AND record_date < #{end}")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = CURSOR_FETCH_SIZE)
+    @ResultType(MealRecord.class)
+    void streamAmounts(@Param("userId") Long userId,
+                       @Param("start") LocalDate start,
+                       @Param("end") LocalDate end,
+                       ResultHandler<MealRecord> handler);
+
+    /**
+     * 按主键分批查询仍保存旧JSON动态项目的记录（afterId 之后的 limit 条）
+     */
+    @Select("SELECT id, user_id, record_date, custom_items FROM meal_records " +
+            "WHERE id > #{afterId} AND custom_items IS NOT NULL AND custom_items <> '' " +
+            "ORDER BY id LIMIT #{limit}")
+    List<MealRecord> selectLegacyItemsBatch(@Param("afterId") long afterId, @Param("limit") int limit);
+
+    /**
+     * 迁移完成后清空旧JSON列；列值已被其他请求修改时不清空
+     */
+    @Update("UPDATE meal_records SET custom_items = NULL WHERE id = #{id} AND custom_items = #{customItems}")
+    int clearLegacyItems(@Param("id") Long id, @Param("customItems") String customItems);
+
+    /**
+     * 以服务端游标按日期顺序读取 [start, end) 内的记录（需在事务内遍历）
+     */
+    @Select("SELECT id, user_id, record_date, breakfast, lunch, dinner, snack, drink, total, custom_items, " +
+            "create_time, update_time FROM meal_records " +
+            "WHERE user_id = #{userId} AND record_date >= #{start} AND record_date < #{end} " +
+            "ORDER BY record_date")
+    @Options(fetchSize = CURSOR_FETCH_SIZE)
+    Cursor<MealRecord> cursorByDateRange(@Param("userId") Long userId,
+                                         @Param("start") LocalDate start,
+                                         @Param("end") LocalDate end);
+
+    /**
+     * 单条 INSERT ... ON DUPLICATE KEY UPDATE 新增或覆盖当天记录，总计在语句中计算，版本号在同一语句中加一
+     * 覆盖时通过 LAST_INSERT_ID(id) 返回已有记录ID，并把原总计、创建时间和版本号保存到会话变量
+     * （新增时在 VALUES 中重置为NULL），随后在同一连接上用 selectUpsertState 读取；不加 FOR UPDATE 锁
+     * 每个会话变量只在对应列自身的赋值中读取该列的原值，结果与赋值的执行顺序无关
+     * 与 upsertBatch、MealStatMapper 一致使用 VALUES()，兼容全部 MySQL 8.0 版本
+     */
+    @Insert("INSERT INTO meal_records (user_id, record_date, breakfast, lunch, dinner, snack, drink, total, " +
+            "custom_items, create_time, update_time, version) VALUES " +
+            "(#{r.userId}, #{r.recordDate}, #{r.breakfast}, #{r.lunch}, #{r.dinner}, #{r.snack}, #{r.drink}, " +
+            "#{r.breakfast} + #{r.lunch} + #{r.dinner} + #{r.snack} + #{r.drink} + #{customTotal} " +
+            "+ COALESCE(@meal_prev_total := NULL, 0), " +
+            "NULL, COALESCE(@meal_prev_create_time := NULL, #{r.createTime}), #{r.updateTime}, " +
+            "COALESCE(@meal_prev_version := NULL, 0)) " +
+            "ON DUPLICATE KEY UPDATE id = LAST_INSERT_ID(id), " +
+            "create_time = (@meal_prev_create_time := create_time), " +
+            "version = (@meal_prev_version := version) + 1, " +
+            "total = VALUES(total) + 0 * (@meal_prev_total := COALESCE(total, 0)), " +
+            "breakfast = VALUES(breakfast), lunch = VALUES(lunch), dinner = VALUES(dinner), " +
+            "snack = VALUES(snack), drink = VALUES(drink), custom_items = NULL, update_time = VALUES(update_time)")
+    int upsert(@Param("r") MealRecord record, @Param("customTotal") Money customTotal);
+
+    /**
+     * 读取上一条 upsert 的结果（必须与 upsert 在同一事务/连接中调用；不访问表）
+     */
+    @Select("SELECT LAST_INSERT_ID() AS id, " +
+            "CAST(@meal_prev_total AS DECIMAL(10,2)) AS previous_total, " +
+            "CAST(@meal_prev_create_time AS DATETIME) AS previous_create_time, " +
+            "CAST(@meal_prev_version AS SIGNED) AS previous_version")
+    MealRecordUpsertState selectUpsertState();
+
+    /**
+     * 批量写入前锁定当天记录：不存在的日期插入 version 为 -1 的占位行，已存在的行不修改，
+     * 两种情况都对行加排他锁并持有到事务结束（调用方按日期排序，避免批次之间死锁）
+     */
+    @Insert("<script>" +
+            "INSERT INTO meal_records (user_id, record_date, total, create_time, update_time, version) VALUES " +
+            "<foreach collection='records' item='r' separator=','>" +
+            "(#{r.userId}, #{r.recordDate}, 0, #{r.createTime}, #{r.updateTime}, -1)" +
+            "</foreach>" +
+            " ON DUPLICATE KEY UPDATE id = id" +
+            "</script>")
+    int lockByDates(@Param("records") List<MealRecord> records);
+
+    /**
+     * 加锁读取用户在指定日期的记录ID、总计和版本号（version 为 -1 的是本事务插入的占位行）
+     */
+    @Select("<script>" +
+            "SELECT id, record_date, total, version FROM meal_records WHERE user_id = #{userId} AND record_date IN " +
+            "<foreach collection='dates' item='d' open='(' separator=',' close=')'>#{d}</foreach>" +
+            " FOR UPDATE" +
+            "</script>")
+    List<MealRecord> selectByDatesForUpdate(@Param("userId") Long userId, @Param("dates") List<LocalDate> dates);
+
+    /**
+     * 多行 INSERT ... ON DUPLICATE KEY UPDATE，按 uk_user_record_date 新增或覆盖当天记录
+     * 动态项目保存在 meal_record_items，旧JSON列同时清空；占位行的版本号由 -1 变为 0
+     */
+    @Insert("<script>" +
+            "INSERT INTO meal_records (user_id, record_date, breakfast, lunch, dinner, snack, drink, total, " +
+            "custom_items, create_time, update_time) VALUES " +
+            "<foreach collection='records' item='r' separator=','>" +
+            "(#{r.userId}, #{r.recordDate}, #{r.breakfast}, #{r.lunch}, #{r.dinner}, #{r.snack}, #{r.drink}, " +
+            "#{r.total}, NULL, #{r.createTime}, #{r.updateTime})" +
+            "</foreach>" +
+            " ON DUPLICATE KEY UPDATE breakfast = VALUES(breakfast), lunch = VALUES(lunch), dinner = VALUES(dinner), " +
+            "snack = VALUES(snack), drink = VALUES(drink), total = VALUES(total), custom_items = NULL, " +
+            "update_time = VALUES(update_time), version = version + 1" +
+            "</script>")
+    int upsertBatch(@Param("records") List<MealRecord> records);
+}
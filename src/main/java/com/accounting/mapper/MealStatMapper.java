@@ -0,0 +1,68 @@
+package com.accounting.mapper;
+
+import com.accounting.entity.MealStat;
+import com.accounting.util.Money;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
+
+@Mapper
+public interface MealStatMapper extends BaseMapper<MealStat> {
+
+    /**
+     * 将天数和金额的增量同时累加到全部、年、月三个汇总行
+     */
+    @Insert("INSERT INTO meal_stats (user_id, period, days, total_amount) VALUES " +
+            "(#{userId}, 'ALL', #{days}, #{amount}), " +
+            "(#{userId}, #{year}, #{days}, #{amount}), " +
+            "(#{userId}, #{month}, #{days}, #{amount}) " +
+            "ON DUPLICATE KEY UPDATE days = days + VALUES(days), total_amount = total_amount + VALUES(total_amount)")
+    int applyDelta(@Param("userId") Long userId,
+                   @Param("year") String year,
+                   @Param("month") String month,
+                   @Param("days") int days,
+                   @Param("amount") Money amount);
+
+    /**
+     * 确保用户的全部汇总行存在并加排他锁（已存在时不修改），持有到事务结束
+     * applyDelta 总是先写该行，加锁后并发的保存和其他对账在此排队
+     */
+    @Insert("INSERT INTO meal_stats (user_id, period, days, total_amount) VALUES (#{userId}, 'ALL', 0, 0) " +
+            "ON DUPLICATE KEY UPDATE id = id")
+    int lockOverall(@Param("userId") Long userId);
+
+    /**
+     * 加锁读取用户的全部汇总行
+     */
+    @Select("SELECT id, user_id, period, days, total_amount FROM meal_stats WHERE user_id = #{userId} FOR UPDATE")
+    List<MealStat> selectByUserForUpdate(@Param("userId") Long userId);
+
+    /**
+     * 把单个汇总行写为对账得出的绝对值，行不存在时插入
+     */
+    @Insert("INSERT INTO meal_stats (user_id, period, days, total_amount) VALUES " +
+            "(#{userId}, #{period}, #{days}, #{amount}) " +
+            "ON DUPLICATE KEY UPDATE days = VALUES(days), total_amount = VALUES(total_amount)")
+    int setTotals(@Param("userId") Long userId,
+                  @Param("period") String period,
+                  @Param("days") int days,
+                  @Param("amount") Money amount);
+
+    /**
+     * 从明细表按月重新汇总
+     */
+    @Select("SELECT DATE_FORMAT(record_date, '%Y-%m') AS period, COUNT(*) AS days, " +
+            "COALESCE(SUM(total), 0) AS total_amount " +
+            "FROM meal_records WHERE user_id = #{userId} GROUP BY period")
+    List<MealStat> aggregateMonthsFromRecords(@Param("userId") Long userId);
+
+    /**
+     * 有餐饮记录或汇总数据的用户
+     */
+    @Select("SELECT user_id FROM meal_records UNION SELECT user_id FROM meal_stats")
+    List<Long> selectUserIds();
+}
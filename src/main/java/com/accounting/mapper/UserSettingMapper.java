@@ -3,7 +3,17 @@ package com.accounting.mapper;
 import com.accounting.entity.UserSetting;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
 
 @Mapper
 public interface UserSettingMapper extends BaseMapper<UserSetting> {
+
+    /**
+     * 一次读取用户的全部设置（走 uk_user_setting 唯一索引的 user_id 前缀）
+     */
+    @Select("SELECT setting_key, setting_value FROM user_settings WHERE user_id = #{userId}")
+    List<UserSetting> selectByUserId(@Param("userId") Long userId);
 }
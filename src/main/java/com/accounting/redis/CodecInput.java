@@ -0,0 +1,58 @@
+package com.accounting.redis;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * CodecOutput 的读取端；数据截断或格式错误时抛出IllegalArgumentException
+ */
+final class CodecInput {
+
+    private final byte[] buffer;
+    private int position;
+
+    CodecInput(byte[] buffer) {
+        this.buffer = buffer;
+    }
+
+    int readByte() {
+        if (position >= buffer.length) {
+            throw new IllegalArgumentException("数据不完整");
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    long readVarLong() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("变长整数格式错误");
+    }
+
+    int readVarInt() {
+        return Math.toIntExact(readVarLong());
+    }
+
+    long readZigZag() {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    String readString() {
+        int length = readVarInt();
+        if (length < 0 || length > buffer.length - position) {
+            throw new IllegalArgumentException("数据不完整");
+        }
+        String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    boolean hasRemaining() {
+        return position < buffer.length;
+    }
+}
@@ -0,0 +1,41 @@
+package com.accounting.redis;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+
+/**
+ * 普通JSON（不带类型信息），用于关闭二进制编码或排查问题时
+ */
+public class JsonCodec<T> implements RedisCodec<T> {
+
+    private final ObjectMapper objectMapper;
+    private final JavaType type;
+
+    public JsonCodec(ObjectMapper objectMapper, JavaType type) {
+        this.objectMapper = objectMapper;
+        this.type = type;
+    }
+
+    @Override
+    public byte[] encode(T value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("JSON序列化失败", e);
+        }
+    }
+
+    @Override
+    public T decode(byte[] bytes) {
+        if (bytes.length == 0 || (bytes[0] != '[' && bytes[0] != '{')) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(bytes, type);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
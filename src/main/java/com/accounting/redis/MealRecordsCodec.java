@@ -0,0 +1,132 @@
+package com.accounting.redis;
+
+import com.accounting.entity.MealRecord;
+import com.accounting.util.Money;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 餐饮记录月快照：标记字节 + 结构版本 + 条数 + 各记录
+ * 每条记录先写一个可空字段的存在位图，再按固定顺序写出字段：
+ * ID、用户ID、日期（epochDay）、各金额（分，zigzag）、动态项目JSON、创建/更新时间（UTC秒 + 纳秒）、版本号
+ * 调整字段时增加 SCHEMA_VERSION，旧版本的数据按未命中处理
+ */
+public class MealRecordsCodec implements RedisCodec<List<MealRecord>> {
+
+    static final int TAG = 0xA2;
+    static final int SCHEMA_VERSION = 1;
+
+    private static final int HAS_BREAKFAST = 1;
+    private static final int HAS_LUNCH = 1 << 1;
+    private static final int HAS_DINNER = 1 << 2;
+    private static final int HAS_SNACK = 1 << 3;
+    private static final int HAS_DRINK = 1 << 4;
+    private static final int HAS_TOTAL = 1 << 5;
+    private static final int HAS_CUSTOM_ITEMS = 1 << 6;
+    private static final int HAS_CREATE_TIME = 1 << 7;
+    private static final int HAS_UPDATE_TIME = 1 << 8;
+    private static final int HAS_VERSION = 1 << 9;
+
+    @Override
+    public byte[] encode(List<MealRecord> value) {
+        CodecOutput out = new CodecOutput(8 + value.size() * 48);
+        out.writeByte(TAG);
+        out.writeByte(SCHEMA_VERSION);
+        out.writeVarLong(value.size());
+        for (MealRecord record : value) {
+            int flags = (record.getBreakfast() != null ? HAS_BREAKFAST : 0)
+                    | (record.getLunch() != null ? HAS_LUNCH : 0)
+                    | (record.getDinner() != null ? HAS_DINNER : 0)
+                    | (record.getSnack() != null ? HAS_SNACK : 0)
+                    | (record.getDrink() != null ? HAS_DRINK : 0)
+                    | (record.getTotal() != null ? HAS_TOTAL : 0)
+                    | (record.getCustomItems() != null ? HAS_CUSTOM_ITEMS : 0)
+                    | (record.getCreateTime() != null ? HAS_CREATE_TIME : 0)
+                    | (record.getUpdateTime() != null ? HAS_UPDATE_TIME : 0)
+                    | (record.getVersion() != null ? HAS_VERSION : 0);
+            out.writeVarLong(flags);
+            out.writeVarLong(record.getId());
+            out.writeVarLong(record.getUserId());
+            out.writeZigZag(record.getRecordDate().toEpochDay());
+            writeMoney(out, record.getBreakfast());
+            writeMoney(out, record.getLunch());
+            writeMoney(out, record.getDinner());
+            writeMoney(out, record.getSnack());
+            writeMoney(out, record.getDrink());
+            writeMoney(out, record.getTotal());
+            if (record.getCustomItems() != null) {
+                out.writeString(record.getCustomItems());
+            }
+            writeTime(out, record.getCreateTime());
+            writeTime(out, record.getUpdateTime());
+            if (record.getVersion() != null) {
+                out.writeVarLong(record.getVersion());
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public List<MealRecord> decode(byte[] bytes) {
+        if (bytes.length < 2 || (bytes[0] & 0xFF) != TAG || bytes[1] != SCHEMA_VERSION) {
+            return null;
+        }
+        CodecInput in = new CodecInput(bytes);
+        in.readByte();
+        in.readByte();
+        int count = in.readVarInt();
+        List<MealRecord> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int flags = in.readVarInt();
+            MealRecord record = new MealRecord();
+            record.setId(in.readVarLong());
+            record.setUserId(in.readVarLong());
+            record.setRecordDate(LocalDate.ofEpochDay(in.readZigZag()));
+            record.setBreakfast(readMoney(in, flags, HAS_BREAKFAST));
+            record.setLunch(readMoney(in, flags, HAS_LUNCH));
+            record.setDinner(readMoney(in, flags, HAS_DINNER));
+            record.setSnack(readMoney(in, flags, HAS_SNACK));
+            record.setDrink(readMoney(in, flags, HAS_DRINK));
+            record.setTotal(readMoney(in, flags, HAS_TOTAL));
+            if ((flags & HAS_CUSTOM_ITEMS) != 0) {
+                record.setCustomItems(in.readString());
+            }
+            record.setCreateTime(readTime(in, flags, HAS_CREATE_TIME));
+            record.setUpdateTime(readTime(in, flags, HAS_UPDATE_TIME));
+            if ((flags & HAS_VERSION) != 0) {
+                record.setVersion(in.readVarInt());
+            }
+            records.add(record);
+        }
+        return records;
+    }
+
+    private static void writeMoney(CodecOutput out, Money value) {
+        if (value != null) {
+            out.writeZigZag(value.getCents());
+        }
+    }
+
+    private static Money readMoney(CodecInput in, int flags, int flag) {
+        return (flags & flag) != 0 ? Money.ofCents(in.readZigZag()) : null;
+    }
+
+    private static void writeTime(CodecOutput out, LocalDateTime value) {
+        if (value != null) {
+            out.writeZigZag(value.toEpochSecond(ZoneOffset.UTC));
+            out.writeVarLong(value.getNano());
+        }
+    }
+
+    private static LocalDateTime readTime(CodecInput in, int flags, int flag) {
+        if ((flags & flag) == 0) {
+            return null;
+        }
+        long seconds = in.readZigZag();
+        return LocalDateTime.ofEpochSecond(seconds, in.readVarInt(), ZoneOffset.UTC);
+    }
+}
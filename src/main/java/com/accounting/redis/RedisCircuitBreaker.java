@@ -0,0 +1,132 @@
+package com.accounting.redis;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Redis熔断器：连续 failure-threshold 次连接失败、超时或慢调用后打开，打开期间所有访问立即失败；
+ * open-ms 后进入半开状态，只放行一个探测请求，成功则关闭，失败则重新打开
+ */
+public class RedisCircuitBreaker {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisCircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private final long slowCallMillis;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile State state = State.CLOSED;
+    private volatile long openedAt;
+    private volatile long probeStartedAt;
+
+    private final Counter rejected;
+    private final Counter opened;
+    private final Counter closed;
+
+    public RedisCircuitBreaker(int failureThreshold, long openMillis, long slowCallMillis, MeterRegistry meterRegistry) {
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        this.slowCallMillis = slowCallMillis;
+        Gauge.builder("redis.circuit.state", this, breaker -> breaker.state.ordinal())
+                .description("Redis熔断状态：0关闭，1打开，2半开")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("redis.circuit.rejected")
+                .description("熔断期间被快速失败的Redis访问次数")
+                .register(meterRegistry);
+        this.opened = transitionCounter("open", meterRegistry);
+        this.closed = transitionCounter("closed", meterRegistry);
+    }
+
+    private static Counter transitionCounter(String to, MeterRegistry meterRegistry) {
+        return Counter.builder("redis.circuit.transitions")
+                .description("Redis熔断状态切换次数")
+                .tag("to", to)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 是否放行本次访问；打开期满后由第一个请求作为探测（探测超过 open-ms 未完成时允许再次探测）
+     */
+    public boolean tryAcquire() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (state == State.OPEN && now - openedAt >= openMillis
+                    || state == State.HALF_OPEN && now - probeStartedAt >= openMillis) {
+                state = State.HALF_OPEN;
+                probeStartedAt = now;
+                return true;
+            }
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * 记录一次完成的访问；耗时超过 slow-call-ms 按失败计
+     */
+    public void record(long elapsedMillis, Throwable error) {
+        if ((error != null && isUnavailable(error)) || elapsedMillis > slowCallMillis) {
+            onFailure();
+        } else {
+            onSuccess();
+        }
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    private void onSuccess() {
+        consecutiveFailures.set(0);
+        if (state != State.CLOSED) {
+            synchronized (this) {
+                if (state == State.HALF_OPEN) {
+                    state = State.CLOSED;
+                    closed.increment();
+                    logger.info("Redis已恢复，熔断关闭");
+                }
+            }
+        }
+    }
+
+    private void onFailure() {
+        int failures = consecutiveFailures.incrementAndGet();
+        if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= failureThreshold)) {
+            synchronized (this) {
+                if (state != State.OPEN) {
+                    state = State.OPEN;
+                    openedAt = System.currentTimeMillis();
+                    opened.increment();
+                    logger.warn("Redis连续{}次访问失败或超时，熔断打开{}ms", failures, openMillis);
+                }
+            }
+        }
+    }
+
+    /**
+     * 是否为Redis不可用（连接失败、超时或熔断快速失败），而非命令本身的错误
+     */
+    public static boolean isUnavailable(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof DataAccessResourceFailureException || t instanceof QueryTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,121 @@
+package com.accounting.redis;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 为 RedisConnectionFactory 套上熔断：取连接时检查熔断状态，连接上的每条命令记录耗时和结果
+ * 所有 RedisTemplate、脚本、发布订阅都经过连接工厂，因此无需逐个调用点处理
+ */
+public class RedisCircuitBreakerPostProcessor implements BeanPostProcessor {
+
+    // 不访问网络的连接方法，不计入熔断统计（否则半开探测会被这些调用误判为成功）
+    private static final Set<String> LOCAL_METHODS = new HashSet<>(Arrays.asList(
+            "close", "isClosed", "getNativeConnection", "isQueueing", "isPipelined", "openPipeline",
+            "isSubscribed", "getSubscription", "getSentinelConnection",
+            "toString", "hashCode", "equals"));
+
+    private final ObjectProvider<RedisCircuitBreaker> breakerProvider;
+
+    public RedisCircuitBreakerPostProcessor(ObjectProvider<RedisCircuitBreaker> breakerProvider) {
+        this.breakerProvider = breakerProvider;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof RedisConnectionFactory) || Proxy.isProxyClass(bean.getClass())) {
+            return bean;
+        }
+        return Proxy.newProxyInstance(bean.getClass().getClassLoader(),
+                ClassUtils.getAllInterfaces(bean), new FactoryHandler(bean));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    /**
+     * 取连接前检查熔断；取连接本身失败（如连接池耗尽、无法建立连接）也计入
+     */
+    private final class FactoryHandler implements InvocationHandler {
+        private final Object target;
+
+        FactoryHandler(Object target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (!"getConnection".equals(method.getName())) {
+                return RedisCircuitBreakerPostProcessor.invoke(target, method, args);
+            }
+            RedisCircuitBreaker breaker = breakerProvider.getObject();
+            if (!breaker.tryAcquire()) {
+                throw new RedisCircuitOpenException();
+            }
+            long start = System.currentTimeMillis();
+            RedisConnection connection;
+            try {
+                connection = (RedisConnection) RedisCircuitBreakerPostProcessor.invoke(target, method, args);
+            } catch (Throwable e) {
+                breaker.record(System.currentTimeMillis() - start, e);
+                throw e;
+            }
+            return wrap(connection, RedisConnection.class, breaker);
+        }
+    }
+
+    private static Object wrap(Object target, Class<?> type, RedisCircuitBreaker breaker) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type},
+                new CommandHandler(target, breaker));
+    }
+
+    /**
+     * 记录连接上每条命令的耗时和结果；xxxCommands() 返回的命令接口同样包装
+     */
+    private static final class CommandHandler implements InvocationHandler {
+        private final Object target;
+        private final RedisCircuitBreaker breaker;
+
+        CommandHandler(Object target, RedisCircuitBreaker breaker) {
+            this.target = target;
+            this.breaker = breaker;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.endsWith("Commands") && method.getReturnType().isInterface()) {
+                Object commands = RedisCircuitBreakerPostProcessor.invoke(target, method, args);
+                return commands != null ? wrap(commands, method.getReturnType(), breaker) : null;
+            }
+            if (LOCAL_METHODS.contains(name)) {
+                return RedisCircuitBreakerPostProcessor.invoke(target, method, args);
+            }
+            long start = System.currentTimeMillis();
+            try {
+                Object result = RedisCircuitBreakerPostProcessor.invoke(target, method, args);
+                breaker.record(System.currentTimeMillis() - start, null);
+                return result;
+            } catch (Throwable e) {
+                breaker.record(System.currentTimeMillis() - start, e);
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.accounting.redis;
+
+import org.springframework.data.redis.RedisConnectionFailureException;
+
+/**
+ * 熔断打开期间访问Redis时立即抛出，不等待命令超时
+ */
+public class RedisCircuitOpenException extends RedisConnectionFailureException {
+
+    public RedisCircuitOpenException() {
+        super("Redis熔断中，快速失败");
+    }
+}
@@ -0,0 +1,12 @@
+package com.accounting.redis;
+
+/**
+ * Redis值编解码器，按键前缀在 RedisValueStore 中注册
+ * decode 遇到无法识别的格式（如旧版本写入的数据）时返回null，按缓存未命中处理
+ */
+public interface RedisCodec<T> {
+
+    byte[] encode(T value);
+
+    T decode(byte[] bytes);
+}
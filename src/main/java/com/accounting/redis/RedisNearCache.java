@@ -0,0 +1,143 @@
+package com.accounting.redis;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.Topic;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Redis读取的进程内近端缓存（默认关闭），按键前缀启用
+ * 通过键空间通知（__keyspace@db__:前缀*）失效：任一节点写入、删除或过期该键时各节点丢弃本地副本；
+ * 通知不保证送达（如订阅断开期间），本地副本另有较短的TTL兜底
+ */
+public class RedisNearCache implements MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisNearCache.class);
+
+    private static final String NOTIFY_CONFIG = "notify-keyspace-events";
+    // K: 键空间通知, g: DEL/EXPIRE等, $: 字符串, h: 哈希, x: 过期, e: 淘汰
+    private static final String REQUIRED_EVENTS = "Kg$hxe";
+    // A 是 g$lshzxe 的简写
+    private static final String ALL_EVENTS_ALIAS = "g$lshzxe";
+
+    private final boolean enabled;
+    private final String channelPrefix;
+    private final List<String> prefixes = new ArrayList<>();
+    private final Cache<String, Object> cache;
+    private final Counter invalidations;
+
+    public RedisNearCache(boolean enabled, int database, long maximumSize, long ttlSeconds,
+                          MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.channelPrefix = "__keyspace@" + database + "__:";
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        // 暴露 cache.gets{result=hit|miss}、cache.evictions、cache.size 等指标
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "redis_near");
+        this.invalidations = Counter.builder("redis.near.invalidations")
+                .description("近端缓存收到的键空间失效通知次数")
+                .register(meterRegistry);
+    }
+
+    public RedisNearCache register(String prefix) {
+        prefixes.add(prefix);
+        return this;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 读取键对应的值，本地没有时通过loader访问Redis；loader返回null时不缓存
+     * 加载期间收到的失效通知会在加载完成后移除结果，不会留下旧值
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, Supplier<T> loader) {
+        if (!enabled || !isRegistered(key)) {
+            return loader.get();
+        }
+        return (T) cache.get(key, k -> loader.get());
+    }
+
+    /**
+     * 本节点写入后立即丢弃本地副本，不等待通知
+     */
+    public void invalidate(String key) {
+        if (enabled) {
+            cache.invalidate(key);
+        }
+    }
+
+    /**
+     * 需要订阅的键空间通知频道
+     */
+    public List<Topic> topics() {
+        List<Topic> topics = new ArrayList<>(prefixes.size());
+        for (String prefix : prefixes) {
+            topics.add(new PatternTopic(channelPrefix + prefix + "*"));
+        }
+        return topics;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+        if (channel.startsWith(channelPrefix)) {
+            invalidations.increment();
+            cache.invalidate(channel.substring(channelPrefix.length()));
+        }
+    }
+
+    /**
+     * 补齐服务端 notify-keyspace-events 中缺少的事件类型；托管Redis禁用CONFIG时需在服务端预先配置
+     */
+    public void enableNotifications(RedisConnectionFactory connectionFactory) {
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            Properties config = connection.serverCommands().getConfig(NOTIFY_CONFIG);
+            String current = config != null ? config.getProperty(NOTIFY_CONFIG, "") : "";
+            StringBuilder events = new StringBuilder(current);
+            for (char event : REQUIRED_EVENTS.toCharArray()) {
+                boolean covered = current.indexOf(event) >= 0
+                        || (current.indexOf('A') >= 0 && ALL_EVENTS_ALIAS.indexOf(event) >= 0);
+                if (!covered) {
+                    events.append(event);
+                }
+            }
+            if (events.length() != current.length()) {
+                connection.serverCommands().setConfig(NOTIFY_CONFIG, events.toString());
+                logger.info("已开启键空间通知: {}={}", NOTIFY_CONFIG, events);
+            }
+        } catch (Exception e) {
+            logger.warn("无法配置键空间通知，近端缓存仅依赖本地TTL失效: {}", e.getMessage());
+        }
+    }
+
+    private boolean isRegistered(String key) {
+        for (String prefix : prefixes) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,89 @@
+package com.accounting.redis;
+
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按键前缀选择编解码器读写Redis值，最长前缀优先；值以原始字节存储，不再经过带类型信息的Jackson
+ * 未注册前缀的键不能写入，避免意外使用默认序列化
+ */
+public class RedisValueStore {
+
+    private final RedisTemplate<String, byte[]> template;
+
+    private final List<Registration<?>> registrations = new ArrayList<>();
+
+    public RedisValueStore(RedisConnectionFactory connectionFactory) {
+        template = new RedisTemplate<>();
+        template.setConnectionFactory(connectionFactory);
+        template.setKeySerializer(StringRedisSerializer.UTF_8);
+        template.setValueSerializer(RedisSerializer.byteArray());
+        template.setHashKeySerializer(StringRedisSerializer.UTF_8);
+        template.setHashValueSerializer(RedisSerializer.byteArray());
+        template.afterPropertiesSet();
+    }
+
+    public <T> RedisValueStore register(String prefix, RedisCodec<T> codec) {
+        registrations.add(new Registration<>(prefix, codec));
+        registrations.sort(Comparator.comparingInt((Registration<?> r) -> r.prefix.length()).reversed());
+        return this;
+    }
+
+    /**
+     * 读取并解码，键不存在或格式无法识别时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key) {
+        byte[] bytes = template.opsForValue().get(key);
+        if (bytes == null) {
+            return null;
+        }
+        return (T) codecFor(key).decode(bytes);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> void set(String key, T value, long timeout, TimeUnit unit) {
+        RedisCodec<T> codec = (RedisCodec<T>) codecFor(key);
+        template.opsForValue().set(key, codec.encode(value), timeout, unit);
+    }
+
+    public boolean delete(String key) {
+        return Boolean.TRUE.equals(template.delete(key));
+    }
+
+    /**
+     * 底层的字节模板，供需要自行组织命令（如哈希、管道）的调用方使用
+     */
+    public RedisTemplate<String, byte[]> getTemplate() {
+        return template;
+    }
+
+    /**
+     * 键对应的编解码器
+     */
+    public RedisCodec<?> codecFor(String key) {
+        for (Registration<?> registration : registrations) {
+            if (key.startsWith(registration.prefix)) {
+                return registration.codec;
+            }
+        }
+        throw new IllegalArgumentException("没有为该键注册编解码器: " + key);
+    }
+
+    private static final class Registration<T> {
+        private final String prefix;
+        private final RedisCodec<T> codec;
+
+        Registration(String prefix, RedisCodec<T> codec) {
+            this.prefix = prefix;
+            this.codec = codec;
+        }
+    }
+}
@@ -2,9 +2,12 @@ package com.accounting.service;
 
 import com.accounting.entity.Diary;
 import com.accounting.mapper.DiaryMapper;
+import com.accounting.util.ETags;
 import com.accounting.util.UserContext;
+import com.accounting.util.VersionConflictException;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
@@ -17,60 +20,87 @@ import java.util.List;
 @Service
 public class DiaryService {
     
+    // 无 If-Match 时保存遇到版本冲突或并发新增的最大尝试次数
+    private static final int MAX_SAVE_ATTEMPTS = 3;
+    
     @Autowired
     private DiaryMapper diaryMapper;
     
     /**
      * 保存或更新日记
+     * 带 If-Match 时日记必须存在且ETag一致，只尝试一次；否则在版本冲突或并发新增时重新读取，最多 MAX_SAVE_ATTEMPTS 次
+     *
+     * @return 保存后的日记（含新版本号）
      */
-    public void saveOrUpdateDiary(String itemName, String content, LocalDate recordDate) {
+    public Diary saveOrUpdateDiary(String itemName, String content, LocalDate recordDate, String ifMatch) {
         Long currentUserId = UserContext.getUserId();
         if (currentUserId == null) {
             throw new RuntimeException("用户未登录");
         }
         
+        int maxAttempts = ifMatch != null ? 1 : MAX_SAVE_ATTEMPTS;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return saveOnce(currentUserId, itemName, content, recordDate, ifMatch);
+            } catch (VersionConflictException | DuplicateKeyException e) {
+                if (attempt >= maxAttempts) {
+                    throw e instanceof VersionConflictException ? (VersionConflictException) e
+                            : new VersionConflictException("日记已被修改，请刷新后重试");
+                }
+            }
+        }
+    }
+    
+    private Diary saveOnce(Long userId, String itemName, String content, LocalDate recordDate, String ifMatch) {
         // 查询是否已存在该日期的该项目的日记
-        QueryWrapper<Diary> queryWrapper = new QueryWrapper<>();
-        queryWrapper.eq("user_id", currentUserId)
-                   .eq("record_date", recordDate)
-                   .eq("item_name", itemName);
-        
-        Diary existingDiary = diaryMapper.selectOne(queryWrapper);
+        Diary existingDiary = selectDiary(userId, itemName, recordDate);
+        checkIfMatch(existingDiary, ifMatch);
         
         if (existingDiary != null) {
-            // 更新现有日记
+            // 更新现有日记，按读取时的版本号更新
             existingDiary.setContent(content);
             existingDiary.setUpdateTime(LocalDateTime.now());
-            diaryMapper.updateById(existingDiary);
-        } else {
-            // 创建新日记
-            Diary diary = new Diary();
-            diary.setUserId(currentUserId);
-            diary.setRecordDate(recordDate);
-            diary.setItemName(itemName);
-            diary.setContent(content);
-            diary.setCreateTime(LocalDateTime.now());
-            diary.setUpdateTime(LocalDateTime.now());
-            diaryMapper.insert(diary);
+            if (diaryMapper.updateById(existingDiary) == 0) {
+                throw new VersionConflictException("日记已被修改，请刷新后重试");
+            }
+            return existingDiary;
         }
+        
+        // 创建新日记
+        Diary diary = new Diary();
+        diary.setUserId(userId);
+        diary.setRecordDate(recordDate);
+        diary.setItemName(itemName);
+        diary.setContent(content);
+        diary.setCreateTime(LocalDateTime.now());
+        diary.setUpdateTime(LocalDateTime.now());
+        diary.setVersion(0);
+        diaryMapper.insert(diary);
+        return diary;
     }
     
     /**
-     * 获取指定日期和项目的日记
+     * 获取指定日期和项目的日记，不存在时返回null
      */
-    public String getDiaryContent(String itemName, LocalDate recordDate) {
+    public Diary getDiary(String itemName, LocalDate recordDate) {
         Long currentUserId = UserContext.getUserId();
         if (currentUserId == null) {
             throw new RuntimeException("用户未登录");
         }
         
-        QueryWrapper<Diary> queryWrapper = new QueryWrapper<>();
-        queryWrapper.eq("user_id", currentUserId)
-                   .eq("record_date", recordDate)
-                   .eq("item_name", itemName);
+        return selectDiary(currentUserId, itemName, recordDate);
+    }
+    
+    /**
+     * 指定日期日记列表的ETag，只查询版本摘要不读取内容
+     */
+    public String getDiariesETag(LocalDate recordDate) {
+        Long currentUserId = UserContext.getUserId();
+        if (currentUserId == null) {
+            throw new RuntimeException("用户未登录");
+        }
         
-        Diary diary = diaryMapper.selectOne(queryWrapper);
-        return diary != null ? diary.getContent() : "";
+        return ETags.ofContent(recordDate + ":" + diaryMapper.selectVersionDigest(currentUserId, recordDate));
     }
     
     /**
@@ -92,8 +122,10 @@ public class DiaryService {
     
     /**
      * 删除指定日期和项目的日记
+     *
+     * @param ifMatch 请求的 If-Match，为null时无条件删除
      */
-    public void deleteDiary(String itemName, LocalDate recordDate) {
+    public void deleteDiary(String itemName, LocalDate recordDate, String ifMatch) {
         Long currentUserId = UserContext.getUserId();
         if (currentUserId == null) {
             throw new RuntimeException("用户未登录");
@@ -104,6 +136,36 @@ public class DiaryService {
                    .eq("record_date", recordDate)
                    .eq("item_name", itemName);
         
+        if (ifMatch != null) {
+            // 按读取时的ID和版本号删除
+            Diary diary = diaryMapper.selectOne(queryWrapper);
+            checkIfMatch(diary, ifMatch);
+            queryWrapper.eq("id", diary.getId())
+                       .eq("version", diary.getVersion());
+            if (diaryMapper.delete(queryWrapper) == 0) {
+                throw new VersionConflictException("日记已被修改，请刷新后重试");
+            }
+            return;
+        }
+        
         diaryMapper.delete(queryWrapper);
     }
+    
+    private Diary selectDiary(Long userId, String itemName, LocalDate recordDate) {
+        QueryWrapper<Diary> queryWrapper = new QueryWrapper<>();
+        queryWrapper.eq("user_id", userId)
+                   .eq("record_date", recordDate)
+                   .eq("item_name", itemName);
+        return diaryMapper.selectOne(queryWrapper);
+    }
+    
+    /**
+     * 带 If-Match 时校验日记的当前ETag
+     */
+    private static void checkIfMatch(Diary diary, String ifMatch) {
+        if (ifMatch != null && (diary == null
+                || !ETags.matches(ifMatch, ETags.of(diary.getId(), diary.getVersion())))) {
+            throw new VersionConflictException("日记已被修改，请刷新后重试");
+        }
+    }
 }
@@ -1,21 +1,121 @@
 package com.accounting.service;
 
+import com.accounting.util.Redact;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.concurrent.TimeUnit;
 
 @Service
 public class JwtCacheService {
 
+    private static final Logger logger = LoggerFactory.getLogger(JwtCacheService.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
     @Autowired
-    private RedisTemplate<String, Object> redisTemplate;
+    private MeterRegistry meterRegistry;
 
     private static final String JWT_TOKEN_PREFIX = "jwt_token:";
     private static final String USER_TOKEN_PREFIX = "user_token:";
     private static final long TOKEN_CACHE_TIME = 24; // 24小时
 
+    // 兼容旧版本通过Jackson写入的带引号字符串
+    private static final String LUA_UNQUOTE =
+            "local function unquote(v) " +
+            "if v and string.sub(v, 1, 1) == '\"' then return string.sub(v, 2, -2) end " +
+            "return v end ";
+
+    /**
+     * 签发：同时写入token键和用户键
+     */
+    private static final RedisScript<Long> ISSUE_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('SET', KEYS[1], ARGV[1], 'EX', ARGV[3]) " +
+            "redis.call('SET', KEYS[2], ARGV[2], 'EX', ARGV[3]) " +
+            "return 1", Long.class);
+
+    /**
+     * 吊销单个token：删除token键，用户键仍指向该token时一并删除
+     */
+    private static final RedisScript<Long> REVOKE_TOKEN_SCRIPT = new DefaultRedisScript<>(
+            LUA_UNQUOTE +
+            "local userId = unquote(redis.call('GET', KEYS[1])) " +
+            "if userId then " +
+            "  local userKey = ARGV[1] .. userId " +
+            "  if unquote(redis.call('GET', userKey)) == ARGV[2] then redis.call('DEL', userKey) end " +
+            "end " +
+            "return redis.call('DEL', KEYS[1])", Long.class);
+
+    /**
+     * 吊销用户的token：删除用户键及其指向的token键，返回被删除的token
+     */
+    private static final RedisScript<String> REVOKE_USER_SCRIPT = new DefaultRedisScript<>(
+            LUA_UNQUOTE +
+            "local token = unquote(redis.call('GET', KEYS[1])) " +
+            "if token then redis.call('DEL', ARGV[1] .. token) end " +
+            "redis.call('DEL', KEYS[1]) " +
+            "return token", String.class);
+
+    /**
+     * 剩余有效期低于阈值时才续期token键；用户键仍指向该token时一并续期（已重新登录则不续期旧的用户键）
+     * 返回 -1: token不在缓存中, 0: 无需续期, 1: 已续期
+     */
+    private static final RedisScript<Long> REFRESH_SCRIPT = new DefaultRedisScript<>(
+            LUA_UNQUOTE +
+            "local ttl = redis.call('TTL', KEYS[1]) " +
+            "if ttl == -2 then return -1 end " +
+            "if ttl >= tonumber(ARGV[1]) then return 0 end " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[2]) " +
+            "if unquote(redis.call('GET', KEYS[2])) == ARGV[3] then redis.call('EXPIRE', KEYS[2], ARGV[2]) end " +
+            "return 1", Long.class);
+
+    @Value("${jwt.refresh.threshold-seconds:43200}")
+    private long refreshThresholdSeconds;
+
+    @Value("${jwt.refresh.coalesce-seconds:60}")
+    private long refreshCoalesceSeconds;
+
+    // 本节点最近检查过续期的token摘要 -> 用户ID，窗口内不再访问Redis
+    private Cache<String, Long> recentRefreshes;
+
+    private Counter refreshPerformed;
+    private Counter refreshSkipped;
+    private Counter refreshCoalesced;
+    private Counter refreshMissing;
+
+    @PostConstruct
+    public void init() {
+        recentRefreshes = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterWrite(refreshCoalesceSeconds, TimeUnit.SECONDS)
+                .build();
+        refreshPerformed = refreshCounter("performed");
+        refreshSkipped = refreshCounter("skipped");
+        refreshCoalesced = refreshCounter("coalesced");
+        refreshMissing = refreshCounter("missing");
+    }
+
+    private Counter refreshCounter(String result) {
+        return Counter.builder("jwt.token.refresh")
+                .description("token缓存续期次数")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
     /**
      * 缓存JWT token
      */
@@ -23,13 +123,11 @@ public class JwtCacheService {
         String tokenKey = JWT_TOKEN_PREFIX + token;
         String userKey = USER_TOKEN_PREFIX + userId;
         
-        // 缓存token -> 用户信息
-        redisTemplate.opsForValue().set(tokenKey, userId, TOKEN_CACHE_TIME, TimeUnit.HOURS);
-        
-        // 缓存用户ID -> token（用于单点登录控制）
-        redisTemplate.opsForValue().set(userKey, token, TOKEN_CACHE_TIME, TimeUnit.HOURS);
+        // token -> 用户ID，用户ID -> token（用于单点登录控制），一次往返原子写入
+        stringRedisTemplate.execute(ISSUE_SCRIPT, Arrays.asList(tokenKey, userKey),
+                String.valueOf(userId), token, String.valueOf(TimeUnit.HOURS.toSeconds(TOKEN_CACHE_TIME)));
         
-        System.out.println("JWT token已缓存: " + token + " -> 用户ID: " + userId);
+        logger.debug("JWT token已缓存: {} -> userId={}", Redact.token(token), userId);
     }
 
     /**
@@ -37,7 +135,7 @@ public class JwtCacheService {
      */
     public boolean isTokenCached(String token) {
         String tokenKey = JWT_TOKEN_PREFIX + token;
-        return redisTemplate.hasKey(tokenKey);
+        return Boolean.TRUE.equals(stringRedisTemplate.hasKey(tokenKey));
     }
 
     /**
@@ -45,8 +143,8 @@ public class JwtCacheService {
      */
     public Long getUserIdFromCache(String token) {
         String tokenKey = JWT_TOKEN_PREFIX + token;
-        Object userId = redisTemplate.opsForValue().get(tokenKey);
-        return userId != null ? Long.valueOf(userId.toString()) : null;
+        String userId = unquote(stringRedisTemplate.opsForValue().get(tokenKey));
+        return userId != null ? Long.valueOf(userId) : null;
     }
 
     /**
@@ -54,8 +152,7 @@ public class JwtCacheService {
      */
     public String getUserToken(Long userId) {
         String userKey = USER_TOKEN_PREFIX + userId;
-        Object token = redisTemplate.opsForValue().get(userKey);
-        return token != null ? token.toString() : null;
+        return unquote(stringRedisTemplate.opsForValue().get(userKey));
     }
 
     /**
@@ -63,15 +160,10 @@ public class JwtCacheService {
      */
     public void removeToken(String token) {
         String tokenKey = JWT_TOKEN_PREFIX + token;
-        Object userId = redisTemplate.opsForValue().get(tokenKey);
-        
-        if (userId != null) {
-            String userKey = USER_TOKEN_PREFIX + userId;
-            redisTemplate.delete(userKey);
-        }
-        
-        redisTemplate.delete(tokenKey);
-        System.out.println("JWT token已从缓存删除: " + token);
+        stringRedisTemplate.execute(REVOKE_TOKEN_SCRIPT, Collections.singletonList(tokenKey),
+                USER_TOKEN_PREFIX, token);
+        recentRefreshes.invalidate(TokenLocalCache.hash(token));
+        logger.debug("JWT token已从缓存删除: {}", Redact.token(token));
     }
 
     /**
@@ -79,29 +171,72 @@ public class JwtCacheService {
      */
     public void removeUserTokens(Long userId) {
         String userKey = USER_TOKEN_PREFIX + userId;
-        Object token = redisTemplate.opsForValue().get(userKey);
-        
-        if (token != null) {
-            String tokenKey = JWT_TOKEN_PREFIX + token;
-            redisTemplate.delete(tokenKey);
+        stringRedisTemplate.execute(REVOKE_USER_SCRIPT, Collections.singletonList(userKey), JWT_TOKEN_PREFIX);
+        forgetUserRefreshes(userId);
+        logger.debug("用户所有token已从缓存删除: userId={}", userId);
+    }
+
+    /**
+     * 丢弃本节点对该token的续期合并记录（本地或其他节点吊销token时调用），下次校验重新访问Redis
+     */
+    public void forgetRefresh(String tokenHash) {
+        recentRefreshes.invalidate(tokenHash);
+    }
+
+    /**
+     * 丢弃本节点对该用户所有token的续期合并记录
+     */
+    public void forgetUserRefreshes(Long userId) {
+        recentRefreshes.asMap().values().removeIf(userId::equals);
+    }
+
+    /**
+     * 兼容旧版本通过Jackson写入的带引号字符串
+     */
+    private static String unquote(String value) {
+        if (value != null && value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            return value.substring(1, value.length() - 1);
         }
-        
-        redisTemplate.delete(userKey);
-        System.out.println("用户所有token已从缓存删除: " + userId);
+        return value;
     }
 
     /**
-     * 刷新token缓存时间
+     * 刷新token缓存时间（滑动过期）
+     * 仅在剩余有效期低于阈值时续期，同一token在合并窗口内只检查一次
+     *
+     * @return token是否仍在缓存中
      */
-    public void refreshTokenCache(String token) {
+    public boolean refreshTokenCache(String token, Long userId) {
+        String tokenHash = TokenLocalCache.hash(token);
+        if (recentRefreshes.asMap().putIfAbsent(tokenHash, userId) != null) {
+            refreshCoalesced.increment();
+            return true;
+        }
+
+        // 合并记录先于Redis访问写入，使并发请求和期间的吊销都能看到它；访问失败或token已失效时撤回
         String tokenKey = JWT_TOKEN_PREFIX + token;
-        Object userId = redisTemplate.opsForValue().get(tokenKey);
-        
-        if (userId != null) {
-            String userKey = USER_TOKEN_PREFIX + userId;
-            redisTemplate.expire(tokenKey, TOKEN_CACHE_TIME, TimeUnit.HOURS);
-            redisTemplate.expire(userKey, TOKEN_CACHE_TIME, TimeUnit.HOURS);
-            System.out.println("JWT token缓存时间已刷新: " + token);
+        String userKey = USER_TOKEN_PREFIX + userId;
+        Long result;
+        try {
+            result = stringRedisTemplate.execute(REFRESH_SCRIPT, Arrays.asList(tokenKey, userKey),
+                    String.valueOf(refreshThresholdSeconds),
+                    String.valueOf(TimeUnit.HOURS.toSeconds(TOKEN_CACHE_TIME)), token);
+        } catch (RuntimeException e) {
+            recentRefreshes.asMap().remove(tokenHash, userId);
+            throw e;
+        }
+
+        if (result == null || result < 0) {
+            recentRefreshes.asMap().remove(tokenHash, userId);
+            refreshMissing.increment();
+            return false;
+        }
+        if (result > 0) {
+            refreshPerformed.increment();
+            logger.debug("JWT token缓存时间已刷新: {}", Redact.token(token));
+        } else {
+            refreshSkipped.increment();
         }
+        return true;
     }
 }
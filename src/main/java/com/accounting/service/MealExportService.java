@@ -0,0 +1,346 @@
+package com.accounting.service;
+
+import com.accounting.entity.Diary;
+import com.accounting.entity.MealRecord;
+import com.accounting.entity.MealRecordItem;
+import com.accounting.mapper.DiaryMapper;
+import com.accounting.mapper.MealRecordItemMapper;
+import com.accounting.mapper.MealRecordMapper;
+import com.accounting.util.Money;
+import com.accounting.util.UserContext;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 餐饮记录和日记的流式导出
+ * 记录、动态项目、日记三个服务端游标按日期归并，逐行写出到响应流；
+ * 内存占用只与单日数据有关，客户端读取慢时写操作阻塞，游标随之暂停取数；
+ * 每个导出在写完之前一直占用一个数据库连接，因此限制同时进行的导出数，超出时抛出RejectedExecutionException（由控制器转换为429）
+ */
+@Service
+public class MealExportService {
+
+    /**
+     * 导出格式
+     */
+    public enum Format {
+        NDJSON, CSV
+    }
+
+    // 每写出多少行刷新一次响应流
+    private static final int FLUSH_EVERY_ROWS = 200;
+
+    private static final String[] CSV_HEADER = {
+            "type", "recordDate", "breakfast", "lunch", "dinner", "snack", "drink", "total",
+            "customItems", "itemName", "content"
+    };
+
+    @Autowired
+    private MealRecordMapper mealRecordMapper;
+
+    @Autowired
+    private MealRecordItemMapper mealRecordItemMapper;
+
+    @Autowired
+    private DiaryMapper diaryMapper;
+
+    @Autowired
+    private MealRecordItemService mealRecordItemService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${meal-export.max-concurrent:4}")
+    private int maxConcurrent;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    private Semaphore permits;
+
+    @PostConstruct
+    public void init() {
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+        permits = new Semaphore(Math.max(1, maxConcurrent));
+    }
+
+    /**
+     * 创建当前用户的导出响应体；响应体在异步线程中执行，因此在这里先取出用户ID
+     * 并发名额在请求线程上获取，名额已满时直接拒绝，此时响应尚未提交，可以返回429；名额在响应体执行结束后释放
+     */
+    public StreamingResponseBody exportCurrentUser(LocalDate start, LocalDate end, Format format) {
+        Long currentUserId = UserContext.getUserId();
+        if (currentUserId == null) {
+            throw new RuntimeException("用户未登录");
+        }
+        if (!permits.tryAcquire()) {
+            throw new RejectedExecutionException("同时进行的导出已达上限: " + maxConcurrent);
+        }
+        return out -> {
+            try {
+                export(currentUserId, start, end, format, out);
+            } finally {
+                permits.release();
+            }
+        };
+    }
+
+    /**
+     * 导出用户 [start, end) 内的记录和日记；游标只在事务内有效，因此整个导出在一个只读事务中完成
+     */
+    public void export(Long userId, LocalDate start, LocalDate end, Format format, OutputStream out) throws IOException {
+        try {
+            readOnlyTransaction.executeWithoutResult(status -> {
+                try (Cursor<MealRecord> records = mealRecordMapper.cursorByDateRange(userId, start, end);
+                     Cursor<MealRecordItem> items = mealRecordItemMapper.cursorByUserAndDateRange(userId, start, end);
+                     Cursor<Diary> diaries = diaryMapper.cursorByDateRange(userId, start, end);
+                     RowWriter writer = format == Format.CSV ? new CsvWriter(out) : new NdjsonWriter(out)) {
+                    merge(records.iterator(), new Peeking<>(items.iterator()), new Peeking<>(diaries.iterator()), writer);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 按日期归并：每天先写记录（附带当天的动态项目），再写当天的日记
+     */
+    private void merge(Iterator<MealRecord> records, Peeking<MealRecordItem> items, Peeking<Diary> diaries,
+                       RowWriter writer) throws IOException {
+        int rows = 0;
+        MealRecord record = records.hasNext() ? records.next() : null;
+        while (record != null || diaries.peek() != null) {
+            LocalDate date = record != null ? record.getRecordDate() : diaries.peek().getRecordDate();
+            if (diaries.peek() != null && diaries.peek().getRecordDate().isBefore(date)) {
+                date = diaries.peek().getRecordDate();
+            }
+
+            if (record != null && record.getRecordDate().equals(date)) {
+                // 跳过没有对应记录的项目行（导出期间并发删除的记录）
+                while (items.peek() != null && items.peek().getRecordDate().isBefore(date)) {
+                    items.next();
+                }
+                Map<String, Money> dayItems = null;
+                while (items.peek() != null && items.peek().getRecordDate().equals(date)) {
+                    MealRecordItem item = items.next();
+                    if (dayItems == null) {
+                        dayItems = new LinkedHashMap<>();
+                    }
+                    dayItems.put(item.getItemName(), item.getAmount());
+                }
+                String customItems = dayItems != null ? mealRecordItemService.toJson(dayItems) : record.getCustomItems();
+                writer.writeRecord(record, customItems);
+                rows++;
+                record = records.hasNext() ? records.next() : null;
+            }
+            while (diaries.peek() != null && diaries.peek().getRecordDate().equals(date)) {
+                writer.writeDiary(diaries.next());
+                rows++;
+            }
+            if (rows >= FLUSH_EVERY_ROWS) {
+                writer.flush();
+                rows = 0;
+            }
+        }
+    }
+
+    /**
+     * 支持预读一个元素的迭代器
+     */
+    private static final class Peeking<T> {
+        private final Iterator<T> iterator;
+        private T next;
+
+        Peeking(Iterator<T> iterator) {
+            this.iterator = iterator;
+            this.next = iterator.hasNext() ? iterator.next() : null;
+        }
+
+        T peek() {
+            return next;
+        }
+
+        T next() {
+            T current = next;
+            next = iterator.hasNext() ? iterator.next() : null;
+            return current;
+        }
+    }
+
+    private interface RowWriter extends AutoCloseable {
+
+        void writeRecord(MealRecord record, String customItems) throws IOException;
+
+        void writeDiary(Diary diary) throws IOException;
+
+        void flush() throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    /**
+     * 每行一个JSON对象，以 type 区分记录和日记
+     */
+    private final class NdjsonWriter implements RowWriter {
+        private final JsonGenerator generator;
+
+        NdjsonWriter(OutputStream out) throws IOException {
+            generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+        }
+
+        @Override
+        public void writeRecord(MealRecord record, String customItems) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("type", "record");
+            generator.writeStringField("recordDate", record.getRecordDate().toString());
+            writeMoney("breakfast", record.getBreakfast());
+            writeMoney("lunch", record.getLunch());
+            writeMoney("dinner", record.getDinner());
+            writeMoney("snack", record.getSnack());
+            writeMoney("drink", record.getDrink());
+            writeMoney("total", record.getTotal());
+            generator.writeStringField("customItems", customItems);
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        public void writeDiary(Diary diary) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("type", "diary");
+            generator.writeStringField("recordDate", diary.getRecordDate().toString());
+            generator.writeStringField("itemName", diary.getItemName());
+            generator.writeStringField("content", diary.getContent());
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        private void writeMoney(String field, Money value) throws IOException {
+            generator.writeFieldName(field);
+            if (value != null) {
+                generator.writeNumber(value.toBigDecimal());
+            } else {
+                generator.writeNull();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            generator.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            generator.close();
+        }
+    }
+
+    /**
+     * 记录和日记共用一张表头，按 type 列区分；带UTF-8 BOM便于Excel识别中文
+     */
+    private static final class CsvWriter implements RowWriter {
+        private final Writer writer;
+
+        CsvWriter(OutputStream out) throws IOException {
+            writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            writer.write('\uFEFF');
+            writeRow(CSV_HEADER);
+        }
+
+        @Override
+        public void writeRecord(MealRecord record, String customItems) throws IOException {
+            writeRow("record", record.getRecordDate().toString(),
+                    text(record.getBreakfast()), text(record.getLunch()), text(record.getDinner()),
+                    text(record.getSnack()), text(record.getDrink()), text(record.getTotal()),
+                    customItems, null, null);
+        }
+
+        @Override
+        public void writeDiary(Diary diary) throws IOException {
+            writeRow("diary", diary.getRecordDate().toString(),
+                    null, null, null, null, null, null, null, guard(diary.getItemName()), guard(diary.getContent()));
+        }
+
+        private void writeRow(String... values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write(escape(values[i]));
+            }
+            writer.write("\r\n");
+        }
+
+        private static String text(Money value) {
+            return value != null ? value.toString() : null;
+        }
+
+        /**
+         * 用户输入的文本以 = + - @ 开头时加单引号，防止表格软件按公式执行
+         */
+        private static String guard(String value) {
+            if (value == null || value.isEmpty()) {
+                return value;
+            }
+            char first = value.charAt(0);
+            return first == '=' || first == '+' || first == '-' || first == '@' ? "'" + value : value;
+        }
+
+        /**
+         * 按RFC 4180转义
+         */
+        private static String escape(String value) {
+            if (value == null || value.isEmpty()) {
+                return "";
+            }
+            if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                    || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                return '"' + value.replace("\"", "\"\"") + '"';
+            }
+            return value;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            // 只刷新，不关闭响应流（由容器关闭）
+            writer.flush();
+        }
+    }
+}
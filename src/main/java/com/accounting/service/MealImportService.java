@@ -0,0 +1,307 @@
+package com.accounting.service;
+
+import com.accounting.dto.MealRecordRequest;
+import com.accounting.util.MealRecordValidator;
+import com.accounting.util.UserContext;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 餐饮记录批量导入（CSV / NDJSON）
+ * 逐行解析和校验，按日期去重后每 chunk-size 行在一个事务中以多行 INSERT ... ON DUPLICATE KEY UPDATE 写入；
+ * 同一事务内同步维护动态项目、统计汇总，并失效涉及月份的快照缓存。
+ * 导出文件中的日记行会被跳过
+ */
+@Service
+public class MealImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MealImportService.class);
+
+    /**
+     * 导入格式
+     */
+    public enum Format {
+        NDJSON, CSV
+    }
+
+    // 响应中最多返回的行错误数
+    private static final int MAX_REPORTED_ERRORS = 100;
+
+    @Autowired
+    private MealRecordService mealRecordService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${meal-import.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${meal-import.max-rows:50000}")
+    private int maxRows;
+
+    /**
+     * 导入当前用户的记录，返回导入数、跳过数和行错误
+     */
+    public Map<String, Object> importRecords(InputStream in, Format format) throws IOException {
+        Long currentUserId = UserContext.getUserId();
+        if (currentUserId == null) {
+            throw new RuntimeException("用户未登录");
+        }
+
+        ImportContext context = new ImportContext(currentUserId);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        if (format == Format.CSV) {
+            readCsv(reader, context);
+        } else {
+            readNdjson(reader, context);
+        }
+        context.flush();
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("imported", context.imported);
+        result.put("skipped", context.skipped);
+        result.put("errorCount", context.errorCount);
+        result.put("errors", context.errors);
+        logger.info("导入完成: userId={}, 导入={}, 跳过={}, 错误={}",
+                currentUserId, context.imported, context.skipped, context.errorCount);
+        return result;
+    }
+
+    private void readNdjson(BufferedReader reader, ImportContext context) throws IOException {
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null && !context.isFull()) {
+            lineNumber++;
+            if (lineNumber == 1) {
+                line = stripBom(line);
+            }
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                JsonNode node = objectMapper.readTree(line);
+                if (!node.isObject()) {
+                    throw new IllegalArgumentException("每行应为一个JSON对象");
+                }
+                context.accept(lineNumber, (ObjectNode) node);
+            } catch (IllegalArgumentException | IOException e) {
+                context.error(lineNumber, e.getMessage());
+            }
+        }
+    }
+
+    private void readCsv(Reader reader, ImportContext context) throws IOException {
+        CsvReader csv = new CsvReader(reader);
+        List<String> header = csv.next();
+        if (header == null) {
+            return;
+        }
+        header.set(0, stripBom(header.get(0)));
+        int rowNumber = 1;
+        List<String> values;
+        while ((values = csv.next()) != null && !context.isFull()) {
+            rowNumber++;
+            if (values.size() == 1 && values.get(0).trim().isEmpty()) {
+                continue;
+            }
+            ObjectNode node = objectMapper.createObjectNode();
+            for (int i = 0; i < header.size() && i < values.size(); i++) {
+                String value = values.get(i).trim();
+                if (!value.isEmpty()) {
+                    node.put(header.get(i).trim(), value);
+                }
+            }
+            try {
+                context.accept(rowNumber, node);
+            } catch (IllegalArgumentException | IOException e) {
+                context.error(rowNumber, e.getMessage());
+            }
+        }
+    }
+
+    private static String stripBom(String value) {
+        return value.startsWith("\uFEFF") ? value.substring(1) : value;
+    }
+
+    /**
+     * 一次导入的状态：当前批次（按日期去重，后出现的覆盖先出现的）和累计结果
+     */
+    private final class ImportContext {
+        private final Long userId;
+        private final Map<LocalDate, MealRecordRequest> chunk = new LinkedHashMap<>();
+        private final Map<LocalDate, Integer> chunkRows = new HashMap<>();
+        private final List<Map<String, Object>> errors = new ArrayList<>();
+        private int rows;
+        private int imported;
+        private int skipped;
+        private int errorCount;
+
+        ImportContext(Long userId) {
+            this.userId = userId;
+        }
+
+        boolean isFull() {
+            if (rows < maxRows) {
+                return false;
+            }
+            if (rows == maxRows) {
+                // 只报告一次
+                rows++;
+                error(0, "超过单次导入上限" + maxRows + "行，其余数据未处理");
+            }
+            return true;
+        }
+
+        void accept(int row, ObjectNode node) throws IOException {
+            rows++;
+            JsonNode type = node.get("type");
+            if (type != null && !"record".equals(type.asText())) {
+                skipped++;
+                return;
+            }
+            // 导出文件中 customItems 为JSON字符串
+            JsonNode customItems = node.get("customItems");
+            if (customItems != null && customItems.isTextual()) {
+                String text = customItems.asText().trim();
+                if (text.isEmpty()) {
+                    node.remove("customItems");
+                } else {
+                    node.set("customItems", objectMapper.readTree(text));
+                }
+            }
+            MealRecordRequest request = objectMapper.treeToValue(node, MealRecordRequest.class);
+            MealRecordValidator.validate(request);
+
+            chunk.put(request.getRecordDate(), request);
+            chunkRows.put(request.getRecordDate(), row);
+            if (chunk.size() >= chunkSize) {
+                flush();
+            }
+        }
+
+        void error(int row, String message) {
+            errorCount++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                Map<String, Object> error = new HashMap<>();
+                error.put("row", row);
+                error.put("message", message);
+                errors.add(error);
+            }
+        }
+
+        /**
+         * 写入当前批次；失败时整批回滚并逐行记录错误
+         */
+        void flush() {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            List<MealRecordRequest> requests = new ArrayList<>(chunk.values());
+            try {
+                transactionTemplate.executeWithoutResult(status -> mealRecordService.saveAll(userId, requests));
+                imported += requests.size();
+            } catch (Exception e) {
+                logger.warn("导入批次写入失败: userId={}, {}", userId, e.getMessage());
+                for (MealRecordRequest request : requests) {
+                    error(chunkRows.get(request.getRecordDate()), "写入失败: " + e.getMessage());
+                }
+            }
+            chunk.clear();
+            chunkRows.clear();
+        }
+    }
+
+    /**
+     * RFC 4180 CSV逐条读取（支持引号内的逗号、换行和 "" 转义）
+     */
+    private static final class CsvReader {
+        private final Reader reader;
+        private int pending = -2;
+
+        CsvReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * 读取下一条记录，已到末尾返回null
+         */
+        List<String> next() throws IOException {
+            int c = read();
+            if (c == -1) {
+                return null;
+            }
+            List<String> values = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            while (true) {
+                if (quoted) {
+                    if (c == -1) {
+                        throw new IOException("CSV引号未闭合");
+                    }
+                    if (c == '"') {
+                        int following = read();
+                        if (following == '"') {
+                            field.append('"');
+                        } else {
+                            quoted = false;
+                            c = following;
+                            continue;
+                        }
+                    } else {
+                        field.append((char) c);
+                    }
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (c == ',') {
+                    values.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\n' || c == -1) {
+                    break;
+                } else if (c == '\r') {
+                    int following = read();
+                    if (following != '\n') {
+                        pending = following;
+                    }
+                    break;
+                } else {
+                    field.append((char) c);
+                }
+                c = read();
+            }
+            values.add(field.toString());
+            return values;
+        }
+
+        private int read() throws IOException {
+            if (pending != -2) {
+                int c = pending;
+                pending = -2;
+                return c;
+            }
+            return reader.read();
+        }
+    }
+}
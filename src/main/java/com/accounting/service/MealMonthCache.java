@@ -0,0 +1,261 @@
+package com.accounting.service;
+
+import com.accounting.entity.MealRecord;
+import com.accounting.redis.RedisCodec;
+import com.accounting.redis.RedisValueStore;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * 餐饮记录月快照缓存：以 用户ID + yyyy-MM 为键缓存整月的记录
+ * 按日期查询、月份记录日期、日期范围查询都从同一个月快照读取
+ * 本地Caffeine层和Redis共享层可分别开关，写操作后失效并广播到其他节点
+ * 两层都按代数写回：每次失效递增代数，加载期间发生过失效的结果不写入缓存，避免旧数据在失效之后被写回
+ */
+@Component
+public class MealMonthCache implements MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(MealMonthCache.class);
+
+    public static final String EVICT_CHANNEL = "meal_month_evict";
+    public static final String CACHE_PREFIX = "meal_month:";
+    // 月快照的写代数（字符串计数器），与快照键一一对应
+    public static final String GENERATION_PREFIX = "meal_month_gen:";
+
+    // 本地代数的分段数：按键哈希分段，同段其他键的失效只会让加载结果少写一次本地缓存
+    private static final int LOCAL_GENERATION_STRIPES = 256;
+
+    /**
+     * 加载写回：代数与加载前读取的一致才写入快照
+     * KEYS: 快照键, 代数键；ARGV: 期望代数, 快照, 过期秒数
+     */
+    static final RedisScript<Long> WRITE_SCRIPT = new DefaultRedisScript<>(
+            "if (redis.call('GET', KEYS[2]) or '0') ~= ARGV[1] then return 0 end " +
+            "redis.call('SET', KEYS[1], ARGV[2], 'EX', ARGV[3]) " +
+            "return 1", Long.class);
+
+    /**
+     * 失效：递增代数（续期到与快照相同的过期时间）并删除快照
+     * KEYS: 快照键, 代数键；ARGV: 过期秒数
+     */
+    static final RedisScript<Long> EVICT_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('INCR', KEYS[2]) " +
+            "redis.call('EXPIRE', KEYS[2], ARGV[1]) " +
+            "return redis.call('DEL', KEYS[1])", Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisValueStore redisValueStore;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${meal-cache.local-enabled:true}")
+    private boolean localEnabled;
+
+    @Value("${meal-cache.redis-enabled:true}")
+    private boolean redisEnabled;
+
+    @Value("${meal-cache.local-maximum-size:5000}")
+    private long localMaximumSize;
+
+    @Value("${meal-cache.local-ttl-seconds:600}")
+    private long localTtlSeconds;
+
+    @Value("${meal-cache.redis-ttl-seconds:3600}")
+    private long redisTtlSeconds;
+
+    private Cache<String, List<MealRecord>> localCache;
+
+    // 本地失效代数（按键哈希分段）
+    private final AtomicLongArray localGenerations = new AtomicLongArray(LOCAL_GENERATION_STRIPES);
+
+    private Counter localEvictions;
+    private Counter redisHits;
+    private Counter redisMisses;
+    private Counter redisEvictions;
+
+    @PostConstruct
+    public void init() {
+        localCache = Caffeine.newBuilder()
+                .maximumSize(localMaximumSize)
+                .expireAfterWrite(localTtlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, localCache, "meal_month_local");
+        // Caffeine的驱逐指标只包含容量和过期驱逐，主动失效单独计数
+        localEvictions = counter("local", "evict");
+        redisHits = counter("redis", "hit");
+        redisMisses = counter("redis", "miss");
+        redisEvictions = counter("redis", "evict");
+    }
+
+    private Counter counter(String tier, String result) {
+        return Counter.builder("meal.month.cache")
+                .description("餐饮记录月快照缓存访问次数")
+                .tag("tier", tier)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 是否启用了任一缓存层
+     */
+    public boolean isEnabled() {
+        return localEnabled || redisEnabled;
+    }
+
+    /**
+     * 读取月快照，未命中时通过loader从数据库加载（返回只读列表）
+     */
+    public List<MealRecord> getMonth(Long userId, YearMonth month, Supplier<List<MealRecord>> loader) {
+        String key = key(userId, month);
+        int stripe = stripe(key);
+        long localGeneration = localGenerations.get(stripe);
+        if (localEnabled) {
+            List<MealRecord> cached = localCache.getIfPresent(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        List<MealRecord> records = redisEnabled ? readRedis(key) : null;
+        if (records == null) {
+            String generation = redisEnabled ? readGeneration(userId, month) : null;
+            records = Collections.unmodifiableList(loader.get());
+            if (generation != null) {
+                writeRedis(key, generationKey(userId, month), generation, records);
+            }
+        }
+        if (localEnabled) {
+            localCache.put(key, records);
+            // 失效先递增代数再清除本地缓存：代数已变化时失效可能早于写入，撤回本次写入
+            if (localGenerations.get(stripe) != localGeneration) {
+                localCache.invalidate(key);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * 失效指定日期所在月份的快照；在事务中调用时提交后再失效一次，避免并发读把旧数据写回缓存
+     */
+    public void evict(Long userId, LocalDate date) {
+        YearMonth month = YearMonth.from(date);
+        evictKey(userId, month);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evictKey(userId, month);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        invalidateLocal(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    private void evictKey(Long userId, YearMonth month) {
+        String key = key(userId, month);
+        invalidateLocal(key);
+        try {
+            if (redisEnabled) {
+                stringRedisTemplate.execute(EVICT_SCRIPT, Arrays.asList(key, generationKey(userId, month)),
+                        String.valueOf(redisTtlSeconds));
+                redisEvictions.increment();
+            }
+            stringRedisTemplate.convertAndSend(EVICT_CHANNEL, key);
+        } catch (Exception e) {
+            logger.warn("失效月快照缓存失败: {}", e.getMessage());
+        }
+    }
+
+    private void invalidateLocal(String key) {
+        localGenerations.incrementAndGet(stripe(key));
+        localCache.invalidate(key);
+        localEvictions.increment();
+    }
+
+    /**
+     * 加载前读取Redis中的代数（不存在为 "0"）；读取失败时返回null，本次不写回Redis
+     */
+    private String readGeneration(Long userId, YearMonth month) {
+        try {
+            String generation = stringRedisTemplate.opsForValue().get(generationKey(userId, month));
+            return generation != null ? generation : "0";
+        } catch (Exception e) {
+            logger.warn("读取月快照代数失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private List<MealRecord> readRedis(String key) {
+        try {
+            List<MealRecord> records = redisValueStore.get(key);
+            if (records == null) {
+                redisMisses.increment();
+                return null;
+            }
+            redisHits.increment();
+            return Collections.unmodifiableList(records);
+        } catch (Exception e) {
+            logger.warn("读取月快照缓存失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeRedis(String key, String generationKey, String generation, List<MealRecord> records) {
+        try {
+            byte[] value = ((RedisCodec<List<MealRecord>>) redisValueStore.codecFor(key)).encode(records);
+            redisValueStore.getTemplate().execute(WRITE_SCRIPT, Arrays.asList(key, generationKey),
+                    generation.getBytes(StandardCharsets.UTF_8), value,
+                    String.valueOf(redisTtlSeconds).getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            logger.warn("写入月快照缓存失败: {}", e.getMessage());
+        }
+    }
+
+    private static int stripe(String key) {
+        return Math.floorMod(key.hashCode(), LOCAL_GENERATION_STRIPES);
+    }
+
+    private static String key(Long userId, YearMonth month) {
+        return CACHE_PREFIX + userId + ":" + month;
+    }
+
+    private static String generationKey(Long userId, YearMonth month) {
+        return GENERATION_PREFIX + userId + ":" + month;
+    }
+}
@@ -0,0 +1,395 @@
+package com.accounting.service;
+
+import com.accounting.dto.ItemTotal;
+import com.accounting.entity.MealRecord;
+import com.accounting.entity.MealRecordItem;
+import com.accounting.mapper.MealRecordItemMapper;
+import com.accounting.mapper.MealRecordMapper;
+import com.accounting.util.MealRecordValidator;
+import com.accounting.util.Money;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * 餐饮记录动态项目服务
+ * 项目按行存储在 meal_record_items 中，可单独增删改并在SQL中汇总；
+ * 对外仍以原来的JSON字符串填充 MealRecord.customItems，接口格式不变。
+ * 旧数据保存在 meal_records.custom_items 列中，由定时任务分批迁移，写操作前也会先迁移当前记录；
+ * 迁移任务以Redis锁保证同一时刻只有一个节点执行，进度（已处理到的主键）和完成标记保存在Redis中，
+ * 全部处理完后各节点不再调度
+ */
+@Service
+public class MealRecordItemService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MealRecordItemService.class);
+
+    private static final TypeReference<LinkedHashMap<String, Money>> ITEMS_TYPE =
+            new TypeReference<LinkedHashMap<String, Money>>() {};
+
+    private static final String BACKFILL_LOCK_KEY = "meal_items_backfill:lock";
+    // 已处理到的最大记录ID，之前的记录（包括无法迁移的）不再重复扫描
+    private static final String BACKFILL_CURSOR_KEY = "meal_items_backfill:after_id";
+    private static final String BACKFILL_DONE_KEY = "meal_items_backfill:done";
+
+    /**
+     * 仅在锁仍属于自己时续期
+     */
+    private static final RedisScript<Long> EXTEND_LOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('PEXPIRE', KEYS[1], ARGV[2]) end " +
+            "return 0", Long.class);
+
+    /**
+     * 仅在锁仍属于自己时释放
+     */
+    private static final RedisScript<Long> RELEASE_LOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end " +
+            "return 0", Long.class);
+
+    @Autowired
+    private MealRecordItemMapper mealRecordItemMapper;
+
+    @Autowired
+    private MealRecordMapper mealRecordMapper;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    @Value("${meal-items.backfill-enabled:true}")
+    private boolean backfillEnabled;
+
+    @Value("${meal-items.backfill-batch-size:500}")
+    private int backfillBatchSize;
+
+    @Value("${meal-items.backfill-initial-delay-ms:30000}")
+    private long backfillInitialDelayMs;
+
+    @Value("${meal-items.backfill-interval-ms:600000}")
+    private long backfillIntervalMs;
+
+    @Value("${meal-items.backfill-lock-ms:300000}")
+    private long backfillLockMs;
+
+    private volatile ScheduledFuture<?> backfillTask;
+
+    /**
+     * 启用时按固定间隔调度迁移任务，迁移完成后取消
+     */
+    @PostConstruct
+    public void scheduleBackfill() {
+        if (backfillEnabled) {
+            backfillTask = taskScheduler.scheduleWithFixedDelay(this::backfillLegacyItems,
+                    Instant.now().plusMillis(backfillInitialDelayMs), Duration.ofMillis(backfillIntervalMs));
+        }
+    }
+
+    /**
+     * 用完整的项目集合替换记录的动态项目：删除不再存在的项目，其余逐项写入
+     */
+    public void replaceItems(MealRecord record, Map<String, Money> items) {
+        List<String> names = items != null ? new ArrayList<>(items.keySet()) : Collections.emptyList();
+        mealRecordItemMapper.deleteExcept(record.getId(), names);
+        if (!names.isEmpty()) {
+            mealRecordItemMapper.upsertBatch(toItems(record, items));
+        }
+    }
+
+    /**
+     * 批量替换多条记录的动态项目：一条语句删除旧项目，一条语句写入新项目
+     */
+    public void replaceItems(List<MealRecord> records, Function<MealRecord, Map<String, Money>> itemsOf) {
+        if (records.isEmpty()) {
+            return;
+        }
+        List<Long> recordIds = new ArrayList<>(records.size());
+        List<MealRecordItem> rows = new ArrayList<>();
+        for (MealRecord record : records) {
+            recordIds.add(record.getId());
+            Map<String, Money> items = itemsOf.apply(record);
+            if (items != null && !items.isEmpty()) {
+                rows.addAll(toItems(record, items));
+            }
+        }
+        mealRecordItemMapper.deleteByRecordIds(recordIds);
+        if (!rows.isEmpty()) {
+            mealRecordItemMapper.upsertBatch(rows);
+        }
+    }
+
+    /**
+     * 删除记录中的指定项目
+     *
+     * @return 实际删除的项目数
+     */
+    public int deleteItems(Long recordId, List<String> itemNames) {
+        if (itemNames == null || itemNames.isEmpty()) {
+            return 0;
+        }
+        return mealRecordItemMapper.deleteByNames(recordId, itemNames);
+    }
+
+    /**
+     * 删除记录的全部项目
+     */
+    public void deleteAll(Long recordId) {
+        mealRecordItemMapper.deleteExcept(recordId, Collections.emptyList());
+    }
+
+    /**
+     * 记录中所有项目的金额合计
+     */
+    public Money sumAmount(Long recordId) {
+        return Money.orZero(mealRecordItemMapper.sumByRecordId(recordId));
+    }
+
+    /**
+     * 按项目名称汇总 [start, end) 内的消费（SQL分组）
+     */
+    public List<ItemTotal> sumByItem(Long userId, LocalDate start, LocalDate end) {
+        return mealRecordItemMapper.sumByItem(userId, start, end);
+    }
+
+    /**
+     * 逐个token解析旧JSON列中的项目并回调，不构建Map；非数字的值被跳过
+     */
+    public void forEachLegacyItem(String json, BiConsumer<String, Money> consumer) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (value == JsonToken.VALUE_NUMBER_INT || value == JsonToken.VALUE_NUMBER_FLOAT) {
+                    consumer.accept(name, Money.of(parser.getDecimalValue()));
+                } else if (value == JsonToken.VALUE_STRING) {
+                    try {
+                        consumer.accept(name, Money.of(new BigDecimal(parser.getText().trim())));
+                    } catch (NumberFormatException e) {
+                        // 非数字金额，跳过
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    /**
+     * 一次查询 [start, end) 内的项目，按原JSON格式填入各记录的 customItems
+     * 没有项目行的记录保留列中的值（尚未迁移的旧数据）
+     */
+    public void attachItems(Long userId, LocalDate start, LocalDate end, List<MealRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        Map<Long, Map<String, Money>> itemsByRecord = new HashMap<>();
+        for (MealRecordItem item : mealRecordItemMapper.selectByUserAndDateRange(userId, start, end)) {
+            itemsByRecord.computeIfAbsent(item.getRecordId(), id -> new LinkedHashMap<>())
+                    .put(item.getItemName(), item.getAmount());
+        }
+        for (MealRecord record : records) {
+            Map<String, Money> items = itemsByRecord.get(record.getId());
+            if (items != null) {
+                record.setCustomItems(toJson(items));
+            }
+        }
+    }
+
+    /**
+     * 序列化为接口使用的JSON字符串，没有项目时返回null
+     */
+    public String toJson(Map<String, Money> items) {
+        if (items == null || items.isEmpty()) {
+            return null;
+        }
+        try {
+            return objectMapper.writeValueAsString(items);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("序列化动态项目失败", e);
+        }
+    }
+
+    /**
+     * 把记录中旧的JSON列迁移为项目行，并清空该列（需在事务中调用）
+     * 已存在的项目行不会被覆盖；JSON无法解析或项目名称超过列长度时保留原列不处理
+     *
+     * @return 是否已迁移
+     */
+    public boolean migrateLegacy(MealRecord record) {
+        String json = record.getCustomItems();
+        if (json == null || json.trim().isEmpty()) {
+            return false;
+        }
+        Map<String, Money> items;
+        try {
+            items = objectMapper.readValue(json, ITEMS_TYPE);
+        } catch (Exception e) {
+            logger.warn("无法解析旧动态项目数据: recordId={}, {}", record.getId(), e.getMessage());
+            return false;
+        }
+        if (items != null) {
+            for (String name : items.keySet()) {
+                // INSERT IGNORE 会把超长名称静默截断，整条记录保留旧格式
+                if (name.length() > MealRecordValidator.MAX_ITEM_NAME_LENGTH) {
+                    logger.warn("旧动态项目名称超过{}个字符，保留原数据不迁移: recordId={}, 名称={}",
+                            MealRecordValidator.MAX_ITEM_NAME_LENGTH, record.getId(), name);
+                    return false;
+                }
+            }
+        }
+        if (items != null && !items.isEmpty()) {
+            mealRecordItemMapper.insertIgnoreBatch(toItems(record, items));
+        }
+        mealRecordMapper.clearLegacyItems(record.getId(), json);
+        record.setCustomItems(null);
+        return true;
+    }
+
+    /**
+     * 在线分批迁移旧JSON列：按主键顺序每批一个事务，从上次的进度继续，扫描到末尾后记录完成标记并停止调度
+     * 获取不到锁（其他节点正在迁移）或Redis不可用时跳过本次
+     */
+    public void backfillLegacyItems() {
+        String lock = null;
+        try {
+            if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(BACKFILL_DONE_KEY))) {
+                cancelBackfill();
+                return;
+            }
+            lock = tryBackfillLock();
+            if (lock == null) {
+                return;
+            }
+            runBackfill(lock);
+        } catch (Exception e) {
+            logger.warn("动态项目迁移未执行: {}", e.getMessage());
+        } finally {
+            if (lock != null) {
+                releaseBackfillLock(lock);
+            }
+        }
+    }
+
+    private void runBackfill(String lock) {
+        String cursor = stringRedisTemplate.opsForValue().get(BACKFILL_CURSOR_KEY);
+        long afterId = cursor != null ? Long.parseLong(cursor) : 0L;
+        int migrated = 0;
+        int skipped = 0;
+        while (true) {
+            List<MealRecord> batch = mealRecordMapper.selectLegacyItemsBatch(afterId, backfillBatchSize);
+            if (batch.isEmpty()) {
+                stringRedisTemplate.opsForValue().set(BACKFILL_DONE_KEY, String.valueOf(System.currentTimeMillis()));
+                logger.info("动态项目迁移完成: 本次迁移记录数={}, 保留旧格式={}", migrated, skipped);
+                cancelBackfill();
+                return;
+            }
+            int batchMigrated;
+            try {
+                Integer count = transactionTemplate.execute(status -> {
+                    int n = 0;
+                    for (MealRecord record : batch) {
+                        if (migrateLegacy(record)) {
+                            n++;
+                        }
+                    }
+                    return n;
+                });
+                batchMigrated = count != null ? count : 0;
+            } catch (Exception e) {
+                // 不推进进度，下次调度从这一批重试
+                logger.error("迁移动态项目失败: 起始记录ID={}", batch.get(0).getId(), e);
+                return;
+            }
+            migrated += batchMigrated;
+            skipped += batch.size() - batchMigrated;
+            afterId = batch.get(batch.size() - 1).getId();
+            stringRedisTemplate.opsForValue().set(BACKFILL_CURSOR_KEY, String.valueOf(afterId));
+            if (!extendBackfillLock(lock)) {
+                logger.warn("动态项目迁移锁已失效，停止本次迁移: 已处理到记录ID={}", afterId);
+                return;
+            }
+        }
+    }
+
+    private void cancelBackfill() {
+        ScheduledFuture<?> task = backfillTask;
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+
+    private String tryBackfillLock() {
+        String token = UUID.randomUUID().toString();
+        Boolean acquired = stringRedisTemplate.opsForValue()
+                .setIfAbsent(BACKFILL_LOCK_KEY, token, backfillLockMs, TimeUnit.MILLISECONDS);
+        return Boolean.TRUE.equals(acquired) ? token : null;
+    }
+
+    private boolean extendBackfillLock(String token) {
+        Long extended = stringRedisTemplate.execute(EXTEND_LOCK_SCRIPT, Collections.singletonList(BACKFILL_LOCK_KEY),
+                token, String.valueOf(backfillLockMs));
+        return extended != null && extended > 0;
+    }
+
+    private void releaseBackfillLock(String token) {
+        try {
+            stringRedisTemplate.execute(RELEASE_LOCK_SCRIPT, Collections.singletonList(BACKFILL_LOCK_KEY), token);
+        } catch (Exception e) {
+            // 锁会在 backfill-lock-ms 后自动过期
+        }
+    }
+
+    private static List<MealRecordItem> toItems(MealRecord record, Map<String, Money> items) {
+        List<MealRecordItem> rows = new ArrayList<>(items.size());
+        for (Map.Entry<String, Money> entry : items.entrySet()) {
+            MealRecordItem item = new MealRecordItem();
+            item.setRecordId(record.getId());
+            item.setUserId(record.getUserId());
+            item.setRecordDate(record.getRecordDate());
+            item.setItemName(entry.getKey());
+            item.setAmount(entry.getValue());
+            rows.add(item);
+        }
+        return rows;
+    }
+}
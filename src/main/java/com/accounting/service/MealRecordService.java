@@ -1,112 +1,287 @@
 package com.accounting.service;
 
+import com.accounting.dto.ItemTotal;
 import com.accounting.dto.MealRecordRequest;
+import com.accounting.dto.MealRecordUpsertState;
+import com.accounting.dto.MonthlyTotal;
 import com.accounting.entity.MealRecord;
+import com.accounting.entity.MealStat;
+import com.accounting.util.ETags;
+import com.accounting.util.Money;
 import com.accounting.util.UserContext;
+import com.accounting.util.VersionConflictException;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 @Service
 public class MealRecordService {
 
+    private static final Logger logger = LoggerFactory.getLogger(MealRecordService.class);
+
     @Autowired
     private com.accounting.mapper.MealRecordMapper mealRecordMapper;
     
     @Autowired
-    private RedisTemplate<String, Object> redisTemplate;
+    private UserSettingService userSettingService;
+    
+    @Autowired
+    private MealMonthCache mealMonthCache;
+    
+    @Autowired
+    private MealStatsService mealStatsService;
+    
+    @Autowired
+    private MealRecordItemService mealRecordItemService;
+    
+    @Autowired
+    private TransactionTemplate transactionTemplate;
     
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    // 日期范围超过该月数时直接查询数据库，不逐月读取快照
+    private static final int MAX_CACHED_RANGE_MONTHS = 12;
+    
+    // 无 If-Match 时，服务端合并遇到版本冲突的最大尝试次数
+    private static final int MAX_MERGE_ATTEMPTS = 3;
+    
+    // 固定餐饮项目（按项目统计时的输出顺序）
+    private static final List<String> FIXED_MEAL_ITEMS = List.of("breakfast", "lunch", "dinner", "snack", "drink");
+    
+    // 年度统计在数据库中按月分组；关闭时在Java中单次遍历累加
+    @Value("${meal-stats.year-statistics-in-database:true}")
+    private boolean yearStatisticsInDatabase;
 
     /**
      * 保存或更新餐饮记录
+     *
+     * @param ifMatch 请求的 If-Match，为null时无条件覆盖；否则记录必须存在且ETag一致
      */
-    public MealRecord saveOrUpdate(MealRecordRequest request) {
+    @Transactional
+    public MealRecord saveOrUpdate(MealRecordRequest request, String ifMatch) {
         // 获取当前用户ID
         Long currentUserId = UserContext.getUserId();
         if (currentUserId == null) {
             throw new RuntimeException("用户未登录");
         } 
-        // 检查是否已存在该日期的记录（仅限当前用户）
-        QueryWrapper<MealRecord> queryWrapper = new QueryWrapper<>();
-        queryWrapper.eq("record_date", request.getRecordDate())
-                   .eq("user_id", currentUserId);
-        MealRecord existingRecord = mealRecordMapper.selectOne(queryWrapper);
-
-        MealRecord record;
-        if (existingRecord != null) {
-            // 更新现有记录
-            record = existingRecord;
-        } else {
-            // 创建新记录
-            record = new MealRecord();
-            record.setRecordDate(request.getRecordDate());
-            record.setUserId(currentUserId);
-            record.setCreateTime(LocalDateTime.now());
-        }
-
-        // 设置餐饮数据
-        record.setBreakfast(request.getBreakfast() != null ? request.getBreakfast() : BigDecimal.ZERO);
-        record.setLunch(request.getLunch() != null ? request.getLunch() : BigDecimal.ZERO);
-        record.setDinner(request.getDinner() != null ? request.getDinner() : BigDecimal.ZERO);
-        record.setSnack(request.getSnack() != null ? request.getSnack() : BigDecimal.ZERO);
-        record.setDrink(request.getDrink() != null ? request.getDrink() : BigDecimal.ZERO);
-
-        // 处理动态餐饮项目
-        if (request.getCustomItems() != null && !request.getCustomItems().isEmpty()) {
-            try {
-                String customItemsJson = objectMapper.writeValueAsString(request.getCustomItems());
-                System.out.println("动态项目JSON: " + customItemsJson);
-                record.setCustomItems(customItemsJson);
-            } catch (JsonProcessingException e) {
-                System.err.println("序列化动态项目失败: " + e.getMessage());
-                throw new RuntimeException("序列化动态项目失败", e);
-            }
-        } else {
-            System.out.println("没有动态项目数据");
-            record.setCustomItems(null);
+
+        if (ifMatch != null) {
+            return updateIfMatch(currentUserId, request, ifMatch);
         }
 
-        // 计算总计（包括动态项目）
-        BigDecimal total = record.getBreakfast()
-                .add(record.getLunch())
-                .add(record.getDinner())
-                .add(record.getSnack())
-                .add(record.getDrink());
-        
-        // 加上动态项目的金额
-        if (request.getCustomItems() != null) {
-            for (BigDecimal amount : request.getCustomItems().values()) {
-                if (amount != null) {
-                    total = total.add(amount);
-                }
-            }
+        LocalDateTime now = LocalDateTime.now();
+        MealRecord record = new MealRecord();
+        record.setUserId(currentUserId);
+        record.setRecordDate(request.getRecordDate());
+        record.setCreateTime(now);
+        record.setUpdateTime(now);
+        applyAmounts(record, request);
+
+        // 动态项目的金额合计
+        long customCents = customCents(request);
+
+        // 单条语句新增或覆盖当天记录（并发保存同一天不会违反 uk_user_record_date），不加 FOR UPDATE 锁
+        mealRecordMapper.upsert(record, Money.ofCents(customCents));
+        MealRecordUpsertState state = mealRecordMapper.selectUpsertState();
+        boolean inserted = state.getPreviousTotal() == null;
+        record.setId(state.getId());
+        if (inserted) {
+            record.setVersion(0);
+        } else {
+            record.setCreateTime(state.getPreviousCreateTime());
+            record.setVersion(state.getPreviousVersion() + 1);
         }
-        
+
+        // 与语句中的计算一致：固定项目 + 动态项目
+        Money total = Money.ofCents(fixedCents(record) + customCents);
         record.setTotal(total);
 
+        mealRecordItemService.replaceItems(record, request.getCustomItems());
+        record.setCustomItems(mealRecordItemService.toJson(request.getCustomItems()));
+        mealStatsService.applyDelta(currentUserId, record.getRecordDate(),
+                inserted ? 1 : 0, total.minus(state.getPreviousTotal()));
+        mealMonthCache.evict(currentUserId, record.getRecordDate());
+
+        return record;
+    }
+
+    /**
+     * If-Match 条件保存：按读取时的版本号更新，期间被其他请求修改时抛出冲突（整个事务回滚）
+     */
+    private MealRecord updateIfMatch(Long userId, MealRecordRequest request, String ifMatch) {
+        MealRecord record = selectByDate(userId, request.getRecordDate());
+        checkIfMatch(record, ifMatch);
+        Money oldTotal = Money.orZero(record.getTotal());
+
+        applyAmounts(record, request);
+        Money total = Money.ofCents(fixedCents(record) + customCents(request));
+        record.setTotal(total);
+        // 动态项目整体替换为项目行，旧JSON列一并清空
+        record.setCustomItems(null);
         record.setUpdateTime(LocalDateTime.now());
+        if (mealRecordMapper.updateById(record) == 0) {
+            throw new VersionConflictException("记录已被修改，请刷新后重试");
+        }
 
-        if (existingRecord != null) {
-            mealRecordMapper.updateById(record);
-        } else {
-            mealRecordMapper.insert(record);
+        mealRecordItemService.replaceItems(record, request.getCustomItems());
+        record.setCustomItems(mealRecordItemService.toJson(request.getCustomItems()));
+        mealStatsService.applyDelta(userId, record.getRecordDate(), 0, total.minus(oldTotal));
+        mealMonthCache.evict(userId, record.getRecordDate());
+        return record;
+    }
+
+    /**
+     * 批量保存当前用户多天的记录（日期互不相同，已由 MealRecordValidator.validateBatch 校验）
+     */
+    @Transactional
+    public List<Map<String, Object>> saveBatch(List<MealRecordRequest> requests) {
+        Long currentUserId = UserContext.getUserId();
+        if (currentUserId == null) {
+            throw new RuntimeException("用户未登录");
         }
+        return saveAll(currentUserId, requests);
+    }
+
+    /**
+     * 在当前事务中写入一批记录（日期互不相同）：先按日期顺序锁定当天记录（不存在时插入占位行），
+     * 再加锁读取旧总计，一条多行upsert写入后替换动态项目，汇总增量按月合并后累加。
+     * 旧总计在持有行锁后读取，并发写入同一天的保存或批次会等待本事务提交，汇总增量不会重复或遗漏
+     *
+     * @return 按请求顺序的每日结果：recordDate、id、total、created
+     */
+    public List<Map<String, Object>> saveAll(Long userId, List<MealRecordRequest> requests) {
+        LocalDateTime now = LocalDateTime.now();
+        List<MealRecord> records = new ArrayList<>(requests.size());
+        List<LocalDate> dates = new ArrayList<>(requests.size());
+        Map<LocalDate, Map<String, Money>> itemsByDate = new HashMap<>();
+        for (MealRecordRequest request : requests) {
+            MealRecord record = toRecord(userId, request, now);
+            records.add(record);
+            dates.add(record.getRecordDate());
+            itemsByDate.put(record.getRecordDate(), request.getCustomItems());
+        }
+
+        List<MealRecord> lockOrder = new ArrayList<>(records);
+        lockOrder.sort(Comparator.comparing(MealRecord::getRecordDate));
+        mealRecordMapper.lockByDates(lockOrder);
 
+        List<MealRecord> locked = mealRecordMapper.selectByDatesForUpdate(userId, dates);
+        Map<LocalDate, MealRecord> existing = new HashMap<>();
+        for (MealRecord row : locked) {
+            row.setUserId(userId);
+            existing.put(row.getRecordDate(), row);
+        }
+
+        Map<YearMonth, long[]> deltas = new LinkedHashMap<>();
+        Map<LocalDate, Boolean> created = new HashMap<>();
+        for (MealRecord record : records) {
+            MealRecord row = existing.get(record.getRecordDate());
+            boolean placeholder = row.getVersion() != null && row.getVersion() < 0;
+            created.put(record.getRecordDate(), placeholder);
+            Money oldTotal = placeholder ? null : Money.orZero(row.getTotal());
+            long[] delta = deltas.computeIfAbsent(YearMonth.from(record.getRecordDate()), month -> new long[2]);
+            delta[0] += placeholder ? 1 : 0;
+            delta[1] += record.getTotal().minus(oldTotal).getCents();
+        }
+        mealRecordMapper.upsertBatch(records);
+
+        mealRecordItemService.replaceItems(locked, record -> itemsByDate.get(record.getRecordDate()));
+
+        deltas.forEach((month, delta) -> {
+            mealStatsService.applyDelta(userId, month.atDay(1), (int) delta[0], Money.ofCents(delta[1]));
+            mealMonthCache.evict(userId, month.atDay(1));
+        });
+
+        List<Map<String, Object>> results = new ArrayList<>(records.size());
+        for (MealRecord record : records) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("recordDate", record.getRecordDate());
+            result.put("id", existing.get(record.getRecordDate()).getId());
+            result.put("total", record.getTotal());
+            result.put("created", created.get(record.getRecordDate()));
+            results.add(result);
+        }
+        return results;
+    }
+
+    /**
+     * 按保存接口的规则构建记录：缺省金额为0，总计包含动态项目
+     */
+    private static MealRecord toRecord(Long userId, MealRecordRequest request, LocalDateTime now) {
+        MealRecord record = new MealRecord();
+        record.setUserId(userId);
+        record.setRecordDate(request.getRecordDate());
+        applyAmounts(record, request);
+        record.setTotal(Money.ofCents(fixedCents(record) + customCents(request)));
+        record.setCreateTime(now);
+        record.setUpdateTime(now);
         return record;
     }
 
+    /**
+     * 设置固定项目金额，缺省为0
+     */
+    private static void applyAmounts(MealRecord record, MealRecordRequest request) {
+        record.setBreakfast(Money.orZero(request.getBreakfast()));
+        record.setLunch(Money.orZero(request.getLunch()));
+        record.setDinner(Money.orZero(request.getDinner()));
+        record.setSnack(Money.orZero(request.getSnack()));
+        record.setDrink(Money.orZero(request.getDrink()));
+    }
+
+    /**
+     * 固定项目金额合计（分），null视为0
+     */
+    private static long fixedCents(MealRecord record) {
+        return Money.orZero(record.getBreakfast()).getCents()
+                + Money.orZero(record.getLunch()).getCents()
+                + Money.orZero(record.getDinner()).getCents()
+                + Money.orZero(record.getSnack()).getCents()
+                + Money.orZero(record.getDrink()).getCents();
+    }
+
+    /**
+     * 请求中动态项目金额合计（分）
+     */
+    private static long customCents(MealRecordRequest request) {
+        long cents = 0L;
+        if (request.getCustomItems() != null) {
+            for (Money amount : request.getCustomItems().values()) {
+                if (amount != null) {
+                    cents += amount.getCents();
+                }
+            }
+        }
+        return cents;
+    }
+
+    /**
+     * 查询用户指定日期的记录
+     */
+    private MealRecord selectByDate(Long userId, LocalDate date) {
+        QueryWrapper<MealRecord> queryWrapper = new QueryWrapper<>();
+        queryWrapper.eq("record_date", date)
+                   .eq("user_id", userId);
+        return mealRecordMapper.selectOne(queryWrapper);
+    }
+
     /**
      * 根据日期获取餐饮记录
      */
@@ -116,175 +291,192 @@ public class MealRecordService {
             throw new RuntimeException("用户未登录");
         }
         
-        QueryWrapper<MealRecord> queryWrapper = new QueryWrapper<>();
-        queryWrapper.eq("record_date", date)
-                   .eq("user_id", currentUserId);
-        return mealRecordMapper.selectOne(queryWrapper);
+        // 从所在月份的快照中查找
+        for (MealRecord record : getMonthRecords(currentUserId, YearMonth.from(date))) {
+            if (date.equals(record.getRecordDate())) {
+                return record;
+            }
+        }
+        return null;
     }
 
     /**
      * 删除指定日期的记录
+     *
+     * @param ifMatch 请求的 If-Match，为null时无条件删除
      */
-    public boolean deleteByDate(LocalDate date) {
+    @Transactional
+    public boolean deleteByDate(LocalDate date, String ifMatch) {
         Long currentUserId = UserContext.getUserId();
         if (currentUserId == null) {
             throw new RuntimeException("用户未登录");
         }
         
-        QueryWrapper<MealRecord> queryWrapper = new QueryWrapper<>();
-        queryWrapper.eq("record_date", date)
-                   .eq("user_id", currentUserId);
-        return mealRecordMapper.delete(queryWrapper) > 0;
+        MealRecord record = selectByDate(currentUserId, date);
+        checkIfMatch(record, ifMatch);
+        if (record == null) {
+            return false;
+        }
+        
+        // 按读取时的版本号删除，避免删掉期间被其他请求修改后的数据（汇总增量基于读取到的总计）
+        QueryWrapper<MealRecord> deleteWrapper = new QueryWrapper<>();
+        deleteWrapper.eq("id", record.getId())
+                    .eq("version", record.getVersion());
+        if (mealRecordMapper.delete(deleteWrapper) == 0) {
+            throw new VersionConflictException("记录已被修改，请刷新后重试");
+        }
+        mealStatsService.applyDelta(currentUserId, date, -1,
+                Money.orZero(record.getTotal()).negate());
+        mealMonthCache.evict(currentUserId, date);
+        return true;
     }
 
     /**
      * 删除指定日期的动态项目
+     * 带 If-Match 时只尝试一次；否则在版本冲突时重新读取并合并，最多 MAX_MERGE_ATTEMPTS 次
+     *
+     * @return 更新后的记录，记录或项目不存在时返回null
      */
-    @Transactional
-    public boolean deleteCustomItems(LocalDate date, List<String> itemNames) {
+    public MealRecord deleteCustomItems(LocalDate date, List<String> itemNames, String ifMatch) {
         Long currentUserId = UserContext.getUserId();
         if (currentUserId == null) {
             throw new RuntimeException("用户未登录");
         }
         
-        
+        MealRecord updated;
         try {
-            // 先查询记录（仅限当前用户）
-            QueryWrapper<MealRecord> queryWrapper = new QueryWrapper<>();
-            queryWrapper.eq("record_date", date)
-                       .eq("user_id", currentUserId);
-            MealRecord record = mealRecordMapper.selectOne(queryWrapper);
-            
-            if (record == null) {
-                return false;
-            }
-            
-            // 解析现有动态项目
-            Map<String, BigDecimal> customItems = new HashMap<>();
-            if (record.getCustomItems() != null && !record.getCustomItems().trim().isEmpty()) {
-                try {
-                    customItems = objectMapper.readValue(record.getCustomItems(), 
-                        objectMapper.getTypeFactory().constructMapType(Map.class, String.class, BigDecimal.class));
-                } catch (Exception e) {
-                    // 解析失败，忽略
-                }
-            }
-            
-            // 删除指定项目
-            boolean hasChanges = false;
-            for (String itemName : itemNames) {
-                if (customItems.containsKey(itemName)) {
-                    customItems.remove(itemName);
-                    hasChanges = true;
-                }
-            }
-            
-            // 更新记录
-            if (customItems.isEmpty()) {
-                record.setCustomItems(null);
-            } else {
-                String updatedJson = objectMapper.writeValueAsString(customItems);
-                record.setCustomItems(updatedJson);
-            }
-            
-            // 如果没有找到要删除的项目，直接返回失败
-            if (!hasChanges) {
-                return false;
-            }
-            
-            // 重新计算总计
-            BigDecimal total = BigDecimal.ZERO;
-            
-            // 加上固定项目
-            if (record.getBreakfast() != null) total = total.add(record.getBreakfast());
-            if (record.getLunch() != null) total = total.add(record.getLunch());
-            if (record.getDinner() != null) total = total.add(record.getDinner());
-            if (record.getSnack() != null) total = total.add(record.getSnack());
-            if (record.getDrink() != null) total = total.add(record.getDrink());
-            
-            // 加上剩余动态项目
-            for (BigDecimal amount : customItems.values()) {
-                if (amount != null) {
-                    total = total.add(amount);
-                }
-            }
-            
-            record.setTotal(total);
-            record.setUpdateTime(LocalDateTime.now());
-            
-            // 更新数据库
-            int result = mealRecordMapper.updateById(record);
-            
-            // 清理用户设置的Redis缓存，避免刷新后重新加载旧数据
-            try {
-                String cacheKey = "user_setting:" + currentUserId + ":default_meal_items";
-                redisTemplate.delete(cacheKey);
-            } catch (Exception e) {
-                // 清理缓存失败，不影响主流程
-            }
-            
-            return result > 0;
-            
+            updated = withVersionRetry(ifMatch, () -> deleteCustomItemsOnce(currentUserId, date, itemNames, ifMatch));
+        } catch (VersionConflictException e) {
+            throw e;
         } catch (Exception e) {
-            return false;
+            return null;
         }
+        
+        // 清理用户设置中默认项目的Redis缓存，避免刷新后重新加载旧数据
+        if (updated != null) {
+            userSettingService.evictSetting(currentUserId, UserSettingService.DEFAULT_MEAL_ITEMS_KEY);
+        }
+        return updated;
+    }
+
+    private MealRecord deleteCustomItemsOnce(Long userId, LocalDate date, List<String> itemNames, String ifMatch) {
+        // 先查询记录（仅限当前用户）
+        MealRecord record = selectByDate(userId, date);
+        checkIfMatch(record, ifMatch);
+        if (record == null) {
+            return null;
+        }
+        Money oldTotal = Money.orZero(record.getTotal());
+        
+        // 旧JSON格式的项目先迁移为项目行
+        mealRecordItemService.migrateLegacy(record);
+        
+        // 逐项删除，如果没有找到要删除的项目，直接返回失败
+        if (mealRecordItemService.deleteItems(record.getId(), itemNames) == 0) {
+            return null;
+        }
+        
+        // 重新计算总计：剩余动态项目在SQL中汇总，加上固定项目
+        long totalCents = mealRecordItemService.sumAmount(record.getId()).getCents() + fixedCents(record);
+        
+        Money total = Money.ofCents(totalCents);
+        record.setTotal(total);
+        record.setUpdateTime(LocalDateTime.now());
+        
+        // 按读取时的版本号更新；期间被修改时回滚本次尝试（包括已删除的项目行）
+        if (mealRecordMapper.updateById(record) == 0) {
+            throw new VersionConflictException("记录已被修改，请刷新后重试");
+        }
+        mealStatsService.applyDelta(userId, date, 0, total.minus(oldTotal));
+        mealMonthCache.evict(userId, date);
+        
+        mealRecordItemService.attachItems(userId, date, date.plusDays(1), Collections.singletonList(record));
+        return record;
     }
     
     /**
      * 完全清空指定日期的所有数据
+     * 带 If-Match 时只尝试一次；否则在版本冲突时重新读取，最多 MAX_MERGE_ATTEMPTS 次
+     *
+     * @return 清空后的记录，记录不存在时返回null
      */
-    @Transactional
-    public boolean clearAllData(LocalDate date) {
+    public MealRecord clearAllData(LocalDate date, String ifMatch) {
         // 获取当前用户ID
         Long currentUserId = UserContext.getUserId();
         if (currentUserId == null) {
             throw new RuntimeException("用户未登录");
         }
         
-        System.out.println("=== 完全清空数据 ===");
-        System.out.println("日期: " + date);
-        System.out.println("用户ID: " + currentUserId);
+        logger.debug("完全清空数据: userId={}, 日期={}", currentUserId, date);
         
         try {
-            QueryWrapper<MealRecord> queryWrapper = new QueryWrapper<>();
-            queryWrapper.eq("record_date", date)
-                       .eq("user_id", currentUserId);
-            MealRecord record = mealRecordMapper.selectOne(queryWrapper);
-            
-            if (record == null) {
-                System.out.println("记录不存在");
-                return false;
-            }
-            
-            System.out.println("找到记录ID: " + record.getId());
-            System.out.println("清空前的customItems: " + record.getCustomItems());
-            
-            // 清空所有数据
-            record.setBreakfast(BigDecimal.ZERO);
-            record.setLunch(BigDecimal.ZERO);
-            record.setDinner(BigDecimal.ZERO);
-            record.setSnack(BigDecimal.ZERO);
-            record.setDrink(BigDecimal.ZERO);
-            record.setCustomItems(""); // 设置为空字符串而不是null
-            record.setTotal(BigDecimal.ZERO);
-            record.setUpdateTime(LocalDateTime.now());
-            
-            System.out.println("准备清空所有数据");
-            System.out.println("清空后的customItems: " + record.getCustomItems());
-            
-            int result = mealRecordMapper.updateById(record);
-            System.out.println("清空结果: " + result);
-            
-            // 验证清空结果
-            MealRecord verifyRecord = mealRecordMapper.selectById(record.getId());
-            System.out.println("验证结果 - customItems: " + verifyRecord.getCustomItems());
-            
-            return result > 0;
-            
+            return withVersionRetry(ifMatch, () -> clearAllDataOnce(currentUserId, date, ifMatch));
+        } catch (VersionConflictException e) {
+            throw e;
         } catch (Exception e) {
-            System.err.println("清空数据失败: " + e.getMessage());
-            e.printStackTrace();
-            return false;
+            logger.error("清空数据失败: userId={}, 日期={}", currentUserId, date, e);
+            return null;
+        }
+    }
+
+    private MealRecord clearAllDataOnce(Long userId, LocalDate date, String ifMatch) {
+        MealRecord record = selectByDate(userId, date);
+        checkIfMatch(record, ifMatch);
+        
+        if (record == null) {
+            logger.debug("清空数据: 记录不存在, 日期={}", date);
+            return null;
+        }
+        
+        Money oldTotal = Money.orZero(record.getTotal());
+        
+        // 清空所有数据
+        record.setBreakfast(Money.ZERO);
+        record.setLunch(Money.ZERO);
+        record.setDinner(Money.ZERO);
+        record.setSnack(Money.ZERO);
+        record.setDrink(Money.ZERO);
+        record.setCustomItems(""); // 设置为空字符串而不是null
+        record.setTotal(Money.ZERO);
+        record.setUpdateTime(LocalDateTime.now());
+        
+        mealRecordItemService.deleteAll(record.getId());
+        
+        // 按读取时的版本号更新；期间被修改时回滚本次尝试
+        int result = mealRecordMapper.updateById(record);
+        logger.debug("清空数据: 记录ID={}, 结果={}", record.getId(), result);
+        if (result == 0) {
+            throw new VersionConflictException("记录已被修改，请刷新后重试");
+        }
+        mealStatsService.applyDelta(userId, date, 0, oldTotal.negate());
+        mealMonthCache.evict(userId, date);
+        return record;
+    }
+
+    /**
+     * 带 If-Match 时校验记录的当前ETag
+     */
+    private static void checkIfMatch(MealRecord record, String ifMatch) {
+        if (ifMatch != null && (record == null
+                || !ETags.matches(ifMatch, ETags.of(record.getId(), record.getVersion())))) {
+            throw new VersionConflictException("记录已被修改，请刷新后重试");
+        }
+    }
+
+    /**
+     * 每次尝试在独立事务中执行，版本冲突时回滚并重试（重试时能读到其他请求已提交的数据）
+     * 客户端带 If-Match 时不重试，直接返回冲突
+     */
+    private <T> T withVersionRetry(String ifMatch, Supplier<T> attempt) {
+        int maxAttempts = ifMatch != null ? 1 : MAX_MERGE_ATTEMPTS;
+        for (int i = 1; ; i++) {
+            try {
+                return transactionTemplate.execute(status -> attempt.get());
+            } catch (VersionConflictException e) {
+                if (i >= maxAttempts) {
+                    throw e;
+                }
+            }
         }
     }
     
@@ -298,35 +490,49 @@ public class MealRecordService {
             throw new RuntimeException("用户未登录");
         }
         
-        System.out.println("=== 获取记录日期 ===");
-        System.out.println("年: " + year + ", 月: " + month);
-        System.out.println("用户ID: " + currentUserId);
-        
         try {
-            // 构建查询条件：指定年月的记录
-            QueryWrapper<MealRecord> queryWrapper = new QueryWrapper<>();
-            queryWrapper.eq("user_id", currentUserId)
-                       .apply("YEAR(record_date) = {0}", year)
-                       .apply("MONTH(record_date) = {0}", month)
-                       .select("record_date");
-            
-            List<MealRecord> records = mealRecordMapper.selectList(queryWrapper);
-            
             // 提取日期并格式化为字符串
-            List<String> recordDates = records.stream()
-                .map(record -> record.getRecordDate().toString())
+            List<String> recordDates = loadRecordDates(currentUserId, YearMonth.of(year, month)).stream()
+                .map(LocalDate::toString)
                 .collect(java.util.stream.Collectors.toList());
             
-            System.out.println("找到记录日期: " + recordDates);
+            logger.debug("获取记录日期: userId={}, {}-{}, 数量={}", currentUserId, year, month, recordDates.size());
             return recordDates;
             
         } catch (Exception e) {
-            System.err.println("获取记录日期失败: " + e.getMessage());
-            e.printStackTrace();
+            logger.warn("获取记录日期失败: userId={}, {}", currentUserId, e.getMessage());
             throw new RuntimeException("获取记录日期失败", e);
         }
     }
 
+    /**
+     * 获取指定月份有记录的日期位图，第 n 日有记录时第 (n-1) 位为1
+     */
+    public int getRecordDayBitmap(int year, int month) {
+        Long currentUserId = UserContext.getUserId();
+        if (currentUserId == null) {
+            throw new RuntimeException("用户未登录");
+        }
+        
+        int bitmap = 0;
+        for (LocalDate date : loadRecordDates(currentUserId, YearMonth.of(year, month))) {
+            bitmap |= 1 << (date.getDayOfMonth() - 1);
+        }
+        return bitmap;
+    }
+    
+    /**
+     * 获取用户某月有记录的日期：启用缓存时取自月快照，否则只查询 (user_id, record_date) 唯一索引
+     */
+    private List<LocalDate> loadRecordDates(Long userId, YearMonth month) {
+        if (mealMonthCache.isEnabled()) {
+            return getMonthRecords(userId, month).stream()
+                .map(MealRecord::getRecordDate)
+                .collect(java.util.stream.Collectors.toList());
+        }
+        return mealRecordMapper.selectRecordDates(userId, month.atDay(1), month.plusMonths(1).atDay(1));
+    }
+
     /**
      * 获取用户统计概览
      */
@@ -337,43 +543,23 @@ public class MealRecordService {
             throw new RuntimeException("用户未登录");
         }
         
-        System.out.println("=== 获取用户统计概览 ===");
-        System.out.println("用户ID: " + currentUserId);
-        
         try {
-            // 查询用户所有记录
-            QueryWrapper<MealRecord> queryWrapper = new QueryWrapper<>();
-            queryWrapper.eq("user_id", currentUserId)
-                       .select("record_date", "total");
-            
-            List<MealRecord> records = mealRecordMapper.selectList(queryWrapper);
-            
-            // 计算统计数据
-            int totalDays = records.size();
-            BigDecimal totalAmount = BigDecimal.ZERO;
-            
-            for (MealRecord record : records) {
-                if (record.getTotal() != null) {
-                    totalAmount = totalAmount.add(record.getTotal());
-                }
-            }
-            
-            // 计算日均消费
-            BigDecimal avgDaily = totalDays > 0 ? 
-                totalAmount.divide(BigDecimal.valueOf(totalDays), 2, java.math.RoundingMode.HALF_UP) : 
-                BigDecimal.ZERO;
+            // 读取增量维护的汇总行
+            MealStat overall = mealStatsService.getOverall(currentUserId);
+            int totalDays = overall != null ? overall.getDays() : 0;
+            Money totalAmount = overall != null ? Money.orZero(overall.getTotalAmount()) : Money.ZERO;
             
             Map<String, Object> statistics = new HashMap<>();
             statistics.put("totalDays", totalDays);
             statistics.put("totalAmount", totalAmount);
-            statistics.put("avgDaily", avgDaily);
+            // 计算日均消费（没有记录时输出整数0，与原有格式一致）
+            statistics.put("avgDaily", totalDays > 0 ? totalAmount.divide(totalDays) : BigDecimal.ZERO);
             
-            System.out.println("统计结果: " + statistics);
+            logger.debug("用户统计概览: userId={}, {}", currentUserId, statistics);
             return statistics;
             
         } catch (Exception e) {
-            System.err.println("获取用户统计概览失败: " + e.getMessage());
-            e.printStackTrace();
+            logger.warn("获取用户统计概览失败: userId={}, {}", currentUserId, e.getMessage());
             throw new RuntimeException("获取用户统计概览失败", e);
         }
     }
@@ -382,51 +568,168 @@ public class MealRecordService {
      * 获取用户年度每月统计
      */
     public Map<String, Object> getYearStatistics(Integer year) {
+        if (year == null) {
+            year = java.time.LocalDate.now().getYear();
+        }
+        return getYearStatistics(java.util.Collections.singletonList(year)).get(0);
+    }
+
+    /**
+     * 获取用户多个年度的每月统计（一次查询），按传入年份顺序返回
+     */
+    public List<Map<String, Object>> getYearStatistics(List<Integer> years) {
         Long currentUserId = UserContext.getUserId();
         if (currentUserId == null) {
             throw new RuntimeException("用户未登录");
         }
 
-        if (year == null) {
-            year = java.time.LocalDate.now().getYear();
+        List<Integer> distinctYears = new ArrayList<>(new java.util.LinkedHashSet<>(years));
+        // 每年12个槽位：金额（分）和天数
+        Map<Integer, long[]> centsByYear = new HashMap<>();
+        Map<Integer, int[]> daysByYear = new HashMap<>();
+        for (Integer y : distinctYears) {
+            centsByYear.put(y, new long[12]);
+            daysByYear.put(y, new int[12]);
         }
-        // 查询一年内所有记录
-        QueryWrapper<MealRecord> queryWrapper = new QueryWrapper<>();
-        queryWrapper.eq("user_id", currentUserId)
-            .ge("record_date", year + "-01-01")
-            .le("record_date", year + "-12-31");
-        List<MealRecord> records = mealRecordMapper.selectList(queryWrapper);
-
-        // 初始化1~12月统计
-        List<Map<String, Object>> months = new java.util.ArrayList<>();
-        BigDecimal yearTotal = BigDecimal.ZERO;
-        for (int m = 1; m <= 12; m++) {
-            BigDecimal total = BigDecimal.ZERO;
-            int days = 0;
-            for (MealRecord r : records) {
-                if (r.getRecordDate() != null && r.getRecordDate().getYear() == year && r.getRecordDate().getMonthValue() == m) {
-                    if (r.getTotal() != null) {
-                        total = total.add(r.getTotal());
-                    }
-                    days++;
+
+        if (yearStatisticsInDatabase) {
+            // 数据库按月分组，每年最多返回12行
+            for (MonthlyTotal row : mealRecordMapper.sumByMonth(currentUserId, distinctYears)) {
+                int slot = row.getMonth() - 1;
+                centsByYear.get(row.getYear())[slot] += toCents(row.getTotal());
+                daysByYear.get(row.getYear())[slot] += row.getDays();
+            }
+        } else {
+            // 只取日期和金额，单次遍历累加
+            for (Integer y : distinctYears) {
+                QueryWrapper<MealRecord> queryWrapper = new QueryWrapper<>();
+                queryWrapper.select("record_date", "total")
+                    .eq("user_id", currentUserId)
+                    .ge("record_date", LocalDate.of(y, 1, 1))
+                    .lt("record_date", LocalDate.of(y + 1, 1, 1));
+                long[] cents = centsByYear.get(y);
+                int[] days = daysByYear.get(y);
+                for (MealRecord r : mealRecordMapper.selectList(queryWrapper)) {
+                    int slot = r.getRecordDate().getMonthValue() - 1;
+                    cents[slot] += toCents(r.getTotal());
+                    days[slot]++;
                 }
             }
-            Map<String, Object> monthStat = new java.util.HashMap<>();
+        }
+
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (Integer y : years) {
+            results.add(buildYearStatistics(y, centsByYear.get(y), daysByYear.get(y)));
+        }
+        return results;
+    }
+
+    private Map<String, Object> buildYearStatistics(int year, long[] cents, int[] days) {
+        List<Map<String, Object>> months = new ArrayList<>();
+        long yearCents = 0;
+        for (int m = 1; m <= 12; m++) {
+            Money total = Money.ofCents(cents[m - 1]);
+            int monthDays = days[m - 1];
+            Map<String, Object> monthStat = new HashMap<>();
             monthStat.put("month", m);
             monthStat.put("total", total);
-            monthStat.put("days", days);
-            BigDecimal avg = days > 0 ? total.divide(BigDecimal.valueOf(days), 2, java.math.RoundingMode.HALF_UP) : BigDecimal.ZERO;
-            monthStat.put("avg", avg);
+            monthStat.put("days", monthDays);
+            monthStat.put("avg", monthDays > 0 ? total.divide(monthDays) : BigDecimal.ZERO);
             months.add(monthStat);
-            yearTotal = yearTotal.add(total);
+            yearCents += cents[m - 1];
         }
-        Map<String, Object> result = new java.util.HashMap<>();
+        Map<String, Object> result = new HashMap<>();
         result.put("year", year);
         result.put("months", months);
-        result.put("yearTotal", yearTotal);
+        result.put("yearTotal", Money.ofCents(yearCents));
+        return result;
+    }
+
+    private static long toCents(Money amount) {
+        return amount != null ? amount.getCents() : 0L;
+    }
+
+    /**
+     * 按项目统计 [startDate, endDate] 内的消费：固定餐饮和动态项目分别给出金额、天数（金额大于0）和日均
+     * 固定餐饮和尚未迁移的旧JSON项目逐行流式累加，已迁移的动态项目在SQL中分组汇总，内存占用与日期范围无关
+     */
+    public Map<String, Object> getItemStatistics(LocalDate startDate, LocalDate endDate) {
+        Long currentUserId = UserContext.getUserId();
+        if (currentUserId == null) {
+            throw new RuntimeException("用户未登录");
+        }
+        LocalDate end = endDate.plusDays(1);
+
+        Map<String, ItemAccumulator> fixed = new LinkedHashMap<>();
+        for (String name : FIXED_MEAL_ITEMS) {
+            fixed.put(name, new ItemAccumulator());
+        }
+        Map<String, ItemAccumulator> custom = new HashMap<>();
+
+        mealRecordMapper.streamAmounts(currentUserId, startDate, end, context -> {
+            MealRecord r = context.getResultObject();
+            fixed.get("breakfast").add(r.getBreakfast());
+            fixed.get("lunch").add(r.getLunch());
+            fixed.get("dinner").add(r.getDinner());
+            fixed.get("snack").add(r.getSnack());
+            fixed.get("drink").add(r.getDrink());
+            if (r.getCustomItems() != null && !r.getCustomItems().trim().isEmpty()) {
+                try {
+                    mealRecordItemService.forEachLegacyItem(r.getCustomItems(),
+                            (name, amount) -> custom.computeIfAbsent(name, key -> new ItemAccumulator()).add(amount));
+                } catch (IOException e) {
+                    // 无法解析的旧数据不计入统计
+                }
+            }
+        });
+        for (ItemTotal row : mealRecordItemService.sumByItem(currentUserId, startDate, end)) {
+            ItemAccumulator acc = custom.computeIfAbsent(row.getItemName(), key -> new ItemAccumulator());
+            acc.cents += row.getTotal().getCents();
+            acc.days += row.getDays();
+        }
+
+        List<Map<String, Object>> fixedItems = new ArrayList<>();
+        fixed.forEach((name, acc) -> fixedItems.add(acc.toMap(name)));
+        List<Map<String, Object>> customItems = new ArrayList<>();
+        custom.entrySet().stream()
+                .filter(entry -> entry.getValue().days > 0)
+                .sorted(Comparator.comparingLong((Map.Entry<String, ItemAccumulator> entry) -> entry.getValue().cents)
+                        .reversed())
+                .forEach(entry -> customItems.add(entry.getValue().toMap(entry.getKey())));
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("startDate", startDate.toString());
+        result.put("endDate", endDate.toString());
+        result.put("fixedItems", fixedItems);
+        result.put("customItems", customItems);
         return result;
     }
 
+    /**
+     * 单个项目的累加值（分）和金额大于0的天数
+     */
+    private static final class ItemAccumulator {
+        long cents;
+        int days;
+
+        void add(Money amount) {
+            if (amount != null && amount.signum() > 0) {
+                cents += amount.getCents();
+                days++;
+            }
+        }
+
+        Map<String, Object> toMap(String name) {
+            Money total = Money.ofCents(cents);
+            Map<String, Object> item = new HashMap<>();
+            item.put("name", name);
+            item.put("total", total);
+            item.put("days", days);
+            item.put("avg", days > 0 ? total.divide(days) : Money.ZERO);
+            return item;
+        }
+    }
+
     /**
      * 获取指定日期范围的餐饮记录（用于统计）
      */
@@ -437,31 +740,60 @@ public class MealRecordService {
             throw new RuntimeException("用户未登录");
         }
         
-        System.out.println("=== 获取日期范围数据 ===");
-        System.out.println("开始日期: " + startDate);
-        System.out.println("结束日期: " + endDate);
-        System.out.println("用户ID: " + currentUserId);
-        
         try {
-            // 构建查询条件：指定日期范围内的记录
-            QueryWrapper<MealRecord> queryWrapper = new QueryWrapper<>();
-            queryWrapper.eq("user_id", currentUserId)
-                       .ge("record_date", startDate)
-                       .le("record_date", endDate)
-                       .orderByAsc("record_date");
-            
-            List<MealRecord> records = mealRecordMapper.selectList(queryWrapper);
+            List<MealRecord> records;
+            YearMonth startMonth = YearMonth.from(startDate);
+            YearMonth endMonth = YearMonth.from(endDate);
+            if (mealMonthCache.isEnabled() && startMonth.plusMonths(MAX_CACHED_RANGE_MONTHS).isAfter(endMonth)) {
+                // 范围较小时由各月快照拼接
+                records = new ArrayList<>();
+                for (YearMonth month = startMonth; !month.isAfter(endMonth); month = month.plusMonths(1)) {
+                    for (MealRecord record : getMonthRecords(currentUserId, month)) {
+                        LocalDate recordDate = record.getRecordDate();
+                        if (!recordDate.isBefore(startDate) && !recordDate.isAfter(endDate)) {
+                            records.add(record);
+                        }
+                    }
+                }
+            } else {
+                // 构建查询条件：指定日期范围内的记录
+                QueryWrapper<MealRecord> queryWrapper = new QueryWrapper<>();
+                queryWrapper.eq("user_id", currentUserId)
+                           .ge("record_date", startDate)
+                           .le("record_date", endDate)
+                           .orderByAsc("record_date");
+                
+                records = mealRecordMapper.selectList(queryWrapper);
+                mealRecordItemService.attachItems(currentUserId, startDate, endDate.plusDays(1), records);
+            }
             
-            System.out.println("找到记录数量: " + records.size());
+            logger.debug("获取日期范围数据: userId={}, {} ~ {}, 数量={}", currentUserId, startDate, endDate, records.size());
             return records;
             
         } catch (Exception e) {
-            System.err.println("获取日期范围数据失败: " + e.getMessage());
-            e.printStackTrace();
+            logger.warn("获取日期范围数据失败: userId={}, {}", currentUserId, e.getMessage());
             throw new RuntimeException("获取日期范围数据失败", e);
         }
     }
     
+    /**
+     * 获取用户某月的全部记录（月快照，只读）
+     */
+    private List<MealRecord> getMonthRecords(Long userId, YearMonth month) {
+        return mealMonthCache.getMonth(userId, month, () -> {
+            LocalDate start = month.atDay(1);
+            LocalDate end = month.plusMonths(1).atDay(1);
+            QueryWrapper<MealRecord> queryWrapper = new QueryWrapper<>();
+            queryWrapper.eq("user_id", userId)
+                       .ge("record_date", start)
+                       .lt("record_date", end)
+                       .orderByAsc("record_date");
+            List<MealRecord> records = mealRecordMapper.selectList(queryWrapper);
+            mealRecordItemService.attachItems(userId, start, end, records);
+            return records;
+        });
+    }
+    
 }
 
 
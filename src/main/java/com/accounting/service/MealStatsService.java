@@ -0,0 +1,178 @@
+package com.accounting.service;
+
+import com.accounting.entity.MealStat;
+import com.accounting.mapper.MealStatMapper;
+import com.accounting.util.Money;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 用户消费统计汇总服务
+ * 餐饮记录写入时在同一事务内按新旧 total 的差值累加汇总行，统计接口只需读取一行；
+ * 定时对账任务锁定用户的汇总行后从明细表重新汇总，写入绝对值
+ */
+@Service
+public class MealStatsService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MealStatsService.class);
+
+    public static final String PERIOD_ALL = "ALL";
+
+    @Autowired
+    private MealStatMapper mealStatMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Counter driftCounter;
+
+    // 对账在持有汇总行锁之后读取明细，每条语句都读取最新提交的数据
+    private TransactionTemplate reconcileTransaction;
+
+    @PostConstruct
+    public void init() {
+        reconcileTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        reconcileTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+        driftCounter = Counter.builder("meal.stats.drift")
+                .description("对账时发现与明细不一致的汇总行数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 累加某日记录变化带来的增量（需在记录写入的事务内调用）
+     *
+     * @param days   记录天数变化：新增 +1，删除 -1，修改 0
+     * @param amount 金额变化：新 total - 旧 total
+     */
+    public void applyDelta(Long userId, LocalDate date, int days, Money amount) {
+        Money delta = Money.orZero(amount);
+        if (days == 0 && delta.signum() == 0) {
+            return;
+        }
+        YearMonth month = YearMonth.from(date);
+        mealStatMapper.applyDelta(userId, String.valueOf(month.getYear()), month.toString(), days, delta);
+    }
+
+    /**
+     * 获取用户汇总，尚无汇总数据时先从明细重建
+     */
+    public MealStat getOverall(Long userId) {
+        MealStat overall = getPeriod(userId, PERIOD_ALL);
+        if (overall == null) {
+            reconcileUser(userId);
+            overall = getPeriod(userId, PERIOD_ALL);
+        }
+        return overall;
+    }
+
+    /**
+     * 获取用户某个周期（ALL、yyyy、yyyy-MM）的汇总，不存在返回null
+     */
+    public MealStat getPeriod(Long userId, String period) {
+        QueryWrapper<MealStat> queryWrapper = new QueryWrapper<>();
+        queryWrapper.eq("user_id", userId)
+                   .eq("period", period);
+        return mealStatMapper.selectOne(queryWrapper);
+    }
+
+    /**
+     * 定时对账：从明细表重新汇总所有用户并修正偏差
+     */
+    @Scheduled(cron = "${meal-stats.reconcile-cron:0 30 3 * * ?}")
+    public void reconcileAll() {
+        int users = 0;
+        int drift = 0;
+        for (Long userId : mealStatMapper.selectUserIds()) {
+            try {
+                drift += reconcileUser(userId);
+                users++;
+            } catch (Exception e) {
+                logger.error("用户统计对账失败: userId={}", userId, e);
+            }
+        }
+        logger.info("用户统计对账完成: 用户数={}, 偏差行数={}", users, drift);
+    }
+
+    /**
+     * 重建单个用户的汇总
+     * 先锁定该用户的全部汇总行（applyDelta 总是先写该行），再从明细表重新汇总并写入绝对值：
+     * 锁定之前提交的修改都已计入明细，之后的保存要等对账提交后才能累加增量，
+     * 多个节点或统计接口的重建同时对账同一用户时依次执行，结果相同，不会重复修正
+     *
+     * @return 与明细不一致（含缺失和多余）的汇总行数
+     */
+    public int reconcileUser(Long userId) {
+        Integer drift = reconcileTransaction.execute(status -> {
+            mealStatMapper.lockOverall(userId);
+            List<MealStat> stored = mealStatMapper.selectByUserForUpdate(userId);
+
+            Map<String, MealStat> expected = new HashMap<>();
+            for (MealStat monthStat : mealStatMapper.aggregateMonthsFromRecords(userId)) {
+                accumulate(expected, userId, monthStat.getPeriod(), monthStat);
+                accumulate(expected, userId, monthStat.getPeriod().substring(0, 4), monthStat);
+                accumulate(expected, userId, PERIOD_ALL, monthStat);
+            }
+            // 没有任何记录的用户也保留一行全零汇总，避免每次统计都触发重建
+            expected.computeIfAbsent(PERIOD_ALL, period -> newStat(userId, period));
+
+            int mismatched = 0;
+            for (MealStat actual : stored) {
+                MealStat target = expected.remove(actual.getPeriod());
+                if (target == null) {
+                    // 明细中已没有该周期
+                    mealStatMapper.deleteById(actual.getId());
+                    mismatched++;
+                } else if (!target.getDays().equals(actual.getDays())
+                        || !target.getTotalAmount().equals(Money.orZero(actual.getTotalAmount()))) {
+                    mealStatMapper.setTotals(userId, actual.getPeriod(), target.getDays(), target.getTotalAmount());
+                    mismatched++;
+                }
+            }
+            for (MealStat missing : expected.values()) {
+                mealStatMapper.setTotals(userId, missing.getPeriod(), missing.getDays(), missing.getTotalAmount());
+                mismatched++;
+            }
+            return mismatched;
+        });
+
+        int result = drift != null ? drift : 0;
+        if (result > 0) {
+            driftCounter.increment(result);
+            logger.warn("用户统计存在偏差已修正: userId={}, 行数={}", userId, result);
+        }
+        return result;
+    }
+
+    private static void accumulate(Map<String, MealStat> stats, Long userId, String period, MealStat monthStat) {
+        MealStat stat = stats.computeIfAbsent(period, key -> newStat(userId, key));
+        stat.setDays(stat.getDays() + monthStat.getDays());
+        stat.setTotalAmount(stat.getTotalAmount().plus(monthStat.getTotalAmount()));
+    }
+
+    private static MealStat newStat(Long userId, String period) {
+        MealStat stat = new MealStat();
+        stat.setUserId(userId);
+        stat.setPeriod(period);
+        stat.setDays(0);
+        stat.setTotalAmount(Money.ZERO);
+        return stat;
+    }
+}
@@ -0,0 +1,134 @@
+package com.accounting.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 密码哈希服务，BCrypt计算在独立的有界线程池中执行
+ * 线程和队列都满时立即抛出RejectedExecutionException（由控制器转换为429），
+ * 因此同时等待哈希结果的请求线程数不超过 线程数 + 队列容量
+ */
+@Service
+public class PasswordHashService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PasswordHashService.class);
+
+    private static final Pattern BCRYPT_COST = Pattern.compile("^\\$2[abxy]?\\$(\\d{2})\\$");
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${security.password.bcrypt-strength:10}")
+    private int strength;
+
+    @Value("${security.password.hash-threads:0}")
+    private int threads;
+
+    @Value("${security.password.hash-queue-capacity:32}")
+    private int queueCapacity;
+
+    @Value("${security.password.hash-timeout-ms:5000}")
+    private long timeoutMs;
+
+    private BCryptPasswordEncoder passwordEncoder;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        passwordEncoder = new BCryptPasswordEncoder(strength);
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hash-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        ExecutorServiceMetrics.monitor(meterRegistry, executor, "password_hash", Tags.empty());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * 加密密码
+     */
+    public String encode(String rawPassword) {
+        return await(executor.submit(() -> passwordEncoder.encode(rawPassword)));
+    }
+
+    /**
+     * 校验密码
+     */
+    public boolean matches(String rawPassword, String encodedPassword) {
+        return await(executor.submit(() -> passwordEncoder.matches(rawPassword, encodedPassword)));
+    }
+
+    /**
+     * 已存储哈希的cost与当前配置不一致时需要重新哈希
+     */
+    public boolean needsRehash(String encodedPassword) {
+        if (encodedPassword == null) {
+            return false;
+        }
+        Matcher matcher = BCRYPT_COST.matcher(encodedPassword);
+        return matcher.find() && Integer.parseInt(matcher.group(1)) != strength;
+    }
+
+    /**
+     * 后台按当前cost重新哈希，线程池繁忙时跳过，下次登录再升级
+     */
+    public void rehashAsync(String rawPassword, Consumer<String> onHashed) {
+        try {
+            executor.execute(() -> {
+                try {
+                    onHashed.accept(passwordEncoder.encode(rawPassword));
+                } catch (Exception e) {
+                    logger.warn("密码重新哈希失败: {}", e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.debug("密码哈希线程池繁忙，跳过重新哈希");
+        }
+    }
+
+    private <T> T await(Future<T> future) {
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new RejectedExecutionException("密码哈希超时", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("密码哈希被中断", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("密码哈希失败", e.getCause());
+        }
+    }
+}
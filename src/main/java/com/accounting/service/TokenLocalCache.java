@@ -0,0 +1,230 @@
+package com.accounting.service;
+
+import com.accounting.util.JwtPrincipal;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地已验证token缓存，位于JwtCacheService(Redis)之前
+ * 命中时无需访问Redis和重新验签；登出/强制登出通过Redis发布订阅广播到所有节点
+ * 各节点同时保留收到的吊销记录（本地吊销列表，保留一个token有效期），Redis可用与否都先据此拒绝已吊销的token；
+ * 收到吊销时一并丢弃 JwtCacheService 的续期合并记录
+ */
+@Component
+public class TokenLocalCache implements MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenLocalCache.class);
+
+    public static final String REVOKE_CHANNEL = "jwt_token_revoke";
+    private static final String TOKEN_MESSAGE_PREFIX = "t:";
+    private static final String USER_MESSAGE_PREFIX = "u:";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private JwtCacheService jwtCacheService;
+
+    @Value("${jwt.local-cache.maximum-size:10000}")
+    private long maximumSize;
+
+    @Value("${jwt.local-cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    @Value("${jwt.expiration:86400}")
+    private long tokenLifetimeSeconds;
+
+    @Value("${jwt.local-cache.revocation-maximum-size:100000}")
+    private long revocationMaximumSize;
+
+    private Cache<String, JwtPrincipal> cache;
+
+    // 已吊销的token摘要
+    private Cache<String, Boolean> revokedTokens;
+
+    // 用户ID -> 强制登出时间（秒），此前签发的token均视为吊销
+    private Cache<Long, Long> revokedUsers;
+
+    private Counter revokeCounter;
+    private Counter degradedAccepted;
+    private Counter degradedRejected;
+
+    @PostConstruct
+    public void init() {
+        long ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new Expiry<String, JwtPrincipal>() {
+                    @Override
+                    public long expireAfterCreate(String key, JwtPrincipal value, long currentTime) {
+                        // 不超过token本身的剩余有效期
+                        long remaining = TimeUnit.MILLISECONDS.toNanos(value.getExpiresAt().toEpochMilli() - System.currentTimeMillis());
+                        return Math.max(0, Math.min(ttlNanos, remaining));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, JwtPrincipal value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, JwtPrincipal value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+
+        // 暴露 cache.gets{result=hit|miss}、cache.evictions、cache.size 等指标
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "jwt_token_local");
+        revokeCounter = Counter.builder("jwt.token.local.revocations")
+                .description("本地token缓存收到的失效广播次数")
+                .register(meterRegistry);
+
+        revokedTokens = Caffeine.newBuilder()
+                .maximumSize(revocationMaximumSize)
+                .expireAfterWrite(tokenLifetimeSeconds, TimeUnit.SECONDS)
+                .build();
+        revokedUsers = Caffeine.newBuilder()
+                .maximumSize(revocationMaximumSize)
+                .expireAfterWrite(tokenLifetimeSeconds, TimeUnit.SECONDS)
+                .build();
+        degradedAccepted = degradedCounter("accepted");
+        degradedRejected = degradedCounter("revoked");
+    }
+
+    private Counter degradedCounter(String result) {
+        return Counter.builder("jwt.token.degraded")
+                .description("Redis不可用时仅验签通过的token校验次数")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 获取已验证的token，未命中或已过期返回null
+     */
+    public JwtPrincipal get(String token) {
+        JwtPrincipal cached = cache.getIfPresent(hash(token));
+        if (cached != null && cached.isExpired()) {
+            return null;
+        }
+        return cached;
+    }
+
+    /**
+     * 缓存已验证的token
+     */
+    public void put(String token, JwtPrincipal principal) {
+        cache.put(hash(token), principal);
+    }
+
+    /**
+     * 使单个token失效，并广播到其他节点
+     */
+    public void invalidate(String token) {
+        String tokenHash = hash(token);
+        revokeToken(tokenHash);
+        publish(TOKEN_MESSAGE_PREFIX + tokenHash);
+    }
+
+    /**
+     * 使用户的所有token失效，并广播到其他节点
+     */
+    public void invalidateUser(Long userId) {
+        revokeUser(userId);
+        publish(USER_MESSAGE_PREFIX + userId);
+    }
+
+    /**
+     * token是否在本地吊销列表中（单个登出，或签发于该用户强制登出之前）
+     */
+    public boolean isRevoked(String token, JwtPrincipal principal) {
+        if (revokedTokens.getIfPresent(hash(token)) != null) {
+            return true;
+        }
+        Long revokedAt = revokedUsers.getIfPresent(principal.getUserId());
+        return revokedAt != null
+                && (principal.getIssuedAt() == null || principal.getIssuedAt().getEpochSecond() < revokedAt);
+    }
+
+    /**
+     * Redis不可用时的校验：token已验签，只要不在本地吊销列表中即接受
+     */
+    public boolean acceptWithoutRedis(String token, JwtPrincipal principal) {
+        boolean revoked = isRevoked(token, principal);
+        (revoked ? degradedRejected : degradedAccepted).increment();
+        return !revoked;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        revokeCounter.increment();
+        if (body.startsWith(TOKEN_MESSAGE_PREFIX)) {
+            revokeToken(body.substring(TOKEN_MESSAGE_PREFIX.length()));
+        } else if (body.startsWith(USER_MESSAGE_PREFIX)) {
+            try {
+                revokeUser(Long.valueOf(body.substring(USER_MESSAGE_PREFIX.length())));
+            } catch (NumberFormatException e) {
+                logger.warn("无效的token失效广播: {}", body);
+            }
+        }
+    }
+
+    private void revokeToken(String tokenHash) {
+        cache.invalidate(tokenHash);
+        revokedTokens.put(tokenHash, Boolean.TRUE);
+        jwtCacheService.forgetRefresh(tokenHash);
+    }
+
+    private void revokeUser(Long userId) {
+        // token的签发时间精确到秒，同一秒内重新登录签发的token不受影响
+        revokedUsers.put(userId, System.currentTimeMillis() / 1000);
+        cache.asMap().values().removeIf(cached -> userId.equals(cached.getUserId()));
+        jwtCacheService.forgetUserRefreshes(userId);
+    }
+
+    private void publish(String message) {
+        try {
+            stringRedisTemplate.convertAndSend(REVOKE_CHANNEL, message);
+        } catch (Exception e) {
+            // 广播失败时本节点已失效，其他节点等待本地TTL到期
+            logger.warn("token失效广播失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 以token的SHA-256摘要作为缓存键，避免在内存和广播消息中保存原始token
+     */
+    static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] bytes = digest.digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    }
+}
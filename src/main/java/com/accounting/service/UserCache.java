@@ -0,0 +1,356 @@
+package com.accounting.service;
+
+import com.accounting.entity.User;
+import com.accounting.mapper.UserMapper;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用户信息两级缓存（本地Caffeine + Redis），同时按用户ID和用户名索引
+ * 密码哈希只保存在本地层，不写入共享的Redis；登录时本地没有哈希则按ID查询数据库
+ * 不存在的用户名也会被缓存（负缓存），用于吸收撞库流量；
+ * 写入和失效通过Redis发布订阅广播，其他节点同步丢弃本地副本
+ */
+@Component
+public class UserCache implements MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserCache.class);
+
+    public static final String EVICT_CHANNEL = "user_cache_evict";
+    private static final String ID_MESSAGE_PREFIX = "id:";
+    private static final String NAME_MESSAGE_PREFIX = "name:";
+
+    private static final String USER_ID_PREFIX = "user:id:";
+    private static final String USER_NAME_PREFIX = "user:name:";
+
+    // 用户名不存在的标记（自增ID从1开始）
+    private static final Long MISSING_ID = 0L;
+
+    /**
+     * 整体替换用户哈希并设置过期时间，同时写入用户名索引
+     * ARGV: 过期秒数, 用户ID, 字段1, 值1, ...
+     */
+    private static final RedisScript<Long> WRITE_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('DEL', KEYS[1]) " +
+            "for i = 3, #ARGV, 2 do redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1]) end " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[1]) " +
+            "redis.call('SET', KEYS[2], ARGV[2], 'EX', ARGV[1]) " +
+            "return 1", Long.class);
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${user-cache.local-maximum-size:10000}")
+    private long localMaximumSize;
+
+    @Value("${user-cache.local-ttl-seconds:600}")
+    private long localTtlSeconds;
+
+    @Value("${user-cache.redis-ttl-hours:24}")
+    private long redisTtlHours;
+
+    @Value("${user-cache.negative-ttl-seconds:300}")
+    private long negativeTtlSeconds;
+
+    private Cache<Long, User> localById;
+    private Cache<String, Long> localIdByName;
+
+    private Counter redisHits;
+    private Counter redisMisses;
+    private Timer loadTimer;
+
+    @PostConstruct
+    public void init() {
+        localById = Caffeine.newBuilder()
+                .maximumSize(localMaximumSize)
+                .expireAfterWrite(localTtlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        localIdByName = Caffeine.newBuilder()
+                .maximumSize(localMaximumSize)
+                .expireAfterWrite(localTtlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, localById, "user_by_id");
+        CaffeineCacheMetrics.monitor(meterRegistry, localIdByName, "user_by_name");
+        redisHits = Counter.builder("user.cache.redis").tag("result", "hit").register(meterRegistry);
+        redisMisses = Counter.builder("user.cache.redis").tag("result", "miss").register(meterRegistry);
+        loadTimer = Timer.builder("user.cache.load")
+                .description("缓存未命中时从数据库加载用户的耗时")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 根据ID获取用户（不含密码哈希），不存在返回null
+     */
+    public User getById(Long id) {
+        User user = lookupById(id);
+        return user != null ? copy(user, false) : null;
+    }
+
+    /**
+     * 根据用户名获取用户（不含密码哈希），不存在返回null（结果会被负缓存）
+     */
+    public User getByUsername(String username) {
+        User user = lookupByUsername(username);
+        return user != null ? copy(user, false) : null;
+    }
+
+    /**
+     * 获取登录校验用的用户（含密码哈希），不存在返回null
+     * 本地层的用户取自Redis时没有哈希，此时按ID查询数据库并放入本地层
+     */
+    public User getForLogin(String username) {
+        User user = lookupByUsername(username);
+        if (user == null) {
+            return null;
+        }
+        if (user.getPassword() == null) {
+            Long id = user.getId();
+            user = loadTimer.record(() -> userMapper.selectById(id));
+            if (user == null) {
+                return null;
+            }
+            localById.put(id, user);
+        }
+        return copy(user, true);
+    }
+
+    private User lookupById(Long id) {
+        if (id == null) {
+            return null;
+        }
+        User user = localById.getIfPresent(id);
+        if (user == null) {
+            user = readRedis(id);
+            if (user == null) {
+                user = loadTimer.record(() -> userMapper.selectById(id));
+                if (user == null) {
+                    return null;
+                }
+                writeRedis(user);
+            }
+            localById.put(id, user);
+        }
+        return user;
+    }
+
+    private User lookupByUsername(String username) {
+        if (username == null) {
+            return null;
+        }
+        Long id = localIdByName.getIfPresent(username);
+        if (id == null) {
+            id = readRedisId(username);
+        }
+        if (id == null) {
+            User user = loadTimer.record(() -> {
+                QueryWrapper<User> queryWrapper = new QueryWrapper<>();
+                queryWrapper.eq("username", username);
+                return userMapper.selectOne(queryWrapper);
+            });
+            if (user == null) {
+                cacheMissingUsername(username);
+                return null;
+            }
+            writeRedis(user);
+            localById.put(user.getId(), user);
+            localIdByName.put(username, user.getId());
+            return user;
+        }
+        localIdByName.put(username, id);
+        return MISSING_ID.equals(id) ? null : lookupById(id);
+    }
+
+    /**
+     * 写入缓存（注册后写穿），并通知其他节点丢弃该用户名的负缓存
+     */
+    public void put(User user) {
+        User cached = copy(user, true);
+        writeRedis(cached);
+        localById.put(cached.getId(), cached);
+        localIdByName.put(cached.getUsername(), cached.getId());
+        publish(NAME_MESSAGE_PREFIX + cached.getUsername());
+    }
+
+    /**
+     * 失效用户缓存（用户资料变更后调用）
+     */
+    public void evict(Long id, String username) {
+        try {
+            if (id != null) {
+                stringRedisTemplate.delete(USER_ID_PREFIX + id);
+            }
+            if (username != null) {
+                stringRedisTemplate.delete(USER_NAME_PREFIX + username);
+            }
+        } catch (Exception e) {
+            logger.warn("删除用户Redis缓存失败: {}", e.getMessage());
+        }
+        evictLocal(id, username);
+        if (id != null) {
+            publish(ID_MESSAGE_PREFIX + id);
+        }
+        if (username != null) {
+            publish(NAME_MESSAGE_PREFIX + username);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (body.startsWith(ID_MESSAGE_PREFIX)) {
+            try {
+                evictLocal(Long.valueOf(body.substring(ID_MESSAGE_PREFIX.length())), null);
+            } catch (NumberFormatException e) {
+                logger.warn("无效的用户缓存失效广播: {}", body);
+            }
+        } else if (body.startsWith(NAME_MESSAGE_PREFIX)) {
+            evictLocal(null, body.substring(NAME_MESSAGE_PREFIX.length()));
+        }
+    }
+
+    private void evictLocal(Long id, String username) {
+        if (id != null) {
+            localById.invalidate(id);
+        }
+        if (username != null) {
+            localIdByName.invalidate(username);
+        }
+    }
+
+    private void cacheMissingUsername(String username) {
+        localIdByName.put(username, MISSING_ID);
+        try {
+            stringRedisTemplate.opsForValue().set(USER_NAME_PREFIX + username, String.valueOf(MISSING_ID),
+                    negativeTtlSeconds, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            logger.warn("写入用户名负缓存失败: {}", e.getMessage());
+        }
+    }
+
+    private Long readRedisId(String username) {
+        try {
+            String id = stringRedisTemplate.opsForValue().get(USER_NAME_PREFIX + username);
+            if (id == null) {
+                redisMisses.increment();
+                return null;
+            }
+            redisHits.increment();
+            return Long.valueOf(id);
+        } catch (Exception e) {
+            logger.warn("读取用户名缓存失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private User readRedis(Long id) {
+        try {
+            Map<Object, Object> fields = stringRedisTemplate.opsForHash().entries(USER_ID_PREFIX + id);
+            if (fields == null || fields.isEmpty()) {
+                redisMisses.increment();
+                return null;
+            }
+            redisHits.increment();
+            User user = new User();
+            user.setId(id);
+            user.setUsername((String) fields.get("username"));
+            user.setNickname((String) fields.get("nickname"));
+            user.setCreatedAt(parseTime(fields.get("createdAt")));
+            user.setUpdatedAt(parseTime(fields.get("updatedAt")));
+            return user;
+        } catch (Exception e) {
+            logger.warn("读取用户缓存失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 以Hash逐字段存储资料（不含密码哈希），哈希、过期时间和用户名索引在一个脚本中写入
+     */
+    private void writeRedis(User user) {
+        try {
+            List<String> args = new ArrayList<>();
+            args.add(String.valueOf(TimeUnit.HOURS.toSeconds(redisTtlHours)));
+            args.add(String.valueOf(user.getId()));
+            args.add("username");
+            args.add(user.getUsername());
+            if (user.getNickname() != null) {
+                args.add("nickname");
+                args.add(user.getNickname());
+            }
+            if (user.getCreatedAt() != null) {
+                args.add("createdAt");
+                args.add(user.getCreatedAt().toString());
+            }
+            if (user.getUpdatedAt() != null) {
+                args.add("updatedAt");
+                args.add(user.getUpdatedAt().toString());
+            }
+            stringRedisTemplate.execute(WRITE_SCRIPT,
+                    Arrays.asList(USER_ID_PREFIX + user.getId(), USER_NAME_PREFIX + user.getUsername()),
+                    args.toArray());
+        } catch (Exception e) {
+            logger.warn("写入用户缓存失败: {}", e.getMessage());
+        }
+    }
+
+    private void publish(String message) {
+        try {
+            stringRedisTemplate.convertAndSend(EVICT_CHANNEL, message);
+        } catch (Exception e) {
+            logger.warn("用户缓存失效广播失败: {}", e.getMessage());
+        }
+    }
+
+    private static LocalDateTime parseTime(Object value) {
+        return value != null ? LocalDateTime.parse(value.toString()) : null;
+    }
+
+    /**
+     * 返回副本，避免调用方修改缓存中的对象；只有登录校验需要密码哈希
+     */
+    private static User copy(User source, boolean withPassword) {
+        User user = new User();
+        user.setId(source.getId());
+        user.setUsername(source.getUsername());
+        if (withPassword) {
+            user.setPassword(source.getPassword());
+        }
+        user.setNickname(source.getNickname());
+        user.setCreatedAt(source.getCreatedAt());
+        user.setUpdatedAt(source.getUpdatedAt());
+        return user;
+    }
+}
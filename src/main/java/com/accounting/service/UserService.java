@@ -3,13 +3,12 @@ package com.accounting.service;
 import com.accounting.entity.User;
 import com.accounting.mapper.UserMapper;
 import com.accounting.util.JwtUtil;
-import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 @Service
 public class UserService {
@@ -17,10 +16,14 @@ public class UserService {
     @Autowired
     private UserMapper userMapper;
     
+    @Autowired
+    private UserCache userCache;
+    
     @Autowired
     private JwtUtil jwtUtil;
     
-    private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+    @Autowired
+    private PasswordHashService passwordHashService;
     
     /**
      * 用户注册
@@ -30,9 +33,7 @@ public class UserService {
         
         try {
             // 检查用户名是否已存在
-            QueryWrapper<User> queryWrapper = new QueryWrapper<>();
-            queryWrapper.eq("username", username);
-            User existingUser = userMapper.selectOne(queryWrapper);
+            User existingUser = userCache.getByUsername(username);
             
             if (existingUser != null) {
                 result.put("success", false);
@@ -41,11 +42,13 @@ public class UserService {
             }
             
             // 创建新用户
-            User user = new User(username, passwordEncoder.encode(password)); // 使用构造函数，自动设置所有字段
+            User user = new User(username, passwordHashService.encode(password)); // 使用构造函数，自动设置所有字段
             
             int insertResult = userMapper.insert(user);
             
             if (insertResult > 0) {
+                // 写穿缓存，同时清除该用户名的负缓存
+                userCache.put(user);
                 result.put("success", true);
                 result.put("message", "注册成功");
                 result.put("user", Map.of(
@@ -58,6 +61,9 @@ public class UserService {
                 result.put("message", "注册失败");
             }
             
+        } catch (RejectedExecutionException e) {
+            // 密码哈希线程池已满，交给控制器返回429
+            throw e;
         } catch (Exception e) {
             result.put("success", false);
             result.put("message", "注册失败: " + e.getMessage());
@@ -73,10 +79,8 @@ public class UserService {
         Map<String, Object> result = new HashMap<>();
         
         try {
-            // 查找用户
-            QueryWrapper<User> queryWrapper = new QueryWrapper<>();
-            queryWrapper.eq("username", username);
-            User user = userMapper.selectOne(queryWrapper);
+            // 查找用户（含密码哈希）
+            User user = userCache.getForLogin(username);
             
             if (user == null) {
                 result.put("success", false);
@@ -85,12 +89,24 @@ public class UserService {
             }
             
             // 验证密码
-            if (!passwordEncoder.matches(password, user.getPassword())) {
+            if (!passwordHashService.matches(password, user.getPassword())) {
                 result.put("success", false);
                 result.put("message", "用户名或密码错误");
                 return result;
             }
             
+            // 哈希cost与当前配置不一致时，后台重新哈希
+            if (passwordHashService.needsRehash(user.getPassword())) {
+                Long userId = user.getId();
+                passwordHashService.rehashAsync(password, newHash -> {
+                    User update = new User();
+                    update.setId(userId);
+                    update.setPassword(newHash);
+                    userMapper.updateById(update);
+                    userCache.evict(userId, username);
+                });
+            }
+            
             // 生成JWT token
             String token = jwtUtil.generateToken(username, user.getId());
             
@@ -103,6 +119,9 @@ public class UserService {
                 "nickname", user.getNickname()
             ));
             
+        } catch (RejectedExecutionException e) {
+            // 密码哈希线程池已满，交给控制器返回429
+            throw e;
         } catch (Exception e) {
             result.put("success", false);
             result.put("message", "登录失败: " + e.getMessage());
@@ -115,16 +134,14 @@ public class UserService {
      * 根据用户名查找用户
      */
     public User findByUsername(String username) {
-        QueryWrapper<User> queryWrapper = new QueryWrapper<>();
-        queryWrapper.eq("username", username);
-        return userMapper.selectOne(queryWrapper);
+        return userCache.getByUsername(username);
     }
     
     /**
      * 根据ID查找用户
      */
     public User findById(Long id) {
-        return userMapper.selectById(id);
+        return userCache.getById(id);
     }
     
     /**
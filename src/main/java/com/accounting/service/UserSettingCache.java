@@ -0,0 +1,559 @@
+package com.accounting.service;
+
+import com.accounting.redis.RedisCircuitOpenException;
+import com.accounting.redis.RedisNearCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 用户设置缓存：每个用户的全部设置存放在一个Redis哈希 user_settings:{userId} 中（字段为设置键，值为设置值）
+ * 哈希中的 __loaded__、__gen__ 字段为缓存元数据，不能用作设置键（见 isReservedKey）
+ * 防击穿：同一用户在本节点内只有一个加载者，节点之间再以短租约协调，其余请求等待加载结果；
+ * 到期前按加载耗时概率性地提前刷新（XFetch），分散同时到期的刷新；
+ * 开启 stale-while-revalidate 时，逻辑过期后的宽限期内先返回旧值并在后台刷新；
+ * Redis不可用时使用本节点最近加载过的设置，没有时直接查询数据库
+ */
+@Component
+public class UserSettingCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserSettingCache.class);
+
+    public static final String CACHE_PREFIX = "user_settings:";
+    private static final String LEASE_PREFIX = "user_settings_lease:";
+
+    // 加载标记，值为 "逻辑过期时间戳(ms):加载耗时(ms)"；没有该字段时哈希需要重新加载
+    private static final String LOADED_FIELD = "__loaded__";
+    // 写代数，每次失效加一；加载写回时代数已变化则放弃，避免用旧数据覆盖新值
+    private static final String GENERATION_FIELD = "__gen__";
+
+    // 等待其他节点加载时的轮询间隔
+    private static final long LEASE_POLL_MS = 25;
+
+    /**
+     * 加载写回：代数与读取时一致才整体替换哈希（保留代数），并设置加载标记和过期时间
+     * ARGV: 期望代数, 加载标记, 过期毫秒数, 字段1, 值1, ...
+     */
+    private static final RedisScript<Long> LOAD_SCRIPT = new DefaultRedisScript<>(
+            "local gen = redis.call('HGET', KEYS[1], '" + GENERATION_FIELD + "') or '0' " +
+            "if gen ~= ARGV[1] then return 0 end " +
+            "redis.call('DEL', KEYS[1]) " +
+            "for i = 4, #ARGV, 2 do redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1]) end " +
+            "redis.call('HSET', KEYS[1], '" + LOADED_FIELD + "', ARGV[2], '" + GENERATION_FIELD + "', gen) " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[3]) " +
+            "return 1", Long.class);
+
+    /**
+     * 失效单个字段：删除该字段和加载标记并递增代数，下次读取时重新加载
+     * 哈希不存在时也记录代数（只含代数的哈希设置过期时间），使正在进行的加载放弃写回
+     */
+    private static final RedisScript<Long> EVICT_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('HDEL', KEYS[1], ARGV[1], '" + LOADED_FIELD + "') " +
+            "redis.call('HINCRBY', KEYS[1], '" + GENERATION_FIELD + "', 1) " +
+            "if redis.call('PTTL', KEYS[1]) == -1 then redis.call('PEXPIRE', KEYS[1], ARGV[2]) end " +
+            "return 1", Long.class);
+
+    /**
+     * 仅在租约仍属于自己时释放
+     */
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end " +
+            "return 0", Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private RedisNearCache redisNearCache;
+
+    @Value("${user-settings-cache.ttl-seconds:86400}")
+    private long ttlSeconds;
+
+    @Value("${user-settings-cache.stale-while-revalidate:true}")
+    private boolean staleWhileRevalidate;
+
+    @Value("${user-settings-cache.stale-seconds:3600}")
+    private long staleSeconds;
+
+    @Value("${user-settings-cache.early-expiration-beta:1.0}")
+    private double earlyExpirationBeta;
+
+    @Value("${user-settings-cache.lease-ms:3000}")
+    private long leaseMs;
+
+    @Value("${user-settings-cache.lease-wait-ms:500}")
+    private long leaseWaitMs;
+
+    @Value("${user-settings-cache.refresh-threads:2}")
+    private int refreshThreads;
+
+    @Value("${user-settings-cache.fallback-maximum-size:10000}")
+    private long fallbackMaximumSize;
+
+    // 本节点正在进行的加载，同一用户的并发请求共享结果
+    private final ConcurrentHashMap<Long, CompletableFuture<Map<String, String>>> inFlight =
+            new ConcurrentHashMap<>();
+
+    private ThreadPoolExecutor refreshExecutor;
+
+    // Redis不可用时的本地兜底：最近一次读到或加载的全部设置
+    private Cache<Long, Map<String, String>> fallback;
+
+    private Counter hits;
+    private Counter misses;
+    private Counter staleHits;
+    private Counter earlyRefreshes;
+    private Counter databaseLoads;
+
+    @PostConstruct
+    public void init() {
+        fallback = Caffeine.newBuilder()
+                .maximumSize(fallbackMaximumSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .build();
+        AtomicInteger threadIndex = new AtomicInteger();
+        refreshExecutor = new ThreadPoolExecutor(refreshThreads, refreshThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(256),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "user-settings-refresh-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                // 队列满时放弃本次后台刷新，旧值仍可用，下次读取会再次触发
+                new ThreadPoolExecutor.DiscardPolicy());
+        ExecutorServiceMetrics.monitor(meterRegistry, refreshExecutor, "user_settings_refresh", Tags.empty());
+        hits = counter("hit");
+        misses = counter("miss");
+        staleHits = counter("stale");
+        earlyRefreshes = counter("early_refresh");
+        databaseLoads = Counter.builder("user.settings.cache.load")
+                .description("用户设置缓存从数据库加载的次数")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdown();
+    }
+
+    private Counter counter(String result) {
+        return Counter.builder("user.settings.cache")
+                .description("用户设置Redis缓存访问次数")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 是否为缓存元数据使用的保留字段名，不能用作设置键
+     */
+    public static boolean isReservedKey(String settingKey) {
+        return LOADED_FIELD.equals(settingKey) || GENERATION_FIELD.equals(settingKey);
+    }
+
+    /**
+     * 读取用户的全部设置：一次 HGETALL，需要加载时通过loader查询数据库
+     */
+    public Map<String, String> getAll(Long userId, Function<Long, Map<String, String>> loader) {
+        Map<Object, Object> cached = null;
+        try {
+            cached = readHash(userId);
+        } catch (Exception e) {
+            logRedisError("读取用户设置缓存失败", e);
+            Map<String, String> local = fallback.getIfPresent(userId);
+            if (local != null) {
+                return local;
+            }
+        }
+        Entry entry = cached != null
+                ? Entry.parse(cached.get(LOADED_FIELD), cached.get(GENERATION_FIELD))
+                : Entry.UNAVAILABLE;
+        if (!useCached(userId, entry, loader)) {
+            return load(userId, entry, loader);
+        }
+        Map<String, String> settings = settingsOf(cached);
+        fallback.put(userId, settings);
+        return settings;
+    }
+
+    /**
+     * 读取单个设置：一次 HMGET 同时取加载标记、代数和字段值；开启近端缓存时从本地的整个哈希中取
+     */
+    public String get(Long userId, String settingKey, Function<Long, Map<String, String>> loader) {
+        if (isReservedKey(settingKey)) {
+            // 保留字段不会作为设置写入，哈希中的同名字段是元数据
+            return null;
+        }
+        List<Object> values = null;
+        try {
+            if (redisNearCache.isEnabled()) {
+                Map<Object, Object> cached = readHash(userId);
+                values = Arrays.asList(cached.get(LOADED_FIELD), cached.get(GENERATION_FIELD), cached.get(settingKey));
+            } else {
+                values = stringRedisTemplate.opsForHash()
+                        .multiGet(key(userId), Arrays.asList(LOADED_FIELD, GENERATION_FIELD, settingKey));
+            }
+        } catch (Exception e) {
+            logRedisError("读取用户设置缓存失败", e);
+            Map<String, String> local = fallback.getIfPresent(userId);
+            if (local != null) {
+                return local.get(settingKey);
+            }
+        }
+        Entry entry = values != null ? Entry.parse(values.get(0), values.get(1)) : Entry.UNAVAILABLE;
+        if (!useCached(userId, entry, loader)) {
+            return load(userId, entry, loader).get(settingKey);
+        }
+        return (String) values.get(2);
+    }
+
+    /**
+     * 使单个设置的缓存失效（数据库写入之后调用）：删除加载标记并递增代数，
+     * 下次读取时重新加载该用户的全部设置，加载中的旧结果也不会再写回
+     */
+    public void evict(Long userId, String settingKey) {
+        if (isReservedKey(settingKey)) {
+            throw new IllegalArgumentException("设置键为保留字段: " + settingKey);
+        }
+        try {
+            stringRedisTemplate.execute(EVICT_SCRIPT, Collections.singletonList(key(userId)), settingKey,
+                    String.valueOf(physicalTtlMillis()));
+        } catch (Exception e) {
+            logRedisError("清理用户设置缓存失败: userId=" + userId + ", key=" + settingKey, e);
+        }
+        redisNearCache.invalidate(key(userId));
+        fallback.invalidate(userId);
+    }
+
+    /**
+     * 整个哈希（只读），开启近端缓存时优先使用本地副本
+     */
+    private Map<Object, Object> readHash(Long userId) {
+        String key = key(userId);
+        return redisNearCache.get(key, () -> stringRedisTemplate.opsForHash().entries(key));
+    }
+
+    /**
+     * 判断缓存值能否直接返回；需要提前刷新或处于宽限期时在后台刷新
+     */
+    private boolean useCached(Long userId, Entry entry, Function<Long, Map<String, String>> loader) {
+        if (!entry.loaded) {
+            misses.increment();
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        if (now < entry.expiresAt) {
+            // XFetch：加载耗时 × beta × -ln(rand) 越接近到期越可能触发，值仍有效所以在后台刷新
+            double early = entry.loadMillis * earlyExpirationBeta
+                    * -Math.log(1.0 - ThreadLocalRandom.current().nextDouble());
+            if (now + early >= entry.expiresAt) {
+                earlyRefreshes.increment();
+                refreshAsync(userId, entry, loader);
+            } else {
+                hits.increment();
+            }
+            return true;
+        }
+        if (staleWhileRevalidate) {
+            staleHits.increment();
+            refreshAsync(userId, entry, loader);
+            return true;
+        }
+        misses.increment();
+        return false;
+    }
+
+    /**
+     * 同步加载：本节点内合并为一次，获取不到租约时等待其他节点的加载结果
+     */
+    private Map<String, String> load(Long userId, Entry observed, Function<Long, Map<String, String>> loader) {
+        CompletableFuture<Map<String, String>> future = new CompletableFuture<>();
+        CompletableFuture<Map<String, String>> existing = inFlight.putIfAbsent(userId, future);
+        if (existing != null) {
+            Map<String, String> shared;
+            try {
+                shared = existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+            // 正在进行的是被跳过的后台刷新（其他节点持有租约），改为自行加载
+            return shared != null ? shared : loadOnce(userId, observed, loader, true);
+        }
+        try {
+            Map<String, String> settings = loadOnce(userId, observed, loader, true);
+            future.complete(settings);
+            return settings;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(userId, future);
+        }
+    }
+
+    /**
+     * 后台刷新：本节点已有加载或其他节点持有租约时跳过
+     */
+    private void refreshAsync(Long userId, Entry observed, Function<Long, Map<String, String>> loader) {
+        if (inFlight.containsKey(userId)) {
+            return;
+        }
+        refreshExecutor.execute(() -> {
+            CompletableFuture<Map<String, String>> future = new CompletableFuture<>();
+            if (inFlight.putIfAbsent(userId, future) != null) {
+                return;
+            }
+            try {
+                future.complete(loadOnce(userId, observed, loader, false));
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+                logger.warn("后台刷新用户设置缓存失败: userId={}, {}", userId, e.getMessage());
+            } finally {
+                inFlight.remove(userId, future);
+            }
+        });
+    }
+
+    /**
+     * 持有租约时查询数据库并写回；否则 wait 为true时等待持有者写回，超时后自行查询
+     * observed 为调用方读到的加载标记，之后已有其他加载者写回时直接使用其结果
+     */
+    private Map<String, String> loadOnce(Long userId, Entry observed,
+                                         Function<Long, Map<String, String>> loader, boolean wait) {
+        String lease = tryLease(userId);
+        if (lease == null) {
+            if (!wait) {
+                return null;
+            }
+            Map<String, String> loaded = awaitLoaded(userId, observed);
+            if (loaded != null) {
+                return loaded;
+            }
+            logger.debug("等待用户设置加载超时，直接查询数据库: userId={}", userId);
+        }
+        try {
+            if (lease != null) {
+                // 上一个加载者可能在本次读取之后刚写回并释放了租约，拿到租约后再确认一次
+                Map<String, String> loaded = loadedSince(userId, observed);
+                if (loaded != null) {
+                    return loaded;
+                }
+            }
+            long start = System.nanoTime();
+            Map<String, String> settings = withoutReservedKeys(loader.apply(userId));
+            long loadMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            databaseLoads.increment();
+            store(userId, observed.generation, settings, loadMillis);
+            settings = Collections.unmodifiableMap(settings);
+            fallback.put(userId, settings);
+            return settings;
+        } finally {
+            if (lease != null) {
+                releaseLease(userId, lease);
+            }
+        }
+    }
+
+    /**
+     * 获取加载租约；已被其他节点持有时返回null，Redis不可用时视为获得（直接查询数据库）
+     */
+    private String tryLease(Long userId) {
+        String token = UUID.randomUUID().toString();
+        try {
+            Boolean acquired = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(LEASE_PREFIX + userId, token, leaseMs, TimeUnit.MILLISECONDS);
+            return Boolean.TRUE.equals(acquired) ? token : null;
+        } catch (Exception e) {
+            logRedisError("获取用户设置加载租约失败", e);
+            return token;
+        }
+    }
+
+    private void releaseLease(Long userId, String token) {
+        try {
+            stringRedisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(LEASE_PREFIX + userId), token);
+        } catch (Exception e) {
+            // 租约会在 lease-ms 后自动过期
+        }
+    }
+
+    /**
+     * 轮询等待其他节点写回，最多 lease-wait-ms
+     */
+    private Map<String, String> awaitLoaded(Long userId, Entry observed) {
+        long deadline = System.currentTimeMillis() + leaseWaitMs;
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(LEASE_POLL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            Map<String, String> loaded = loadedSince(userId, observed);
+            if (loaded != null) {
+                return loaded;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 读取Redis中比 observed 更新且未逻辑过期的加载结果，没有或Redis不可用时返回null
+     */
+    private Map<String, String> loadedSince(Long userId, Entry observed) {
+        Map<Object, Object> cached;
+        try {
+            cached = stringRedisTemplate.opsForHash().entries(key(userId));
+        } catch (Exception e) {
+            return null;
+        }
+        Entry current = Entry.parse(cached.get(LOADED_FIELD), cached.get(GENERATION_FIELD));
+        if (!current.loaded || current.expiresAt <= observed.expiresAt
+                || System.currentTimeMillis() >= current.expiresAt) {
+            return null;
+        }
+        Map<String, String> settings = settingsOf(cached);
+        fallback.put(userId, settings);
+        return settings;
+    }
+
+    private void store(Long userId, String generation, Map<String, String> settings, long loadMillis) {
+        long expiresAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttlSeconds);
+        List<String> args = new ArrayList<>(settings.size() * 2 + 3);
+        args.add(generation);
+        args.add(expiresAt + ":" + loadMillis);
+        args.add(String.valueOf(physicalTtlMillis()));
+        settings.forEach((field, value) -> {
+            args.add(field);
+            args.add(value);
+        });
+        try {
+            Long stored = stringRedisTemplate.execute(LOAD_SCRIPT, Collections.singletonList(key(userId)),
+                    args.toArray());
+            if (stored == null || stored == 0L) {
+                logger.debug("用户设置在加载期间已被修改，放弃写回: userId={}", userId);
+            }
+        } catch (Exception e) {
+            logRedisError("存入Redis缓存失败", e);
+            // 缓存失败不影响返回结果
+        }
+        redisNearCache.invalidate(key(userId));
+    }
+
+    /**
+     * 熔断期间的快速失败只记debug，避免故障期间刷屏
+     */
+    private static void logRedisError(String message, Exception e) {
+        if (e instanceof RedisCircuitOpenException) {
+            logger.debug("{}: {}", message, e.getMessage());
+        } else {
+            logger.warn("{}: {}", message, e.getMessage());
+        }
+    }
+
+    /**
+     * 去掉数据库中与保留字段同名的历史设置（保存接口已拒绝这些键），避免写回时覆盖元数据
+     */
+    private static Map<String, String> withoutReservedKeys(Map<String, String> settings) {
+        if (!settings.containsKey(LOADED_FIELD) && !settings.containsKey(GENERATION_FIELD)) {
+            return settings;
+        }
+        Map<String, String> filtered = new LinkedHashMap<>(settings);
+        filtered.remove(LOADED_FIELD);
+        filtered.remove(GENERATION_FIELD);
+        return filtered;
+    }
+
+    /**
+     * 去掉加载标记和代数后的设置
+     */
+    private static Map<String, String> settingsOf(Map<Object, Object> cached) {
+        Map<String, String> settings = new LinkedHashMap<>();
+        cached.forEach((field, value) -> {
+            if (!LOADED_FIELD.equals(field) && !GENERATION_FIELD.equals(field)) {
+                settings.put((String) field, (String) value);
+            }
+        });
+        return Collections.unmodifiableMap(settings);
+    }
+
+    /**
+     * Redis中的实际过期时间：开启 stale-while-revalidate 时多保留一个宽限期
+     */
+    private long physicalTtlMillis() {
+        return TimeUnit.SECONDS.toMillis(ttlSeconds + (staleWhileRevalidate ? staleSeconds : 0));
+    }
+
+    private static String key(Long userId) {
+        return CACHE_PREFIX + userId;
+    }
+
+    /**
+     * 哈希中的加载标记和代数
+     */
+    private static final class Entry {
+        static final Entry UNAVAILABLE = new Entry(false, 0L, 0L, "0");
+
+        final boolean loaded;
+        final long expiresAt;
+        final long loadMillis;
+        final String generation;
+
+        Entry(boolean loaded, long expiresAt, long loadMillis, String generation) {
+            this.loaded = loaded;
+            this.expiresAt = expiresAt;
+            this.loadMillis = loadMillis;
+            this.generation = generation;
+        }
+
+        static Entry parse(Object marker, Object generation) {
+            String gen = generation != null ? (String) generation : "0";
+            if (marker == null) {
+                return new Entry(false, 0L, 0L, gen);
+            }
+            String text = (String) marker;
+            int colon = text.indexOf(':');
+            try {
+                if (colon > 0) {
+                    return new Entry(true, Long.parseLong(text.substring(0, colon)),
+                            Long.parseLong(text.substring(colon + 1)), gen);
+                }
+            } catch (NumberFormatException e) {
+                // 格式不符按未加载处理
+            }
+            return new Entry(false, 0L, 0L, gen);
+        }
+    }
+}
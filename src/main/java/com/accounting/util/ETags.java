@@ -0,0 +1,80 @@
+package com.accounting.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 强ETag：单条记录为 "ID.版本号"，带上ID可以区分删除后重新创建的同日记录（版本号从0开始）；
+ * 列表等组合数据为内容摘要
+ */
+public final class ETags {
+
+    // 资源不存在时的ETag（可用于缓存"不存在"的结果，但不被 * 匹配）
+    public static final String NONE = "\"none\"";
+
+    private ETags() {
+    }
+
+    public static String of(Long id, Integer version) {
+        return "\"" + id + "." + (version != null ? version : 0) + "\"";
+    }
+
+    /**
+     * 内容摘要ETag（SHA-256前64位）
+     */
+    public static String ofContent(String content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder("\"");
+            for (int i = 0; i < 8; i++) {
+                hex.append(Character.forDigit((digest[i] >> 4) & 0xF, 16))
+                   .append(Character.forDigit(digest[i] & 0xF, 16));
+            }
+            return hex.append('"').toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * If-Match 是否满足（强比较）：* 匹配任何已存在的资源，否则列表中须有与当前ETag完全相同的强ETag，弱ETag不匹配
+     *
+     * @param current 当前ETag，资源不存在时为null或 NONE
+     */
+    public static boolean matches(String ifMatch, String current) {
+        return matches(ifMatch, current, false);
+    }
+
+    /**
+     * If-None-Match 是否满足（弱比较）：* 匹配任何已存在的资源，否则逐个比较列表中的ETag，忽略弱前缀 W/
+     *
+     * @param current 当前ETag，资源不存在时为null或 NONE
+     */
+    public static boolean matchesWeak(String ifNoneMatch, String current) {
+        return matches(ifNoneMatch, current, true);
+    }
+
+    private static boolean matches(String header, String current, boolean weak) {
+        if (current == null) {
+            return false;
+        }
+        for (String tag : header.split(",")) {
+            tag = tag.trim();
+            if (tag.equals("*")) {
+                // * 只匹配已存在的资源
+                return !NONE.equals(current);
+            }
+            if (tag.startsWith("W/")) {
+                if (!weak) {
+                    continue;
+                }
+                tag = tag.substring(2);
+            }
+            if (tag.equals(current)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
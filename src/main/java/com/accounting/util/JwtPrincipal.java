@@ -0,0 +1,49 @@
+package com.accounting.util;
+
+import java.time.Instant;
+
+/**
+ * 已验证JWT的用户信息（不可变），一次解析得到，存入UserContext
+ */
+public final class JwtPrincipal {
+
+    private final Long userId;
+    private final String username;
+    private final Instant issuedAt;
+    private final Instant expiresAt;
+
+    public JwtPrincipal(Long userId, String username, Instant issuedAt, Instant expiresAt) {
+        this.userId = userId;
+        this.username = username;
+        this.issuedAt = issuedAt;
+        this.expiresAt = expiresAt;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public Instant getIssuedAt() {
+        return issuedAt;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * 是否已过期
+     */
+    public boolean isExpired() {
+        return !expiresAt.isAfter(Instant.now());
+    }
+
+    @Override
+    public String toString() {
+        return "JwtPrincipal{userId=" + userId + ", username='" + username + "', expiresAt=" + expiresAt + "}";
+    }
+}
@@ -1,13 +1,19 @@
 package com.accounting.util;
 
+import com.accounting.redis.RedisCircuitBreaker;
+import com.accounting.service.TokenLocalCache;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -15,15 +21,22 @@ import java.util.Map;
 @Component
 public class JwtUtil {
     
+    private static final Logger logger = LoggerFactory.getLogger(JwtUtil.class);
+    
     @Autowired
     private com.accounting.service.JwtCacheService jwtCacheService;
     
+    @Autowired
+    private TokenLocalCache tokenLocalCache;
+    
     private static final String SECRET = "mySecretKey123456789012345678901234567890";
     private static final long EXPIRATION_TIME = 24 * 60 * 60 * 1000; // 24小时
     
-    private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(SECRET.getBytes());
-    }
+    // 签名密钥和解析器只构建一次，JwtParser构建后线程安全
+    private static final SecretKey SIGNING_KEY = Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8));
+    private static final JwtParser PARSER = Jwts.parserBuilder()
+            .setSigningKey(SIGNING_KEY)
+            .build();
     
     /**
      * 生成JWT token
@@ -34,8 +47,15 @@ public class JwtUtil {
         claims.put("userId", userId);
         String token = createToken(claims, username);
         
-        // 缓存token
-        jwtCacheService.cacheToken(token, userId, username);
+        // 缓存token；Redis不可用时跳过，该token仅在Redis不可用期间有效，恢复后需重新登录
+        try {
+            jwtCacheService.cacheToken(token, userId, username);
+        } catch (RuntimeException e) {
+            if (!RedisCircuitBreaker.isUnavailable(e)) {
+                throw e;
+            }
+            logger.warn("Redis不可用，token未缓存: userId={}", userId);
+        }
         
         return token;
     }
@@ -44,12 +64,13 @@ public class JwtUtil {
      * 创建token
      */
     private String createToken(Map<String, Object> claims, String subject) {
+        long now = System.currentTimeMillis();
         return Jwts.builder()
                 .setClaims(claims)
                 .setSubject(subject)
-                .setIssuedAt(new Date(System.currentTimeMillis()))
-                .setExpiration(new Date(System.currentTimeMillis() + EXPIRATION_TIME))
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256)
+                .setIssuedAt(new Date(now))
+                .setExpiration(new Date(now + EXPIRATION_TIME))
+                .signWith(SIGNING_KEY, SignatureAlgorithm.HS256)
                 .compact();
     }
     
@@ -87,11 +108,19 @@ public class JwtUtil {
      * 从token中获取所有信息
      */
     private Claims getAllClaimsFromToken(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        return PARSER.parseClaimsJws(token).getBody();
+    }
+    
+    /**
+     * 解析并验签token（只解析一次），过期或签名无效时抛出JwtException
+     */
+    public JwtPrincipal parseToken(String token) {
+        Claims claims = getAllClaimsFromToken(token);
+        return new JwtPrincipal(
+                claims.get("userId", Long.class),
+                claims.getSubject(),
+                claims.getIssuedAt() != null ? claims.getIssuedAt().toInstant() : null,
+                claims.getExpiration().toInstant());
     }
     
     /**
@@ -106,39 +135,61 @@ public class JwtUtil {
      * 验证token
      */
     public Boolean validateToken(String token, String username) {
-        final String tokenUsername = getUsernameFromToken(token);
-        return (username.equals(tokenUsername) && !isTokenExpired(token));
+        final JwtPrincipal principal = parseToken(token);
+        return (username.equals(principal.getUsername()) && !principal.isExpired());
     }
     
     /**
      * 简单验证token（不需要用户名）
      */
     public Boolean validateToken(String token) {
+        return verifyToken(token) != null;
+    }
+    
+    /**
+     * 验证token并返回用户信息，验证失败返回null
+     * 优先查本地缓存，未命中再走Redis缓存和验签，每次请求最多解析一次；
+     * 已登出的token先由本地吊销列表拒绝；Redis不可用（熔断或超时）时只验签
+     */
+    public JwtPrincipal verifyToken(String token) {
+        JwtPrincipal localCached = tokenLocalCache.get(token);
+        if (localCached != null) {
+            return localCached;
+        }
+        
+        JwtPrincipal principal;
         try {
-            // 先检查缓存
-            if (jwtCacheService.isTokenCached(token)) {
-                // 刷新缓存时间
-                jwtCacheService.refreshTokenCache(token);
-                System.out.println("JWT token验证成功（缓存）: " + token);
-                return true;
-            }
-            
-            // 缓存中没有，进行常规验证
-            boolean isValid = !isTokenExpired(token);
-            if (isValid) {
-                // 验证成功，重新缓存
-                Long userId = extractUserId(token);
-                String username = extractUsername(token);
-                jwtCacheService.cacheToken(token, userId, username);
-                System.out.println("JWT token验证成功（重新缓存）: " + token);
-            } else {
-                System.out.println("JWT token验证失败: " + token);
+            // 解析时已校验签名和过期时间
+            principal = parseToken(token);
+        } catch (Exception e) {
+            logger.debug("JWT token验证异常: {}", e.getMessage());
+            return null;
+        }
+        
+        // 本地吊销列表优先于Redis：登出广播已到达时不必等Redis删除生效
+        if (tokenLocalCache.isRevoked(token, principal)) {
+            logger.debug("JWT token已吊销: {}", Redact.token(token));
+            return null;
+        }
+        
+        try {
+            // 先检查缓存，按需刷新缓存时间；缓存中没有说明已登出或被强制登出，验签通过也拒绝
+            if (!jwtCacheService.refreshTokenCache(token, principal.getUserId())) {
+                logger.debug("JWT token不在缓存中，已吊销: {}", Redact.token(token));
+                return null;
             }
+            logger.debug("JWT token验证成功（缓存）: {}", Redact.token(token));
             
-            return isValid;
+            tokenLocalCache.put(token, principal);
+            return principal;
         } catch (Exception e) {
-            System.out.println("JWT token验证异常: " + e.getMessage());
-            return false;
+            if (RedisCircuitBreaker.isUnavailable(e)) {
+                // 不写入本地缓存，Redis恢复后重新走完整校验
+                logger.debug("Redis不可用，仅验签: {}", Redact.token(token));
+                return tokenLocalCache.acceptWithoutRedis(token, principal) ? principal : null;
+            }
+            logger.debug("JWT token验证异常: {}", e.getMessage());
+            return null;
         }
     }
     
@@ -160,15 +211,24 @@ public class JwtUtil {
      * 登出时删除token缓存
      */
     public void logout(String token) {
-        jwtCacheService.removeToken(token);
-        System.out.println("用户登出，token已从缓存删除: " + token);
+        try {
+            jwtCacheService.removeToken(token);
+        } finally {
+            // Redis不可用时也记入本地吊销列表，本节点仍能拒绝该token
+            tokenLocalCache.invalidate(token);
+        }
+        logger.info("用户登出，token已从缓存删除: {}", Redact.token(token));
     }
     
     /**
      * 强制用户登出（删除用户所有token）
      */
     public void forceLogout(Long userId) {
-        jwtCacheService.removeUserTokens(userId);
-        System.out.println("强制用户登出，所有token已从缓存删除: " + userId);
+        try {
+            jwtCacheService.removeUserTokens(userId);
+        } finally {
+            tokenLocalCache.invalidateUser(userId);
+        }
+        logger.info("强制用户登出，所有token已从缓存删除: userId={}", userId);
     }
 }
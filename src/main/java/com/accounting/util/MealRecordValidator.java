@@ -0,0 +1,80 @@
+package com.accounting.util;
+
+import com.accounting.dto.MealRecordRequest;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 餐饮记录请求校验（保存、批量保存、导入共用），不合法时抛出IllegalArgumentException
+ */
+public final class MealRecordValidator {
+
+    // 动态项目名称最大长度（meal_record_items.item_name）
+    public static final int MAX_ITEM_NAME_LENGTH = 50;
+
+    // 批量保存单次最多天数
+    public static final int MAX_BATCH_SIZE = 366;
+
+    private MealRecordValidator() {
+    }
+
+    public static void validate(MealRecordRequest request) {
+        if (request == null) {
+            throw new IllegalArgumentException("请求数据不能为空");
+        }
+
+        if (request.getRecordDate() == null) {
+            throw new IllegalArgumentException("记录日期不能为空");
+        }
+
+        // 验证金额不能为负数
+        if (request.getBreakfast() != null && request.getBreakfast().isNegative() ||
+            request.getLunch() != null && request.getLunch().isNegative() ||
+            request.getDinner() != null && request.getDinner().isNegative() ||
+            request.getSnack() != null && request.getSnack().isNegative() ||
+            request.getDrink() != null && request.getDrink().isNegative()) {
+            throw new IllegalArgumentException("金额不能为负数");
+        }
+
+        // 验证动态项目名称长度和金额不能为负数
+        if (request.getCustomItems() != null) {
+            for (Map.Entry<String, Money> entry : request.getCustomItems().entrySet()) {
+                if (entry.getKey().trim().isEmpty() || entry.getKey().length() > MAX_ITEM_NAME_LENGTH) {
+                    throw new IllegalArgumentException("动态项目名称不能为空且不能超过" + MAX_ITEM_NAME_LENGTH + "个字符");
+                }
+                if (entry.getValue() != null && entry.getValue().isNegative()) {
+                    throw new IllegalArgumentException("动态项目 \"" + entry.getKey() + "\" 的金额不能为负数");
+                }
+            }
+        }
+    }
+
+    /**
+     * 批量保存校验：逐条使用与单条保存相同的规则，日期不能重复；任一条不合法时整批拒绝
+     */
+    public static void validateBatch(List<MealRecordRequest> requests) {
+        if (requests == null || requests.isEmpty()) {
+            throw new IllegalArgumentException("请求数据不能为空");
+        }
+        if (requests.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("单次最多保存" + MAX_BATCH_SIZE + "天的记录");
+        }
+
+        Set<LocalDate> dates = new HashSet<>();
+        for (int i = 0; i < requests.size(); i++) {
+            MealRecordRequest request = requests.get(i);
+            try {
+                validate(request);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("第" + (i + 1) + "条: " + e.getMessage());
+            }
+            if (!dates.add(request.getRecordDate())) {
+                throw new IllegalArgumentException("第" + (i + 1) + "条: 日期 " + request.getRecordDate() + " 重复");
+            }
+        }
+    }
+}
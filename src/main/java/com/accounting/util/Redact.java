@@ -0,0 +1,34 @@
+package com.accounting.util;
+
+/**
+ * 日志脱敏：token只保留末尾几位用于排查（JWT头部对所有token都相同，末尾是签名）
+ */
+public final class Redact {
+
+    // 保留的末尾字符数
+    private static final int VISIBLE_SUFFIX = 6;
+
+    private Redact() {
+    }
+
+    public static String token(String token) {
+        if (token == null) {
+            return null;
+        }
+        if (token.length() <= VISIBLE_SUFFIX * 2) {
+            return "****";
+        }
+        return "****" + token.substring(token.length() - VISIBLE_SUFFIX) + "(len=" + token.length() + ")";
+    }
+
+    /**
+     * Authorization头：保留认证方案，脱敏凭证部分
+     */
+    public static String authorization(String header) {
+        if (header == null) {
+            return null;
+        }
+        int space = header.indexOf(' ');
+        return space > 0 ? header.substring(0, space + 1) + token(header.substring(space + 1)) : token(header);
+    }
+}
@@ -8,42 +8,42 @@ import org.springframework.stereotype.Component;
 @Component
 public class UserContext {
     
-    private static final ThreadLocal<Long> USER_ID = new ThreadLocal<>();
-    private static final ThreadLocal<String> USERNAME = new ThreadLocal<>();
+    private static final ThreadLocal<JwtPrincipal> PRINCIPAL = new ThreadLocal<>();
     
     /**
-     * 设置当前用户ID
+     * 设置当前登录用户
      */
-    public static void setUserId(Long userId) {
-        USER_ID.set(userId);
+    public static void setPrincipal(JwtPrincipal principal) {
+        PRINCIPAL.set(principal);
     }
     
     /**
-     * 获取当前用户ID
+     * 获取当前登录用户
      */
-    public static Long getUserId() {
-        return USER_ID.get();
+    public static JwtPrincipal getPrincipal() {
+        return PRINCIPAL.get();
     }
     
     /**
-     * 设置当前用户名
+     * 获取当前用户ID
      */
-    public static void setUsername(String username) {
-        USERNAME.set(username);
+    public static Long getUserId() {
+        JwtPrincipal principal = PRINCIPAL.get();
+        return principal != null ? principal.getUserId() : null;
     }
     
     /**
      * 获取当前用户名
      */
     public static String getUsername() {
-        return USERNAME.get();
+        JwtPrincipal principal = PRINCIPAL.get();
+        return principal != null ? principal.getUsername() : null;
     }
     
     /**
      * 清除当前用户信息
      */
     public static void clear() {
-        USER_ID.remove();
-        USERNAME.remove();
+        PRINCIPAL.remove();
     }
 }
@@ -0,0 +1,11 @@
+package com.accounting.util;
+
+/**
+ * 乐观锁冲突：If-Match 与当前版本不一致，或重试次数内未能写入
+ */
+public class VersionConflictException extends RuntimeException {
+
+    public VersionConflictException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,183 @@
+package com.accounting.controller;
+
+import com.accounting.dto.MealRecordRequest;
+import com.accounting.entity.MealRecord;
+import com.accounting.service.MealExportService;
+import com.accounting.service.MealRecordService;
+import com.accounting.util.ETags;
+import com.accounting.util.VersionConflictException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class MealRecordControllerTest {
+
+    private static final LocalDate DATE = LocalDate.of(2024, 3, 1);
+
+    // 服务当前记录的ETag版本号
+    private int version = 4;
+    // getByDate 返回的记录，null表示当天没有记录
+    private MealRecord stored;
+
+    private List<String> recordDates = Arrays.asList("2024-03-01", "2024-03-02");
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private MealRecordController controller;
+
+    @BeforeEach
+    void setUp() {
+        MealRecordService service = new MealRecordService() {
+            @Override
+            public MealRecord saveOrUpdate(MealRecordRequest request, String ifMatch) {
+                if (ifMatch != null && !ifMatch.equals("\"1." + version + "\"")) {
+                    throw new VersionConflictException("记录已被修改，请刷新后重试");
+                }
+                MealRecord record = new MealRecord();
+                record.setId(1L);
+                record.setRecordDate(request.getRecordDate());
+                record.setVersion(++version);
+                return record;
+            }
+
+            @Override
+            public MealRecord getByDate(LocalDate date) {
+                return stored;
+            }
+
+            @Override
+            public List<String> getRecordDates(int year, int month) {
+                return recordDates;
+            }
+
+            @Override
+            public boolean deleteByDate(LocalDate date, String ifMatch) {
+                throw new VersionConflictException("记录已被修改，请刷新后重试");
+            }
+        };
+        controller = new MealRecordController();
+        ReflectionTestUtils.setField(controller, "mealRecordService", service);
+        ConditionalResponses conditionalResponses = new ConditionalResponses();
+        ReflectionTestUtils.setField(conditionalResponses, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(controller, "conditionalResponses", conditionalResponses);
+    }
+
+    @Test
+    void saveReturnsNewETag() {
+        ResponseEntity<Map<String, Object>> response = controller.saveMealRecord(request(), "\"1.4\"");
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("\"1.5\"", response.getHeaders().getETag());
+    }
+
+    @Test
+    void staleIfMatchReturns412() {
+        ResponseEntity<Map<String, Object>> response = controller.saveMealRecord(request(), "\"1.3\"");
+
+        assertEquals(HttpStatus.PRECONDITION_FAILED, response.getStatusCode());
+        assertEquals(false, response.getBody().get("success"));
+        assertEquals("记录已被修改，请刷新后重试", response.getBody().get("message"));
+        assertNull(response.getHeaders().getETag());
+    }
+
+    @Test
+    void conflictingDeleteReturns412() {
+        ResponseEntity<Map<String, Object>> response = controller.deleteMealRecord(DATE.toString(), "\"1.3\"");
+
+        assertEquals(HttpStatus.PRECONDITION_FAILED, response.getStatusCode());
+        assertEquals(false, response.getBody().get("success"));
+    }
+
+    /**
+     * 轮询时带上次的ETag：数据未变返回无响应体的304，变化后返回新的200
+     */
+    @Test
+    void pollingWithCurrentETagReturns304() {
+        ResponseEntity<Map<String, Object>> first = controller.getRecordDates(2024, 3, null, null);
+        String etag = first.getHeaders().getETag();
+        assertEquals(HttpStatus.OK, first.getStatusCode());
+        assertEquals("no-cache, private", first.getHeaders().getCacheControl());
+
+        ResponseEntity<Map<String, Object>> unchanged = controller.getRecordDates(2024, 3, null, etag);
+        assertEquals(HttpStatus.NOT_MODIFIED, unchanged.getStatusCode());
+        assertEquals(etag, unchanged.getHeaders().getETag());
+        assertEquals("no-cache, private", unchanged.getHeaders().getCacheControl());
+        assertNull(unchanged.getBody());
+
+        recordDates = Arrays.asList("2024-03-01", "2024-03-02", "2024-03-03");
+        ResponseEntity<Map<String, Object>> changed = controller.getRecordDates(2024, 3, null, etag);
+        assertEquals(HttpStatus.OK, changed.getStatusCode());
+        assertNotEquals(etag, changed.getHeaders().getETag());
+        assertEquals(recordDates, changed.getBody().get("data"));
+
+        assertEquals(1.0, meterRegistry.get("http.conditional.get")
+                .tag("endpoint", "meal.record-dates").tag("result", "not_modified").counter().count());
+        assertEquals(2.0, meterRegistry.get("http.conditional.get")
+                .tag("endpoint", "meal.record-dates").tag("result", "full").counter().count());
+    }
+
+    /**
+     * If-None-Match: * 只匹配已存在的记录；当天没有记录时返回完整响应而不是304
+     */
+    @Test
+    void wildcardIfNoneMatchDoesNotMatchMissingRecord() {
+        ResponseEntity<Map<String, Object>> missing = controller.getMealRecord(DATE.toString(), "*");
+        assertEquals(HttpStatus.OK, missing.getStatusCode());
+        assertNull(missing.getBody().get("data"));
+        assertEquals(ETags.NONE, missing.getHeaders().getETag());
+
+        // 已缓存的"不存在"结果仍然按ETag返回304
+        assertEquals(HttpStatus.NOT_MODIFIED, controller.getMealRecord(DATE.toString(), ETags.NONE).getStatusCode());
+
+        stored = new MealRecord();
+        stored.setId(1L);
+        stored.setRecordDate(DATE);
+        stored.setVersion(version);
+        ResponseEntity<Map<String, Object>> existing = controller.getMealRecord(DATE.toString(), "*");
+        assertEquals(HttpStatus.NOT_MODIFIED, existing.getStatusCode());
+        assertEquals("\"1.4\"", existing.getHeaders().getETag());
+    }
+
+    @Test
+    void emptyYearInComparisonReturns400() {
+        ResponseEntity<Map<String, Object>> response = controller.getYearStatistics(null, Arrays.asList(2024, null, 2025));
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals("参数错误: 年份不能为空", response.getBody().get("message"));
+    }
+
+    @Test
+    void exportReturns429WhenConcurrentExportsAreFull() {
+        ReflectionTestUtils.setField(controller, "mealExportService", new MealExportService() {
+            @Override
+            public StreamingResponseBody exportCurrentUser(LocalDate start, LocalDate end, Format format) {
+                throw new RejectedExecutionException("同时进行的导出已达上限: 4");
+            }
+        });
+
+        ResponseEntity<?> response = controller.export(null, null, "csv");
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, response.getStatusCode());
+        assertEquals("5", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+    }
+
+    private static MealRecordRequest request() {
+        MealRecordRequest request = new MealRecordRequest();
+        request.setRecordDate(DATE);
+        return request;
+    }
+}
@@ -0,0 +1,71 @@
+package com.accounting.handler;
+
+import com.accounting.util.Money;
+import org.apache.ibatis.type.JdbcType;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class MoneyTypeHandlerTest {
+
+    private final MoneyTypeHandler handler = new MoneyTypeHandler();
+
+    @Test
+    void bindsScaleTwoDecimal() throws Exception {
+        Map<Integer, Object> parameters = new HashMap<>();
+        PreparedStatement ps = (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "setBigDecimal":
+                            parameters.put((Integer) args[0], args[1]);
+                            return null;
+                        case "setNull":
+                            parameters.put((Integer) args[0], "NULL:" + args[1]);
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+
+        handler.setParameter(ps, 1, Money.ofCents(1200), JdbcType.DECIMAL);
+        handler.setParameter(ps, 2, null, JdbcType.DECIMAL);
+
+        BigDecimal bound = (BigDecimal) parameters.get(1);
+        assertEquals(2, bound.scale());
+        assertEquals(new BigDecimal("12.00"), bound);
+        assertEquals("NULL:" + Types.DECIMAL, parameters.get(2));
+    }
+
+    /**
+     * 驱动返回的小数位数不一定是2（如SUM、计算列），读取时统一转换为分
+     */
+    @Test
+    void readsDecimalsOfAnyScale() throws Exception {
+        Map<String, BigDecimal> columns = new HashMap<>();
+        columns.put("total", new BigDecimal("12.5"));
+        columns.put("avg", new BigDecimal("3.3333"));
+        columns.put("whole", new BigDecimal("7"));
+        columns.put("missing", null);
+        ResultSet rs = (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ResultSet.class}, (proxy, method, args) -> {
+                    if ("getBigDecimal".equals(method.getName())) {
+                        return columns.get((String) args[0]);
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+
+        assertEquals(Money.ofCents(1250), handler.getResult(rs, "total"));
+        assertEquals(Money.ofCents(333), handler.getResult(rs, "avg"));
+        assertEquals(Money.ofCents(700), handler.getResult(rs, "whole"));
+        assertNull(handler.getResult(rs, "missing"));
+    }
+}
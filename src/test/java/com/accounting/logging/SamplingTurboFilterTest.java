@@ -0,0 +1,64 @@
+package com.accounting.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SamplingTurboFilterTest {
+
+    private LoggerContext context;
+    private SamplingTurboFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        context = new LoggerContext();
+        context.getLogger(Logger.ROOT_LOGGER_NAME).setLevel(Level.DEBUG);
+        filter = new SamplingTurboFilter();
+        filter.setRules("com.accounting.mapper=10, com.accounting.mapper.MealRecordMapper=2, invalid=x");
+    }
+
+    @Test
+    void debugEventsAreSampledByLongestPrefix() {
+        assertEquals(10, passed(context.getLogger("com.accounting.mapper.UserMapper"), Level.DEBUG, 100));
+        assertEquals(50, passed(context.getLogger("com.accounting.mapper.MealRecordMapper"), Level.DEBUG, 100));
+    }
+
+    @Test
+    void infoAndAboveAreNeverSampled() {
+        Logger logger = context.getLogger("com.accounting.mapper.UserMapper");
+
+        assertEquals(100, passed(logger, Level.INFO, 100));
+        assertEquals(100, passed(logger, Level.WARN, 100));
+        assertEquals(100, passed(logger, Level.ERROR, 100));
+    }
+
+    @Test
+    void unmatchedLoggersAreNotSampled() {
+        assertEquals(100, passed(context.getLogger("com.accounting.util.JwtUtil"), Level.DEBUG, 100));
+    }
+
+    @Test
+    void levelChecksWithoutMessageAreNotCounted() {
+        Logger logger = context.getLogger("com.accounting.mapper.UserMapper");
+        for (int i = 0; i < 5; i++) {
+            assertEquals(FilterReply.NEUTRAL, filter.decide(null, logger, Level.DEBUG, null, null, null));
+        }
+
+        assertEquals(FilterReply.NEUTRAL, filter.decide(null, logger, Level.DEBUG, "first", null, null));
+    }
+
+    private int passed(Logger logger, Level level, int events) {
+        int passed = 0;
+        for (int i = 0; i < events; i++) {
+            if (filter.decide(null, logger, level, "message {}", new Object[]{i}, null) != FilterReply.DENY) {
+                passed++;
+            }
+        }
+        return passed;
+    }
+}
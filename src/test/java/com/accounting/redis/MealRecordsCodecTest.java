@@ -0,0 +1,134 @@
+package com.accounting.redis;
+
+import com.accounting.entity.MealRecord;
+import com.accounting.util.Money;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MealRecordsCodecTest {
+
+    private final MealRecordsCodec codec = new MealRecordsCodec();
+
+    @Test
+    void roundTripKeepsEveryField() {
+        MealRecord full = new MealRecord();
+        full.setId(Long.MAX_VALUE);
+        full.setUserId(7L);
+        full.setRecordDate(LocalDate.of(2024, 2, 29));
+        full.setBreakfast(Money.ofCents(350));
+        full.setLunch(Money.ZERO);
+        full.setDinner(Money.ofCents(-1250));
+        full.setSnack(Money.ofCents(Long.MIN_VALUE / 2));
+        full.setDrink(Money.ofCents(99_999_999));
+        full.setTotal(Money.ofCents(12_345));
+        full.setCustomItems("{\"水果\":2.50,\"☕\":\"12\"}");
+        full.setCreateTime(LocalDateTime.of(2024, 2, 29, 23, 59, 59, 123_456_789));
+        full.setUpdateTime(LocalDateTime.of(1969, 12, 31, 0, 0, 1, 1));
+        full.setVersion(Integer.MAX_VALUE);
+
+        // 可空字段全部为null
+        MealRecord sparse = new MealRecord();
+        sparse.setId(1L);
+        sparse.setUserId(7L);
+        sparse.setRecordDate(LocalDate.of(1900, 1, 1));
+
+        MealRecord emptyItems = new MealRecord();
+        emptyItems.setId(2L);
+        emptyItems.setUserId(7L);
+        emptyItems.setRecordDate(LocalDate.of(2024, 3, 1));
+        emptyItems.setCustomItems("");
+        emptyItems.setVersion(0);
+
+        List<MealRecord> records = Arrays.asList(full, sparse, emptyItems);
+        assertEquals(records, codec.decode(codec.encode(records)));
+        assertEquals(Collections.emptyList(), codec.decode(codec.encode(Collections.emptyList())));
+    }
+
+    /**
+     * 一个月的快照比普通JSON小得多
+     */
+    @Test
+    void binaryIsMoreCompactThanJson() throws Exception {
+        List<MealRecord> month = new ArrayList<>();
+        for (int day = 1; day <= 31; day++) {
+            MealRecord record = new MealRecord();
+            record.setId(100_000L + day);
+            record.setUserId(7L);
+            record.setRecordDate(LocalDate.of(2024, 1, day));
+            record.setBreakfast(Money.ofCents(500));
+            record.setLunch(Money.ofCents(1500));
+            record.setDinner(Money.ofCents(2000));
+            record.setTotal(Money.ofCents(4000));
+            record.setCreateTime(LocalDateTime.of(2024, 1, day, 12, 0));
+            record.setUpdateTime(LocalDateTime.of(2024, 1, day, 12, 0));
+            record.setVersion(0);
+            month.add(record);
+        }
+        byte[] binary = codec.encode(month);
+        byte[] json = new ObjectMapper().registerModule(new JavaTimeModule()).writeValueAsBytes(month);
+
+        assertEquals(month, codec.decode(binary));
+        assertTrue(binary.length * 4 < json.length, binary.length + " vs " + json.length);
+    }
+
+    /**
+     * 其他格式或其他结构版本的数据按未命中处理
+     */
+    @Test
+    void unknownFormatDecodesToNull() {
+        byte[] encoded = codec.encode(Collections.singletonList(record()));
+
+        assertNull(codec.decode(new byte[0]));
+        assertNull(codec.decode("[{\"id\":1}]".getBytes(StandardCharsets.UTF_8)));
+        byte[] otherVersion = encoded.clone();
+        otherVersion[1] = (byte) (MealRecordsCodec.SCHEMA_VERSION + 1);
+        assertNull(codec.decode(otherVersion));
+    }
+
+    @Test
+    void truncatedDataIsRejected() {
+        byte[] encoded = codec.encode(Collections.singletonList(record()));
+
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(Arrays.copyOf(encoded, encoded.length - 1)));
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(Arrays.copyOf(encoded, 3)));
+    }
+
+    /**
+     * 切换编码格式后，JSON编解码器把二进制数据当作未命中
+     */
+    @Test
+    void jsonCodecIgnoresBinaryValues() {
+        ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        JsonCodec<List<MealRecord>> json = new JsonCodec<>(objectMapper,
+                objectMapper.getTypeFactory().constructCollectionType(List.class, MealRecord.class));
+        List<MealRecord> records = Collections.singletonList(record());
+
+        assertNull(json.decode(codec.encode(records)));
+        assertEquals(records, json.decode(json.encode(records)));
+    }
+
+    private static MealRecord record() {
+        MealRecord record = new MealRecord();
+        record.setId(1L);
+        record.setUserId(7L);
+        record.setRecordDate(LocalDate.of(2024, 3, 1));
+        record.setTotal(Money.ofCents(1800));
+        record.setCustomItems("{\"水果\":2.50}");
+        record.setVersion(3);
+        return record;
+    }
+}
@@ -0,0 +1,230 @@
+package com.accounting.redis;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisSentinelConnection;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RedisCircuitBreakerTest {
+
+    private static final long OPEN_MS = 50;
+    private static final long SLOW_CALL_MS = 30;
+
+    private SimpleMeterRegistry meterRegistry;
+    private RedisCircuitBreaker breaker;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        breaker = new RedisCircuitBreaker(3, OPEN_MS, SLOW_CALL_MS, meterRegistry);
+    }
+
+    @Test
+    void opensAfterConsecutiveFailuresAndRejectsWhileOpen() {
+        breaker.record(1, unavailable());
+        breaker.record(1, unavailable());
+        // 成功调用清零连续失败次数
+        breaker.record(1, null);
+        breaker.record(1, unavailable());
+        breaker.record(1, unavailable());
+        assertEquals(RedisCircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.record(1, unavailable());
+
+        assertEquals(RedisCircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(1.0, meterRegistry.get("redis.circuit.rejected").counter().count());
+        assertEquals(1.0, meterRegistry.get("redis.circuit.transitions").tag("to", "open").counter().count());
+        assertEquals(1.0, meterRegistry.get("redis.circuit.state").gauge().value());
+    }
+
+    @Test
+    void halfOpenLetsOneProbeThroughAndClosesOnSuccess() throws InterruptedException {
+        open();
+        Thread.sleep(OPEN_MS + 10);
+
+        assertTrue(breaker.tryAcquire());
+        assertEquals(RedisCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        // 探测完成前其他请求仍被拒绝
+        assertFalse(breaker.tryAcquire());
+
+        breaker.record(1, null);
+
+        assertEquals(RedisCircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        assertEquals(1.0, meterRegistry.get("redis.circuit.transitions").tag("to", "closed").counter().count());
+    }
+
+    @Test
+    void failedProbeReopensImmediately() throws InterruptedException {
+        open();
+        Thread.sleep(OPEN_MS + 10);
+        assertTrue(breaker.tryAcquire());
+
+        breaker.record(1, unavailable());
+
+        assertEquals(RedisCircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(2.0, meterRegistry.get("redis.circuit.transitions").tag("to", "open").counter().count());
+    }
+
+    @Test
+    void slowCallsCountAsFailuresButCommandErrorsDoNot() {
+        breaker.record(SLOW_CALL_MS + 1, null);
+        breaker.record(SLOW_CALL_MS + 1, null);
+        // 命令本身的错误说明Redis可用
+        breaker.record(1, new InvalidDataAccessApiUsageException("WRONGTYPE"));
+        breaker.record(SLOW_CALL_MS + 1, null);
+        breaker.record(SLOW_CALL_MS, null);
+        assertEquals(RedisCircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.record(SLOW_CALL_MS + 1, null);
+        breaker.record(SLOW_CALL_MS + 1, null);
+        breaker.record(SLOW_CALL_MS + 1, null);
+
+        assertEquals(RedisCircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void unavailableIsDetectedThroughCauses() {
+        assertTrue(RedisCircuitBreaker.isUnavailable(new RedisCircuitOpenException()));
+        assertTrue(RedisCircuitBreaker.isUnavailable(new IllegalStateException(unavailable())));
+        assertFalse(RedisCircuitBreaker.isUnavailable(new IllegalStateException("bad state")));
+    }
+
+    /**
+     * 连接工厂包装后：命令失败打开熔断，打开期间取连接直接快速失败，不访问底层工厂
+     */
+    @Test
+    void wrappedFactoryFailsFastWhileOpen() {
+        FakeConnectionFactory target = new FakeConnectionFactory();
+        RedisConnectionFactory factory = wrap(target);
+        target.failure = unavailable();
+
+        for (int i = 0; i < 3; i++) {
+            RedisConnection connection = factory.getConnection();
+            assertThrows(RedisConnectionFailureException.class, connection::ping);
+            // 关闭连接不访问网络，不计入熔断
+            connection.close();
+        }
+
+        assertEquals(RedisCircuitBreaker.State.OPEN, breaker.getState());
+        assertThrows(RedisCircuitOpenException.class, factory::getConnection);
+        assertEquals(3, target.connections.get());
+    }
+
+    @Test
+    void wrappedFactoryRecordsCommandInterfacesAndSlowCalls() {
+        FakeConnectionFactory target = new FakeConnectionFactory();
+        RedisConnectionFactory factory = wrap(target);
+        target.delayMillis = SLOW_CALL_MS + 10;
+
+        for (int i = 0; i < 3; i++) {
+            factory.getConnection().stringCommands().get("k".getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertEquals(RedisCircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void factoryIsOnlyWrappedOnce() {
+        RedisConnectionFactory factory = wrap(new FakeConnectionFactory());
+
+        assertSame(factory, postProcessor().postProcessAfterInitialization(factory, "redisConnectionFactory"));
+        Object other = new Object();
+        assertSame(other, postProcessor().postProcessAfterInitialization(other, "other"));
+    }
+
+    private void open() {
+        for (int i = 0; i < 3; i++) {
+            breaker.record(1, unavailable());
+        }
+        assertEquals(RedisCircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    private RedisConnectionFactory wrap(RedisConnectionFactory target) {
+        return (RedisConnectionFactory) postProcessor().postProcessAfterInitialization(target, "redisConnectionFactory");
+    }
+
+    private RedisCircuitBreakerPostProcessor postProcessor() {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("redisCircuitBreaker", breaker);
+        return new RedisCircuitBreakerPostProcessor(beanFactory.getBeanProvider(RedisCircuitBreaker.class));
+    }
+
+    private static RedisConnectionFailureException unavailable() {
+        return new RedisConnectionFailureException("connection refused");
+    }
+
+    /**
+     * 返回代理连接的连接工厂：每条命令按设置延迟或失败，字符串命令接口同样由代理实现
+     */
+    private static final class FakeConnectionFactory implements RedisConnectionFactory {
+        private final AtomicInteger connections = new AtomicInteger();
+        private volatile RuntimeException failure;
+        private volatile long delayMillis;
+
+        @Override
+        public RedisConnection getConnection() {
+            connections.incrementAndGet();
+            return (RedisConnection) Proxy.newProxyInstance(RedisConnection.class.getClassLoader(),
+                    new Class<?>[]{RedisConnection.class}, (proxy, method, args) -> {
+                        if ("close".equals(method.getName())) {
+                            return null;
+                        }
+                        if ("stringCommands".equals(method.getName())) {
+                            return Proxy.newProxyInstance(method.getReturnType().getClassLoader(),
+                                    new Class<?>[]{method.getReturnType()}, (p, m, a) -> command());
+                        }
+                        return command();
+                    });
+        }
+
+        private Object command() throws InterruptedException {
+            if (delayMillis > 0) {
+                Thread.sleep(delayMillis);
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return null;
+        }
+
+        @Override
+        public RedisClusterConnection getClusterConnection() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean getConvertPipelineAndTxResults() {
+            return false;
+        }
+
+        @Override
+        public RedisSentinelConnection getSentinelConnection() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public DataAccessException translateExceptionIfPossible(RuntimeException ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.accounting.redis;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RedisNearCacheTest {
+
+    private AtomicInteger loads;
+    private RedisNearCache nearCache;
+
+    @BeforeEach
+    void setUp() {
+        loads = new AtomicInteger();
+        nearCache = new RedisNearCache(true, 0, 100, 60, new SimpleMeterRegistry()).register("user_settings:");
+    }
+
+    @Test
+    void servesRegisteredKeysLocallyUntilNotified() {
+        assertEquals("v1", nearCache.get("user_settings:1", () -> load("v1")));
+        assertEquals("v1", nearCache.get("user_settings:1", () -> load("v2")));
+        assertEquals(1, loads.get());
+
+        nearCache.onMessage(keyspace("user_settings:1"), null);
+
+        assertEquals("v2", nearCache.get("user_settings:1", () -> load("v2")));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void unregisteredPrefixesAlwaysReadThrough() {
+        nearCache.get("jwt_token:abc", () -> load("1"));
+        nearCache.get("jwt_token:abc", () -> load("1"));
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void disabledCacheAlwaysReadsThrough() {
+        RedisNearCache disabled = new RedisNearCache(false, 0, 100, 60, new SimpleMeterRegistry())
+                .register("user_settings:");
+        disabled.get("user_settings:1", () -> load("v1"));
+        disabled.get("user_settings:1", () -> load("v1"));
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void notificationDuringLoadDropsTheLoadedValue() throws Exception {
+        CompletableFuture<Void> notified = new CompletableFuture<>();
+        String loaded = nearCache.get("user_settings:1", () -> {
+            // 加载期间另一个节点修改了该键，通知在加载返回前到达
+            CompletableFuture.runAsync(() -> nearCache.onMessage(keyspace("user_settings:1"), null))
+                    .whenComplete((ignored, error) -> notified.complete(null));
+            sleep(100);
+            return load("old");
+        });
+        notified.get(5, TimeUnit.SECONDS);
+
+        assertEquals("old", loaded);
+        assertEquals("new", nearCache.get("user_settings:1", () -> load("new")));
+    }
+
+    @Test
+    void notificationsFromOtherDatabasesAreIgnored() {
+        nearCache.get("user_settings:1", () -> load("v1"));
+
+        nearCache.onMessage(new DefaultMessage("__keyspace@1__:user_settings:1".getBytes(StandardCharsets.UTF_8),
+                "hset".getBytes(StandardCharsets.UTF_8)), null);
+
+        assertEquals("v1", nearCache.get("user_settings:1", () -> load("v2")));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String load(String value) {
+        loads.incrementAndGet();
+        return value;
+    }
+
+    private static DefaultMessage keyspace(String key) {
+        return new DefaultMessage(("__keyspace@0__:" + key).getBytes(StandardCharsets.UTF_8),
+                "hset".getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,223 @@
+package com.accounting.service;
+
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.IntConsumer;
+
+
+/**
+ * 测试用的进程内Redis：只实现缓存和迁移任务用到的哈希、字符串、SET NX、Lua脚本和键空间通知，所有操作串行执行
+ * 不模拟过期时间
+ * 脚本按内容识别，由Java代码模拟其语义
+ */
+class InMemoryRedisTemplate extends StringRedisTemplate {
+
+    private final Map<String, Map<Object, Object>> hashes = new HashMap<>();
+    private final Map<String, String> values = new HashMap<>();
+    private final AtomicInteger hashReads = new AtomicInteger();
+    private volatile IntConsumer afterHashRead = readNumber -> { };
+    private final List<MessageListener> keyspaceListeners = new CopyOnWriteArrayList<>();
+
+    private final HashOperations<String, Object, Object> hashOperations;
+    private final ValueOperations<String, String> valueOperations;
+
+    @SuppressWarnings("unchecked")
+    InMemoryRedisTemplate() {
+        hashOperations = proxy(HashOperations.class, (method, args) -> {
+            switch (method) {
+                case "entries":
+                    return entries((String) args[0]);
+                case "multiGet":
+                    return multiGet((String) args[0], (Collection<Object>) args[1]);
+                default:
+                    throw new UnsupportedOperationException("未模拟的哈希操作: " + method);
+            }
+        });
+        valueOperations = proxy(ValueOperations.class, (method, args) -> {
+            if ("setIfAbsent".equals(method)) {
+                return setIfAbsent((String) args[0], (String) args[1]);
+            }
+            if ("get".equals(method)) {
+                return value((String) args[0]);
+            }
+            if ("set".equals(method) && (args.length == 2 || args.length == 4)) {
+                setValue((String) args[0], (String) args[1]);
+                return null;
+            }
+            throw new UnsupportedOperationException("未模拟的字符串操作: " + method);
+        });
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <HK, HV> HashOperations<String, HK, HV> opsForHash() {
+        return (HashOperations<String, HK, HV>) (HashOperations<String, ?, ?>) hashOperations;
+    }
+
+    @Override
+    public ValueOperations<String, String> opsForValue() {
+        return valueOperations;
+    }
+
+    @Override
+    public Boolean delete(String key) {
+        boolean deleted;
+        synchronized (this) {
+            deleted = hashes.remove(key) != null | values.remove(key) != null;
+        }
+        notifyKeyspace(key, "del");
+        return deleted;
+    }
+
+    @Override
+    public synchronized Boolean hasKey(String key) {
+        return hashes.containsKey(key) || values.containsKey(key);
+    }
+
+    @Override
+    public <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+        T result = executeScript(script, keys, args);
+        if (!script.getScriptAsString().contains("redis.call('GET', KEYS[1]) == ARGV[1]")) {
+            notifyKeyspace(keys.get(0), "hset");
+        }
+        return result;
+    }
+
+    /**
+     * 像开启了 notify-keyspace-events 的Redis一样，键被修改后向订阅者发送 __keyspace@0__:键 通知
+     */
+    void addKeyspaceListener(MessageListener listener) {
+        keyspaceListeners.add(listener);
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized <T> T executeScript(RedisScript<T> script, List<String> keys, Object... args) {
+        String source = script.getScriptAsString();
+        String key = keys.get(0);
+        if (source.contains("for i = 4, #ARGV, 2")) {
+            return (T) load(key, args);
+        }
+        if (source.contains("for i = 3, #ARGV, 2") && source.contains("KEYS[2]")) {
+            Map<Object, Object> replaced = new LinkedHashMap<>();
+            for (int i = 2; i < args.length; i += 2) {
+                replaced.put(args[i], args[i + 1]);
+            }
+            hashes.put(key, replaced);
+            values.put(keys.get(1), (String) args[1]);
+            return (T) Long.valueOf(1);
+        }
+        if (source.contains("HINCRBY") && source.contains("HDEL")) {
+            Map<Object, Object> hash = hashes.computeIfAbsent(key, k -> new LinkedHashMap<>());
+            hash.remove(args[0]);
+            hash.remove("__loaded__");
+            incrementGeneration(hash);
+            return (T) Long.valueOf(1);
+        }
+        if (source.contains("redis.call('GET', KEYS[1]) == ARGV[1]") && source.contains("PEXPIRE")) {
+            return (T) Long.valueOf(args[0].equals(values.get(key)) ? 1 : 0);
+        }
+        if (source.contains("redis.call('GET', KEYS[1]) == ARGV[1]")) {
+            return (T) Long.valueOf(args[0].equals(values.get(key)) && values.remove(key) != null ? 1 : 0);
+        }
+        throw new UnsupportedOperationException("未模拟的脚本: " + source);
+    }
+
+    /**
+     * HGETALL 次数
+     */
+    int hashReads() {
+        return hashReads.get();
+    }
+
+    /**
+     * 每次 HGETALL 返回前回调（参数为第几次读取），用于在读取之后暂停调用方
+     */
+    void afterHashRead(IntConsumer callback) {
+        this.afterHashRead = callback;
+    }
+
+    synchronized Map<Object, Object> hash(String key) {
+        Map<Object, Object> hash = hashes.get(key);
+        return hash != null ? new LinkedHashMap<>(hash) : new LinkedHashMap<>();
+    }
+
+    private Map<Object, Object> entries(String key) {
+        Map<Object, Object> hash = hash(key);
+        afterHashRead.accept(hashReads.incrementAndGet());
+        return hash;
+    }
+
+    private synchronized List<Object> multiGet(String key, Collection<Object> fields) {
+        Map<Object, Object> hash = hashes.getOrDefault(key, new HashMap<>());
+        List<Object> result = new ArrayList<>(fields.size());
+        for (Object field : fields) {
+            result.add(hash.get(field));
+        }
+        return result;
+    }
+
+    private synchronized Boolean setIfAbsent(String key, String value) {
+        return values.putIfAbsent(key, value) == null;
+    }
+
+    synchronized String value(String key) {
+        return values.get(key);
+    }
+
+    synchronized void setValue(String key, String value) {
+        values.put(key, value);
+    }
+
+    private Long load(String key, Object[] args) {
+        Map<Object, Object> hash = hashes.get(key);
+        Object generation = hash != null ? hash.getOrDefault("__gen__", "0") : "0";
+        if (!generation.equals(args[0])) {
+            return 0L;
+        }
+        Map<Object, Object> replaced = new LinkedHashMap<>();
+        for (int i = 3; i < args.length; i += 2) {
+            replaced.put(args[i], args[i + 1]);
+        }
+        replaced.put("__loaded__", args[1]);
+        replaced.put("__gen__", generation);
+        hashes.put(key, replaced);
+        return 1L;
+    }
+
+    // 在锁外通知，与真实Redis一样不阻塞其他命令
+    private void notifyKeyspace(String key, String event) {
+        Message message = new DefaultMessage(("__keyspace@0__:" + key).getBytes(StandardCharsets.UTF_8),
+                event.getBytes(StandardCharsets.UTF_8));
+        for (MessageListener listener : keyspaceListeners) {
+            listener.onMessage(message, null);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, BiFunction<String, Object[], Object> handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> handler.apply(method.getName(), args));
+    }
+
+    private static void incrementGeneration(Map<Object, Object> hash) {
+        long generation = Long.parseLong((String) hash.getOrDefault("__gen__", "0"));
+        hash.put("__gen__", String.valueOf(generation + 1));
+    }
+}
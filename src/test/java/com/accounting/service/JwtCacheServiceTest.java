@@ -0,0 +1,143 @@
+package com.accounting.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JwtCacheServiceTest {
+
+    private ScriptRecordingRedisTemplate redis;
+    private JwtCacheService service;
+    private TokenLocalCache tokenLocalCache;
+
+    @BeforeEach
+    void setUp() {
+        redis = new ScriptRecordingRedisTemplate();
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        service = newService(redis, meterRegistry);
+
+        tokenLocalCache = new TokenLocalCache();
+        ReflectionTestUtils.setField(tokenLocalCache, "stringRedisTemplate", redis);
+        ReflectionTestUtils.setField(tokenLocalCache, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(tokenLocalCache, "jwtCacheService", service);
+        ReflectionTestUtils.setField(tokenLocalCache, "maximumSize", 100L);
+        ReflectionTestUtils.setField(tokenLocalCache, "ttlSeconds", 300L);
+        ReflectionTestUtils.setField(tokenLocalCache, "tokenLifetimeSeconds", 86400L);
+        ReflectionTestUtils.setField(tokenLocalCache, "revocationMaximumSize", 100L);
+        tokenLocalCache.init();
+    }
+
+    @Test
+    void refreshIsCoalescedWithinTheWindow() {
+        assertTrue(service.refreshTokenCache("token-a", 1L));
+        assertTrue(service.refreshTokenCache("token-a", 1L));
+
+        assertEquals(1, redis.scriptCalls.size());
+        // 用户键只在仍指向该token时续期，脚本需要token本身
+        assertEquals(Arrays.asList("jwt_token:token-a", "user_token:1"), redis.scriptCalls.get(0).keys);
+        assertEquals("token-a", redis.scriptCalls.get(0).args[2]);
+    }
+
+    @Test
+    void failedRefreshIsNotCoalesced() {
+        redis.failure = new RedisConnectionFailureException("down");
+        assertThrows(RedisConnectionFailureException.class, () -> service.refreshTokenCache("token-a", 1L));
+
+        redis.failure = null;
+        redis.result = -1L;
+        assertFalse(service.refreshTokenCache("token-a", 1L));
+        assertFalse(service.refreshTokenCache("token-a", 1L));
+
+        // 异常和token已失效都不留下合并记录，每次都重新访问Redis
+        assertEquals(3, redis.scriptCalls.size());
+    }
+
+    @Test
+    void tokenRevokedOnAnotherNodeIsCheckedAgainInRedis() {
+        service.refreshTokenCache("token-a", 1L);
+
+        tokenLocalCache.onMessage(message("t:" + TokenLocalCache.hash("token-a")), null);
+        redis.result = -1L;
+
+        assertFalse(service.refreshTokenCache("token-a", 1L));
+        assertEquals(2, redis.scriptCalls.size());
+    }
+
+    @Test
+    void userRevokedOnAnotherNodeIsCheckedAgainInRedis() {
+        service.refreshTokenCache("token-a", 1L);
+        service.refreshTokenCache("token-b", 2L);
+
+        tokenLocalCache.onMessage(message("u:1"), null);
+        service.refreshTokenCache("token-a", 1L);
+        service.refreshTokenCache("token-b", 2L);
+
+        // 只有用户1的token重新访问Redis
+        assertEquals(3, redis.scriptCalls.size());
+        assertEquals("token-a", redis.scriptCalls.get(2).args[2]);
+    }
+
+    static JwtCacheService newService(StringRedisTemplate redis, MeterRegistry meterRegistry) {
+        JwtCacheService service = new JwtCacheService();
+        ReflectionTestUtils.setField(service, "stringRedisTemplate", redis);
+        ReflectionTestUtils.setField(service, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(service, "refreshThresholdSeconds", 43200L);
+        ReflectionTestUtils.setField(service, "refreshCoalesceSeconds", 60L);
+        service.init();
+        return service;
+    }
+
+    private static DefaultMessage message(String body) {
+        return new DefaultMessage(TokenLocalCache.REVOKE_CHANNEL.getBytes(StandardCharsets.UTF_8),
+                body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 记录脚本调用并返回固定结果；广播不发送
+     */
+    private static final class ScriptRecordingRedisTemplate extends StringRedisTemplate {
+        private final List<ScriptCall> scriptCalls = new ArrayList<>();
+        private volatile Long result = 0L;
+        private volatile RuntimeException failure;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+            scriptCalls.add(new ScriptCall(keys, args));
+            if (failure != null) {
+                throw failure;
+            }
+            return (T) result;
+        }
+
+        @Override
+        public void convertAndSend(String channel, Object message) {
+        }
+    }
+
+    private static final class ScriptCall {
+        private final List<String> keys;
+        private final Object[] args;
+
+        ScriptCall(List<String> keys, Object[] args) {
+            this.keys = keys;
+            this.args = args;
+        }
+    }
+}
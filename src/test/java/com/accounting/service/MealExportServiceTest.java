@@ -0,0 +1,291 @@
+package com.accounting.service;
+
+import com.accounting.entity.Diary;
+import com.accounting.entity.MealRecord;
+import com.accounting.entity.MealRecordItem;
+import com.accounting.mapper.DiaryMapper;
+import com.accounting.mapper.MealRecordItemMapper;
+import com.accounting.mapper.MealRecordMapper;
+import com.accounting.util.JwtPrincipal;
+import com.accounting.util.Money;
+import com.accounting.util.UserContext;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.ibatis.cursor.Cursor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MealExportServiceTest {
+
+    private static final LocalDate FIRST_DAY = LocalDate.of(2000, 1, 1);
+
+    // 导出进程的堆上限；全部行留在内存中时远超该值
+    private static final String HEAP_LIMIT = "-Xmx32m";
+    private static final int LARGE_EXPORT_DAYS = 300_000;
+    private static final int MAX_CONCURRENT = 2;
+
+    @AfterEach
+    void tearDown() {
+        UserContext.clear();
+    }
+
+    @Test
+    void mergesRecordsItemsAndDiariesByDate() throws IOException {
+        MealExportService service = newService(3);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        service.export(7L, FIRST_DAY, FIRST_DAY.plusDays(3), MealExportService.Format.NDJSON, out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8.name()).split("\n");
+        assertEquals(6, lines.length);
+        assertEquals("{\"type\":\"record\",\"recordDate\":\"2000-01-01\",\"breakfast\":1.00,\"lunch\":null,"
+                + "\"dinner\":null,\"snack\":null,\"drink\":null,\"total\":3.50,"
+                + "\"customItems\":\"{\\\"水果\\\":2.50}\"}", lines[0]);
+        assertEquals("{\"type\":\"diary\",\"recordDate\":\"2000-01-01\",\"itemName\":\"午饭\","
+                + "\"content\":\"day 0\"}", lines[1]);
+        assertTrue(lines[4].startsWith("{\"type\":\"record\",\"recordDate\":\"2000-01-03\""));
+    }
+
+    @Test
+    void csvGuardsFormulaCells() throws IOException {
+        MealExportService service = newService(1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        service.export(7L, FIRST_DAY, FIRST_DAY.plusDays(1), MealExportService.Format.CSV, out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8.name()).split("\r\n");
+        assertEquals("\uFEFFtype,recordDate,breakfast,lunch,dinner,snack,drink,total,customItems,itemName,content",
+                lines[0]);
+        assertEquals("record,2000-01-01,1.00,,,,,3.50,\"{\"\"水果\"\":2.50}\",,", lines[1]);
+        assertEquals("diary,2000-01-01,,,,,,,,午饭,day 0", lines[2]);
+    }
+
+    /**
+     * 名额在创建响应体时占用、响应体执行结束（包括写出失败）后释放，名额用完时直接拒绝
+     */
+    @Test
+    void concurrentExportsAreBoundedAndPermitsReleasedWhenBodyEnds() throws IOException {
+        UserContext.setPrincipal(new JwtPrincipal(7L, "tester", Instant.now(), Instant.now().plusSeconds(60)));
+        MealExportService service = newService(1);
+
+        StreamingResponseBody first = service.exportCurrentUser(FIRST_DAY, FIRST_DAY.plusDays(1), MealExportService.Format.NDJSON);
+        StreamingResponseBody second = service.exportCurrentUser(FIRST_DAY, FIRST_DAY.plusDays(1), MealExportService.Format.NDJSON);
+        assertThrows(RejectedExecutionException.class,
+                () -> service.exportCurrentUser(FIRST_DAY, FIRST_DAY.plusDays(1), MealExportService.Format.NDJSON));
+
+        // 客户端断开导致写出失败
+        assertThrows(IOException.class, () -> first.writeTo(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("broken pipe");
+            }
+        }));
+        StreamingResponseBody third = service.exportCurrentUser(FIRST_DAY, FIRST_DAY.plusDays(1), MealExportService.Format.NDJSON);
+        assertThrows(RejectedExecutionException.class,
+                () -> service.exportCurrentUser(FIRST_DAY, FIRST_DAY.plusDays(1), MealExportService.Format.NDJSON));
+
+        second.writeTo(new ByteArrayOutputStream());
+        third.writeTo(new ByteArrayOutputStream());
+        service.exportCurrentUser(FIRST_DAY, FIRST_DAY.plusDays(1), MealExportService.Format.NDJSON);
+        service.exportCurrentUser(FIRST_DAY, FIRST_DAY.plusDays(1), MealExportService.Format.NDJSON);
+    }
+
+    /**
+     * 在限制堆大小的子进程中导出大量数据：导出若把行留在内存中会OutOfMemoryError退出
+     */
+    @Test
+    void largeExportStreamsWithinCappedHeap() throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process process = new ProcessBuilder(java, HEAP_LIMIT, "-XX:+ExitOnOutOfMemoryError",
+                "-cp", System.getProperty("java.class.path"),
+                HeapProbe.class.getName(), String.valueOf(LARGE_EXPORT_DAYS))
+                .redirectErrorStream(true)
+                .start();
+        String output = readAll(process);
+        assertTrue(process.waitFor(60, TimeUnit.SECONDS), "导出进程超时");
+
+        assertEquals(0, process.exitValue(), output);
+        // 每天一条记录、一条日记
+        assertEquals("rows=" + (LARGE_EXPORT_DAYS * 2), output.trim());
+    }
+
+    /**
+     * 子进程入口：导出指定天数的数据到只计数的输出流
+     */
+    static final class HeapProbe {
+
+        public static void main(String[] args) throws IOException {
+            int days = Integer.parseInt(args[0]);
+            CountingOutputStream out = new CountingOutputStream();
+            newService(days).export(7L, FIRST_DAY, FIRST_DAY.plusDays(days), MealExportService.Format.NDJSON, out);
+            System.out.println("rows=" + out.lines);
+        }
+    }
+
+    /**
+     * 每天生成一条记录、两个动态项目和一条日记，数据在游标迭代时才创建
+     */
+    private static MealExportService newService(int days) {
+        ObjectMapper objectMapper = new ObjectMapper();
+        MealRecordItemService itemService = new MealRecordItemService();
+        ReflectionTestUtils.setField(itemService, "objectMapper", objectMapper);
+
+        MealExportService service = new MealExportService();
+        ReflectionTestUtils.setField(service, "mealRecordMapper", proxy(MealRecordMapper.class,
+                "cursorByDateRange", new GeneratedCursor<>(days, 1, MealExportServiceTest::record)));
+        ReflectionTestUtils.setField(service, "mealRecordItemMapper", proxy(MealRecordItemMapper.class,
+                "cursorByUserAndDateRange", new GeneratedCursor<>(days, 2, MealExportServiceTest::item)));
+        ReflectionTestUtils.setField(service, "diaryMapper", proxy(DiaryMapper.class,
+                "cursorByDateRange", new GeneratedCursor<>(days, 1, MealExportServiceTest::diary)));
+        ReflectionTestUtils.setField(service, "mealRecordItemService", itemService);
+        ReflectionTestUtils.setField(service, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(service, "transactionManager", new NoopTransactionManager());
+        ReflectionTestUtils.setField(service, "maxConcurrent", MAX_CONCURRENT);
+        service.init();
+        return service;
+    }
+
+    private static MealRecord record(long index) {
+        MealRecord record = new MealRecord();
+        record.setId(index + 1);
+        record.setUserId(7L);
+        record.setRecordDate(FIRST_DAY.plusDays(index));
+        record.setBreakfast(Money.ofCents(100));
+        record.setTotal(Money.ofCents(350));
+        return record;
+    }
+
+    private static MealRecordItem item(long index) {
+        MealRecordItem item = new MealRecordItem();
+        item.setRecordId(index / 2 + 1);
+        item.setUserId(7L);
+        item.setRecordDate(FIRST_DAY.plusDays(index / 2));
+        // 同一天的两行同名，归并后只保留后一行
+        item.setItemName("水果");
+        item.setAmount(Money.ofCents(index % 2 == 0 ? 100 : 250));
+        return item;
+    }
+
+    private static Diary diary(long index) {
+        Diary diary = new Diary();
+        diary.setUserId(7L);
+        diary.setRecordDate(FIRST_DAY.plusDays(index));
+        diary.setItemName("午饭");
+        diary.setContent("day " + index);
+        return diary;
+    }
+
+    private static <T> T proxy(Class<T> type, String method, Cursor<?> cursor) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (p, m, args) -> {
+            if (m.getName().equals(method)) {
+                return cursor;
+            }
+            throw new UnsupportedOperationException(m.getName());
+        }));
+    }
+
+    private static String readAll(Process process) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = process.getInputStream().read(buffer)) != -1) {
+            output.write(buffer, 0, n);
+        }
+        return output.toString(StandardCharsets.UTF_8.name());
+    }
+
+    /**
+     * 按序号逐个生成元素的游标，不保留已返回的元素
+     */
+    private static final class GeneratedCursor<T> implements Cursor<T> {
+        private final long size;
+        private final LongFunction<T> generator;
+        private long index = -1;
+        private boolean open = true;
+
+        GeneratedCursor(int days, int perDay, LongFunction<T> generator) {
+            this.size = (long) days * perDay;
+            this.generator = generator;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public boolean isConsumed() {
+            return index + 1 >= size;
+        }
+
+        @Override
+        public int getCurrentIndex() {
+            return (int) index;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new Iterator<T>() {
+                @Override
+                public boolean hasNext() {
+                    return open && index + 1 < size;
+                }
+
+                @Override
+                public T next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return generator.apply(++index);
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+
+    /**
+     * 丢弃写入的内容，只统计行数
+     */
+    private static final class CountingOutputStream extends OutputStream {
+        private long lines;
+
+        @Override
+        public void write(int b) {
+            if (b == '\n') {
+                lines++;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                if (b[i] == '\n') {
+                    lines++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.accounting.service;
+
+import com.accounting.dto.MealRecordRequest;
+import com.accounting.util.JwtPrincipal;
+import com.accounting.util.Money;
+import com.accounting.util.UserContext;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MealImportServiceTest {
+
+    private static final LocalDate FIRST_DAY = LocalDate.of(2024, 1, 1);
+
+    // 每次 saveAll 收到的批次
+    private final List<List<MealRecordRequest>> chunks = new ArrayList<>();
+    // saveAll 遇到该日期时抛出异常
+    private LocalDate failingDate;
+
+    private MealImportService service;
+
+    @BeforeEach
+    void setUp() {
+        MealRecordService recordService = new MealRecordService() {
+            @Override
+            public List<Map<String, Object>> saveAll(Long userId, List<MealRecordRequest> requests) {
+                chunks.add(new ArrayList<>(requests));
+                for (MealRecordRequest request : requests) {
+                    if (request.getRecordDate().equals(failingDate)) {
+                        throw new IllegalStateException("Deadlock found");
+                    }
+                }
+                return Collections.emptyList();
+            }
+        };
+        service = new MealImportService();
+        ReflectionTestUtils.setField(service, "mealRecordService", recordService);
+        // 与Spring Boot自动配置的ObjectMapper一致：忽略未知字段（如导出文件中的 type）
+        ReflectionTestUtils.setField(service, "objectMapper", new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES));
+        ReflectionTestUtils.setField(service, "transactionTemplate",
+                new TransactionTemplate(new NoopTransactionManager()));
+        ReflectionTestUtils.setField(service, "chunkSize", 2);
+        ReflectionTestUtils.setField(service, "maxRows", 1000);
+        UserContext.setPrincipal(new JwtPrincipal(7L, "tester", Instant.now(), Instant.now().plusSeconds(60)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        UserContext.clear();
+    }
+
+    /**
+     * 错误全部计数，但响应中只列出前100条
+     */
+    @Test
+    void reportedErrorsAreCappedButAllCounted() throws IOException {
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 250; i++) {
+            ndjson.append("{\"recordDate\":\"").append(FIRST_DAY.plusDays(i)).append("\",\"lunch\":-1}\n");
+        }
+        ndjson.append("{\"recordDate\":\"").append(FIRST_DAY.plusDays(300)).append("\",\"lunch\":12.5}\n");
+
+        Map<String, Object> result = importNdjson(ndjson.toString());
+
+        assertEquals(250, result.get("errorCount"));
+        List<?> errors = (List<?>) result.get("errors");
+        assertEquals(100, errors.size());
+        assertEquals(1, ((Map<?, ?>) errors.get(0)).get("row"));
+        assertEquals(100, ((Map<?, ?>) errors.get(99)).get("row"));
+        assertEquals("金额不能为负数", ((Map<?, ?>) errors.get(0)).get("message"));
+        assertEquals(1, result.get("imported"));
+    }
+
+    @Test
+    void failedChunkReportsEachRowAndLaterChunksContinue() throws IOException {
+        failingDate = FIRST_DAY.plusDays(2);
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 5; i++) {
+            ndjson.append("{\"recordDate\":\"").append(FIRST_DAY.plusDays(i)).append("\",\"lunch\":10}\n");
+        }
+
+        Map<String, Object> result = importNdjson(ndjson.toString());
+
+        assertEquals(3, chunks.size());
+        assertEquals(3, result.get("imported"));
+        assertEquals(2, result.get("errorCount"));
+        List<?> errors = (List<?>) result.get("errors");
+        assertEquals(3, ((Map<?, ?>) errors.get(0)).get("row"));
+        assertEquals(4, ((Map<?, ?>) errors.get(1)).get("row"));
+        assertTrue(((String) ((Map<?, ?>) errors.get(0)).get("message")).startsWith("写入失败"));
+    }
+
+    @Test
+    void rowsBeyondLimitAreReportedOnce() throws IOException {
+        ReflectionTestUtils.setField(service, "maxRows", 3);
+        StringBuilder csv = new StringBuilder("\uFEFFrecordDate,lunch,type\r\n");
+        for (int i = 0; i < 6; i++) {
+            csv.append(FIRST_DAY.plusDays(i)).append(",\"8\",record\r\n");
+        }
+
+        Map<String, Object> result = service.importRecords(
+                new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)), MealImportService.Format.CSV);
+
+        assertEquals(3, result.get("imported"));
+        assertEquals(1, result.get("errorCount"));
+        assertEquals(0, ((Map<?, ?>) ((List<?>) result.get("errors")).get(0)).get("row"));
+        assertEquals(Money.ofCents(800), chunks.get(0).get(0).getLunch());
+    }
+
+    /**
+     * 同一批次内的重复日期只保留后出现的行
+     */
+    @Test
+    void laterRowForSameDateWinsWithinChunk() throws IOException {
+        Map<String, Object> result = importNdjson(
+                "{\"recordDate\":\"2024-01-01\",\"lunch\":1}\n"
+                        + "{\"type\":\"diary\",\"recordDate\":\"2024-01-01\"}\n"
+                        + "{\"recordDate\":\"2024-01-01\",\"lunch\":2}\n");
+
+        assertEquals(1, result.get("skipped"));
+        assertEquals(1, chunks.size());
+        assertEquals(1, chunks.get(0).size());
+        assertEquals(Money.ofCents(200), chunks.get(0).get(0).getLunch());
+    }
+
+    private Map<String, Object> importNdjson(String ndjson) throws IOException {
+        return service.importRecords(new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)),
+                MealImportService.Format.NDJSON);
+    }
+}
@@ -0,0 +1,110 @@
+package com.accounting.service;
+
+import com.accounting.entity.MealRecord;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class MealMonthCacheTest {
+
+    private static final Long USER_ID = 7L;
+    private static final YearMonth MONTH = YearMonth.of(2024, 3);
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private final List<String> broadcasts = new ArrayList<>();
+
+    private SimpleMeterRegistry meterRegistry;
+    private MealMonthCache cache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new MealMonthCache();
+        ReflectionTestUtils.setField(cache, "stringRedisTemplate", new StringRedisTemplate() {
+            @Override
+            public void convertAndSend(String channel, Object message) {
+                broadcasts.add((String) message);
+            }
+        });
+        ReflectionTestUtils.setField(cache, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(cache, "localEnabled", true);
+        ReflectionTestUtils.setField(cache, "redisEnabled", false);
+        ReflectionTestUtils.setField(cache, "localMaximumSize", 100L);
+        ReflectionTestUtils.setField(cache, "localTtlSeconds", 600L);
+        cache.init();
+    }
+
+    @Test
+    void loadedMonthIsServedLocally() {
+        List<MealRecord> first = cache.getMonth(USER_ID, MONTH, this::load);
+        List<MealRecord> second = cache.getMonth(USER_ID, MONTH, this::load);
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+    }
+
+    /**
+     * 加载开始后、写回之前发生的失效（提交后的再次失效）使本次结果不写入本地缓存
+     */
+    @Test
+    void loadOverlappingAnEvictionIsNotCached() {
+        cache.getMonth(USER_ID, MONTH, () -> {
+            cache.evict(USER_ID, MONTH.atDay(1));
+            return load();
+        });
+        cache.getMonth(USER_ID, MONTH, this::load);
+
+        assertEquals(2, loads.get());
+        cache.getMonth(USER_ID, MONTH, this::load);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void remoteEvictionDuringLoadIsHonoured() {
+        cache.getMonth(USER_ID, MONTH, () -> {
+            cache.onMessage(message("meal_month:7:2024-03"), null);
+            return load();
+        });
+        cache.getMonth(USER_ID, MONTH, this::load);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void explicitInvalidationsAreCountedAsLocalEvictions() {
+        cache.getMonth(USER_ID, MONTH, this::load);
+        cache.evict(USER_ID, LocalDate.of(2024, 3, 5));
+        cache.onMessage(message("meal_month:7:2024-04"), null);
+
+        assertEquals(2.0, meterRegistry.get("meal.month.cache")
+                .tag("tier", "local").tag("result", "evict").counter().count());
+        assertEquals(Collections.singletonList("meal_month:7:2024-03"), broadcasts);
+    }
+
+    private List<MealRecord> load() {
+        loads.incrementAndGet();
+        MealRecord record = new MealRecord();
+        record.setUserId(USER_ID);
+        record.setRecordDate(MONTH.atDay(1));
+        return Collections.singletonList(record);
+    }
+
+    private static DefaultMessage message(String body) {
+        return new DefaultMessage(MealMonthCache.EVICT_CHANNEL.getBytes(StandardCharsets.UTF_8),
+                body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,190 @@
+package com.accounting.service;
+
+import com.accounting.entity.MealRecord;
+import com.accounting.entity.MealRecordItem;
+import com.accounting.mapper.MealRecordItemMapper;
+import com.accounting.mapper.MealRecordMapper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MealRecordItemServiceTest {
+
+    private static final String LONG_NAME = "很长的项目名称很长的项目名称很长的项目名称很长的项目名称很长的项目名称很长的项目名称很长的项目名称很长的项目名称";
+
+    // 模拟 meal_records 表中的旧JSON列
+    private final Map<Long, MealRecord> records = new TreeMap<>();
+    private final List<MealRecordItem> insertedItems = new ArrayList<>();
+    private final AtomicInteger batchQueries = new AtomicInteger();
+    private volatile Long failOnClear;
+
+    private InMemoryRedisTemplate redis;
+    private MealRecordItemService service;
+
+    @BeforeEach
+    void setUp() {
+        addRecord(1L, "{\"水果\":12.5}");
+        addRecord(2L, "not json");
+        addRecord(3L, "{\"" + LONG_NAME + "\":3}");
+        addRecord(4L, "{\"夜宵\":\"8.00\",\"咖啡\":20}");
+        addRecord(5L, "{\"奶茶\":15}");
+
+        redis = new InMemoryRedisTemplate();
+        service = new MealRecordItemService();
+        ReflectionTestUtils.setField(service, "mealRecordMapper", mealRecordMapper());
+        ReflectionTestUtils.setField(service, "mealRecordItemMapper", mealRecordItemMapper());
+        ReflectionTestUtils.setField(service, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(service, "transactionTemplate", new TransactionTemplate(new NoopTransactionManager()));
+        ReflectionTestUtils.setField(service, "stringRedisTemplate", redis);
+        ReflectionTestUtils.setField(service, "backfillBatchSize", 2);
+        ReflectionTestUtils.setField(service, "backfillLockMs", 60000L);
+    }
+
+    @Test
+    void backfillMigratesOnceAndThenStops() {
+        service.backfillLegacyItems();
+
+        assertNull(records.get(1L).getCustomItems());
+        assertNull(records.get(4L).getCustomItems());
+        assertNull(records.get(5L).getCustomItems());
+        assertEquals(4, insertedItems.size());
+        assertNotNull(redis.value("meal_items_backfill:done"));
+        assertEquals("5", redis.value("meal_items_backfill:after_id"));
+
+        int queries = batchQueries.get();
+        service.backfillLegacyItems();
+        // 已完成：不再扫描，也不会重复处理无法迁移的记录
+        assertEquals(queries, batchQueries.get());
+    }
+
+    @Test
+    void unparseableAndOverlongRecordsKeepTheirColumn() {
+        service.backfillLegacyItems();
+
+        assertEquals("not json", records.get(2L).getCustomItems());
+        assertNotNull(records.get(3L).getCustomItems());
+        assertTrue(insertedItems.stream().noneMatch(item -> item.getRecordId() == 3L));
+    }
+
+    @Test
+    void migrateLegacyRejectsNamesLongerThanTheColumn() {
+        MealRecord record = records.get(3L);
+
+        assertFalse(service.migrateLegacy(record));
+        assertNotNull(record.getCustomItems());
+        assertTrue(insertedItems.isEmpty());
+    }
+
+    @Test
+    void skipsRunWhileAnotherNodeHoldsTheLock() {
+        redis.opsForValue().setIfAbsent("meal_items_backfill:lock", "other-node",
+                60, TimeUnit.SECONDS);
+
+        service.backfillLegacyItems();
+
+        assertEquals(0, batchQueries.get());
+        assertEquals("{\"水果\":12.5}", records.get(1L).getCustomItems());
+    }
+
+    @Test
+    void failedBatchIsRetriedFromTheSavedCursor() {
+        failOnClear = 4L;
+        service.backfillLegacyItems();
+
+        // 第一批（1、2）已提交，第二批（3、4）回滚后停止
+        assertEquals("2", redis.value("meal_items_backfill:after_id"));
+        assertNull(redis.value("meal_items_backfill:done"));
+        assertNull(redis.value("meal_items_backfill:lock"));
+
+        failOnClear = null;
+        service.backfillLegacyItems();
+
+        assertNull(records.get(4L).getCustomItems());
+        assertNull(records.get(5L).getCustomItems());
+        assertNotNull(redis.value("meal_items_backfill:done"));
+    }
+
+    private void addRecord(Long id, String customItems) {
+        MealRecord record = new MealRecord();
+        record.setId(id);
+        record.setUserId(7L);
+        record.setRecordDate(LocalDate.of(2024, 1, id.intValue()));
+        record.setCustomItems(customItems);
+        records.put(id, record);
+    }
+
+    private MealRecordMapper mealRecordMapper() {
+        return proxy(MealRecordMapper.class, (method, args) -> {
+            switch (method) {
+                case "selectLegacyItemsBatch":
+                    batchQueries.incrementAndGet();
+                    long afterId = (Long) args[0];
+                    int limit = (Integer) args[1];
+                    return records.values().stream()
+                            .filter(r -> r.getId() > afterId && r.getCustomItems() != null)
+                            .limit(limit)
+                            .map(MealRecordItemServiceTest::copy)
+                            .collect(Collectors.toList());
+                case "clearLegacyItems":
+                    Long id = (Long) args[0];
+                    if (id.equals(failOnClear)) {
+                        throw new IllegalStateException("模拟数据库错误");
+                    }
+                    MealRecord stored = records.get(id);
+                    if (args[1].equals(stored.getCustomItems())) {
+                        stored.setCustomItems(null);
+                        return 1;
+                    }
+                    return 0;
+                default:
+                    throw new UnsupportedOperationException(method);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private MealRecordItemMapper mealRecordItemMapper() {
+        return proxy(MealRecordItemMapper.class, (method, args) -> {
+            if ("insertIgnoreBatch".equals(method)) {
+                List<MealRecordItem> items = (List<MealRecordItem>) args[0];
+                insertedItems.addAll(items);
+                return items.size();
+            }
+            throw new UnsupportedOperationException(method);
+        });
+    }
+
+    private static MealRecord copy(MealRecord source) {
+        MealRecord record = new MealRecord();
+        record.setId(source.getId());
+        record.setUserId(source.getUserId());
+        record.setRecordDate(source.getRecordDate());
+        record.setCustomItems(source.getCustomItems());
+        return record;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, BiFunction<String, Object[], Object> handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> handler.apply(method.getName(), args));
+    }
+}
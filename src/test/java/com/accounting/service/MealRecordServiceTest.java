@@ -0,0 +1,706 @@
+package com.accounting.service;
+
+import com.accounting.dto.ItemTotal;
+import com.accounting.dto.MealRecordRequest;
+import com.accounting.dto.MealRecordUpsertState;
+import com.accounting.dto.MonthlyTotal;
+import com.accounting.entity.MealRecord;
+import com.accounting.mapper.MealRecordItemMapper;
+import com.accounting.mapper.MealRecordMapper;
+import com.accounting.mapper.MealStatMapper;
+import com.accounting.util.ETags;
+import com.accounting.util.JwtPrincipal;
+import com.accounting.util.Money;
+import com.accounting.util.UserContext;
+import com.accounting.util.VersionConflictException;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.reflect.Proxy;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MealRecordServiceTest {
+
+    private static final Long USER_ID = 7L;
+    private static final LocalDate DATE = LocalDate.of(2024, 3, 1);
+
+    // 模拟 meal_records 表（按日期）和 InnoDB 行锁：加锁后持有到事务结束
+    private final Map<LocalDate, MealRecord> rows = new HashMap<>();
+    private final Map<LocalDate, ReentrantLock> rowLocks = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final ThreadLocal<MealRecordUpsertState> upsertState = new ThreadLocal<>();
+    // 模拟 meal_stats：月份 -> {天数, 金额（分）}
+    private final Map<String, long[]> stats = new HashMap<>();
+    // 查询类测试的已有记录，以及 selectRecordDates 收到的 [start, end) 参数
+    private final List<MealRecord> history = new ArrayList<>();
+    private final List<LocalDate> recordDatesRange = new ArrayList<>();
+    // 已迁移动态项目的SQL分组结果
+    private final List<ItemTotal> itemTotals = new ArrayList<>();
+    // 接下来的多少次 updateById 之前有其他请求先修改了该行
+    private int concurrentWrites;
+    private int updateAttempts;
+
+    private MealRecordService service;
+
+    @BeforeEach
+    void setUp() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        MealRecordItemService itemService = new MealRecordItemService();
+        ReflectionTestUtils.setField(itemService, "mealRecordItemMapper", proxy(MealRecordItemMapper.class,
+                (method, args) -> {
+                    switch (method) {
+                        case "deleteExcept":
+                            return 0;
+                        case "sumByItem":
+                            return itemTotals;
+                        default:
+                            return ((List<?>) args[0]).size();
+                    }
+                }));
+        ReflectionTestUtils.setField(itemService, "objectMapper", objectMapper);
+
+        MealStatsService statsService = new MealStatsService();
+        ReflectionTestUtils.setField(statsService, "mealStatMapper", mealStatMapper());
+
+        service = new MealRecordService();
+        ReflectionTestUtils.setField(service, "mealRecordMapper", mealRecordMapper());
+        ReflectionTestUtils.setField(service, "mealRecordItemService", itemService);
+        ReflectionTestUtils.setField(service, "mealStatsService", statsService);
+        ReflectionTestUtils.setField(service, "transactionTemplate", new TransactionTemplate(new NoopTransactionManager()));
+        ReflectionTestUtils.setField(service, "mealMonthCache", new MealMonthCache() {
+            @Override
+            public void evict(Long userId, LocalDate date) {
+            }
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        UserContext.clear();
+    }
+
+    @Test
+    void overwriteKeepsCreateTimeAndBumpsVersion() {
+        MealRecord first = save(request(500));
+        MealRecord second = save(request(800));
+
+        assertEquals(first.getId(), second.getId());
+        assertEquals(0, first.getVersion());
+        assertEquals(1, second.getVersion());
+        assertEquals(first.getCreateTime(), second.getCreateTime());
+        assertEquals(Money.ofCents(1800), rows.get(DATE).getTotal());
+        assertEquals(1L, stats.get("2024-03")[0]);
+        assertEquals(1800L, stats.get("2024-03")[1]);
+    }
+
+    @Test
+    void staleIfMatchIsRejectedWithoutWriting() {
+        MealRecord saved = save(request(500));
+        String stale = ETags.of(saved.getId(), saved.getVersion());
+        save(request(600));
+
+        login();
+        assertThrows(VersionConflictException.class, () -> service.saveOrUpdate(request(900), stale));
+        assertThrows(VersionConflictException.class, () -> service.deleteByDate(DATE, stale));
+        assertThrows(VersionConflictException.class, () -> service.saveOrUpdate(request(900), "\"999.0\""));
+
+        assertEquals(Money.ofCents(1600), rows.get(DATE).getTotal());
+        assertEquals(1600L, stats.get("2024-03")[1]);
+        assertEquals(0, updateAttempts);
+    }
+
+    @Test
+    void ifMatchOnMissingRecordIsRejected() {
+        login();
+        assertThrows(VersionConflictException.class, () -> service.saveOrUpdate(request(500), "*"));
+        assertThrows(VersionConflictException.class, () -> service.deleteByDate(DATE, "*"));
+        assertTrue(rows.isEmpty());
+    }
+
+    /**
+     * If-Match 一致但更新前被其他请求修改（版本号已变）时仍然冲突
+     */
+    @Test
+    void matchingIfMatchLosesToConcurrentWrite() {
+        MealRecord saved = save(request(500));
+        concurrentWrites = 1;
+
+        login();
+        assertThrows(VersionConflictException.class,
+                () -> service.saveOrUpdate(request(900), ETags.of(saved.getId(), saved.getVersion())));
+        assertEquals(1, updateAttempts);
+        assertEquals(1500L, stats.get("2024-03")[1]);
+    }
+
+    @Test
+    void matchingIfMatchUpdatesAndBumpsVersion() {
+        MealRecord saved = save(request(500));
+
+        login();
+        // If-Match 使用强比较，弱ETag不匹配
+        assertThrows(VersionConflictException.class,
+                () -> service.saveOrUpdate(request(700), "W/" + ETags.of(saved.getId(), saved.getVersion())));
+        MealRecord updated = service.saveOrUpdate(request(900), ETags.of(saved.getId(), saved.getVersion()));
+
+        assertEquals(saved.getVersion() + 1, updated.getVersion());
+        assertEquals(Money.ofCents(1900), rows.get(DATE).getTotal());
+        assertEquals(1900L, stats.get("2024-03")[1]);
+    }
+
+    /**
+     * 无 If-Match 时版本冲突重新读取后重试；带 If-Match 时只尝试一次
+     */
+    @Test
+    void clearAllDataRetriesOnlyWithoutIfMatch() {
+        MealRecord saved = save(request(500));
+        String etag = ETags.of(saved.getId(), saved.getVersion());
+        concurrentWrites = 1;
+
+        login();
+        assertThrows(VersionConflictException.class, () -> service.clearAllData(DATE, etag));
+        assertEquals(1, updateAttempts);
+
+        concurrentWrites = 2;
+        MealRecord cleared = service.clearAllData(DATE, null);
+        assertNotNull(cleared);
+        assertEquals(4, updateAttempts);
+        assertEquals(Money.ZERO, rows.get(DATE).getTotal());
+        assertEquals(0L, stats.get("2024-03")[1]);
+
+        concurrentWrites = 3;
+        assertThrows(VersionConflictException.class, () -> service.clearAllData(DATE, null));
+        assertEquals(7, updateAttempts);
+        assertNull(service.clearAllData(DATE.plusDays(1), null));
+    }
+
+    /**
+     * 100个请求并发保存同一天：只插入一次，每次覆盖看到前一次的版本号和总计，汇总与最终记录一致
+     */
+    @Test
+    void parallelSavesOfOneDayKeepTotalsAndVersionsConsistent() throws Exception {
+        int saves = 100;
+        ExecutorService executor = Executors.newFixedThreadPool(saves);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<MealRecord>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < saves; i++) {
+                long cents = 100 + i;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return save(request(cents));
+                }));
+            }
+            start.countDown();
+
+            Set<Integer> versions = new TreeSet<>();
+            for (Future<MealRecord> result : results) {
+                versions.add(result.get(30, TimeUnit.SECONDS).getVersion());
+            }
+            assertEquals(IntStream.range(0, saves).boxed().collect(Collectors.toSet()), versions);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        MealRecord row = rows.get(DATE);
+        assertNotNull(row);
+        assertEquals(1, rows.size());
+        assertEquals(saves - 1, row.getVersion());
+        // 汇总只计一天，金额等于最后一次覆盖的总计
+        assertEquals(1L, stats.get("2024-03")[0]);
+        assertEquals(row.getTotal().getCents(), stats.get("2024-03")[1]);
+        assertEquals(row.getTotal().getCents(), stats.get("2024")[1]);
+    }
+
+    /**
+     * 批量保存与单条保存并发写入相同的几天：每天只计一次新增，汇总与最终记录一致
+     */
+    @Test
+    void parallelBatchAndSingleSavesKeepStatsConsistent() throws Exception {
+        List<LocalDate> dates = Arrays.asList(DATE, DATE.plusDays(1), DATE.plusDays(2));
+        int writers = 40;
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> created = new ArrayList<>();
+        try {
+            for (int i = 0; i < writers; i++) {
+                long cents = 100 + i;
+                // 批次内日期顺序各不相同，单条保存只写第一天
+                List<LocalDate> batchDates = new ArrayList<>(dates);
+                Collections.rotate(batchDates, i);
+                boolean batch = i % 4 != 0;
+                created.add(executor.submit(() -> {
+                    start.await();
+                    if (!batch) {
+                        return save(request(cents)).getVersion() == 0 ? 1 : 0;
+                    }
+                    List<MealRecordRequest> requests = new ArrayList<>();
+                    for (LocalDate date : batchDates) {
+                        MealRecordRequest request = request(cents);
+                        request.setRecordDate(date);
+                        requests.add(request);
+                    }
+                    int inserted = 0;
+                    for (Map<String, Object> result : saveBatch(requests)) {
+                        inserted += Boolean.TRUE.equals(result.get("created")) ? 1 : 0;
+                    }
+                    return inserted;
+                }));
+            }
+            start.countDown();
+
+            int inserted = 0;
+            for (Future<Integer> result : created) {
+                inserted += result.get(30, TimeUnit.SECONDS);
+            }
+            assertEquals(dates.size(), inserted);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(dates.size(), rows.size());
+        long total = rows.values().stream().mapToLong(row -> row.getTotal().getCents()).sum();
+        assertEquals(dates.size(), stats.get("2024-03")[0]);
+        assertEquals(total, stats.get("2024-03")[1]);
+        assertEquals(total, stats.get("2024")[1]);
+    }
+
+    @Test
+    void recordDatesQueryUsesHalfOpenMonthRange() {
+        history.add(historyRecord(LocalDate.of(2024, 2, 1), 100));
+        history.add(historyRecord(LocalDate.of(2024, 2, 29), 100));
+        history.add(historyRecord(LocalDate.of(2024, 3, 1), 100));
+        login();
+
+        assertEquals(Arrays.asList("2024-02-01", "2024-02-29"), service.getRecordDates(2024, 2));
+        assertEquals(Arrays.asList(LocalDate.of(2024, 2, 1), LocalDate.of(2024, 3, 1)), recordDatesRange);
+        assertEquals(1 | 1 << 28, service.getRecordDayBitmap(2024, 2));
+    }
+
+    /**
+     * 数据库分组和Java单次遍历两种路径的年度统计结果一致
+     */
+    @Test
+    void yearStatisticsMatchBetweenDatabaseAndJavaPaths() {
+        history.add(historyRecord(LocalDate.of(2023, 12, 31), 999));
+        history.add(historyRecord(LocalDate.of(2024, 1, 1), 1000));
+        history.add(historyRecord(LocalDate.of(2024, 1, 2), 501));
+        history.add(historyRecord(LocalDate.of(2024, 12, 31), 250));
+        history.add(historyRecord(LocalDate.of(2025, 1, 1), 777));
+        login();
+        List<Integer> years = Arrays.asList(2024, 2023, 2024);
+
+        ReflectionTestUtils.setField(service, "yearStatisticsInDatabase", true);
+        List<Map<String, Object>> fromDatabase = service.getYearStatistics(years);
+        ReflectionTestUtils.setField(service, "yearStatisticsInDatabase", false);
+        List<Map<String, Object>> fromJava = service.getYearStatistics(years);
+
+        assertEquals(fromDatabase, fromJava);
+        assertEquals(3, fromDatabase.size());
+        Map<String, Object> year2024 = fromDatabase.get(0);
+        assertEquals(2024, year2024.get("year"));
+        assertEquals(Money.ofCents(1751), year2024.get("yearTotal"));
+        Map<?, ?> january = (Map<?, ?>) ((List<?>) year2024.get("months")).get(0);
+        assertEquals(2, january.get("days"));
+        assertEquals(Money.ofCents(1501), january.get("total"));
+        assertEquals(Money.ofCents(1501).divide(2), january.get("avg"));
+        assertEquals(Money.ofCents(999), fromDatabase.get(1).get("yearTotal"));
+    }
+
+    /**
+     * 固定餐饮逐行流式累加；旧JSON项目与已迁移项目按名称合并，无法解析的JSON和非数字金额被跳过
+     */
+    @Test
+    void itemStatisticsMergeStreamedAndGroupedAmounts() {
+        MealRecord first = historyRecord(LocalDate.of(2024, 5, 1), 0);
+        first.setBreakfast(Money.ofCents(300));
+        first.setLunch(Money.ofCents(1500));
+        first.setCustomItems("{\"水果\":2.5,\"咖啡\":\"12\",\"备注\":\"abc\",\"嵌套\":{\"a\":1}}");
+        MealRecord second = historyRecord(LocalDate.of(2024, 5, 31), 0);
+        second.setBreakfast(Money.ofCents(400));
+        second.setDrink(Money.ZERO);
+        second.setCustomItems("not json");
+        MealRecord outside = historyRecord(LocalDate.of(2024, 6, 1), 0);
+        outside.setBreakfast(Money.ofCents(9900));
+        history.add(first);
+        history.add(second);
+        history.add(outside);
+        ItemTotal fruit = new ItemTotal();
+        fruit.setItemName("水果");
+        fruit.setDays(2);
+        fruit.setTotal(Money.ofCents(600));
+        itemTotals.add(fruit);
+        login();
+
+        Map<String, Object> result = service.getItemStatistics(LocalDate.of(2024, 5, 1), LocalDate.of(2024, 5, 31));
+
+        List<?> fixedItems = (List<?>) result.get("fixedItems");
+        assertEquals(5, fixedItems.size());
+        assertItem(fixedItems.get(0), "breakfast", 700, 2, 350);
+        assertItem(fixedItems.get(1), "lunch", 1500, 1, 1500);
+        assertItem(fixedItems.get(4), "drink", 0, 0, 0);
+        List<?> customItems = (List<?>) result.get("customItems");
+        assertEquals(2, customItems.size());
+        // 按金额降序
+        assertItem(customItems.get(0), "咖啡", 1200, 1, 1200);
+        assertItem(customItems.get(1), "水果", 850, 3, 283);
+    }
+
+    private static void assertItem(Object item, String name, long totalCents, int days, long avgCents) {
+        Map<?, ?> map = (Map<?, ?>) item;
+        assertEquals(name, map.get("name"));
+        assertEquals(Money.ofCents(totalCents), map.get("total"));
+        assertEquals(days, map.get("days"));
+        assertEquals(Money.ofCents(avgCents), map.get("avg"));
+    }
+
+    private void login() {
+        UserContext.setPrincipal(new JwtPrincipal(USER_ID, "tester", Instant.now(), Instant.now().plusSeconds(60)));
+    }
+
+    private static MealRecord historyRecord(LocalDate date, long totalCents) {
+        MealRecord record = new MealRecord();
+        record.setUserId(USER_ID);
+        record.setRecordDate(date);
+        record.setTotal(Money.ofCents(totalCents));
+        return record;
+    }
+
+    /**
+     * 在模拟事务中保存：结束时释放本线程持有的行锁（提交）
+     */
+    private MealRecord save(MealRecordRequest request) {
+        login();
+        try {
+            return service.saveOrUpdate(request, null);
+        } finally {
+            releaseRowLocks();
+            UserContext.clear();
+        }
+    }
+
+    /**
+     * 在模拟事务中批量保存，结束时释放行锁
+     */
+    private List<Map<String, Object>> saveBatch(List<MealRecordRequest> requests) {
+        login();
+        try {
+            return service.saveBatch(requests);
+        } finally {
+            releaseRowLocks();
+            UserContext.clear();
+        }
+    }
+
+    private static MealRecordRequest request(long breakfastCents) {
+        MealRecordRequest request = new MealRecordRequest();
+        request.setRecordDate(DATE);
+        request.setBreakfast(Money.ofCents(breakfastCents));
+        request.setLunch(Money.ofCents(1000));
+        return request;
+    }
+
+    private MealRecordMapper mealRecordMapper() {
+        return proxy(MealRecordMapper.class, (method, args) -> {
+            switch (method) {
+                case "upsert": {
+                    // 插入或覆盖时InnoDB对该行加排他锁，持有到事务结束
+                    MealRecord record = (MealRecord) args[0];
+                    Money total = Money.ZERO.plus(record.getBreakfast()).plus(record.getLunch())
+                            .plus(record.getDinner()).plus(record.getSnack()).plus(record.getDrink())
+                            .plus((Money) args[1]);
+                    lockRow(record.getRecordDate());
+                    synchronized (rows) {
+                        MealRecordUpsertState state = new MealRecordUpsertState();
+                        MealRecord row = rows.get(record.getRecordDate());
+                        if (row == null) {
+                            row = new MealRecord();
+                            row.setId(nextId.getAndIncrement());
+                            row.setUserId(record.getUserId());
+                            row.setRecordDate(record.getRecordDate());
+                            row.setCreateTime(record.getCreateTime());
+                            row.setVersion(0);
+                            rows.put(record.getRecordDate(), row);
+                        } else {
+                            state.setPreviousTotal(row.getTotal());
+                            state.setPreviousCreateTime(row.getCreateTime());
+                            state.setPreviousVersion(row.getVersion());
+                            row.setVersion(row.getVersion() + 1);
+                        }
+                        state.setId(row.getId());
+                        row.setBreakfast(record.getBreakfast());
+                        row.setLunch(record.getLunch());
+                        row.setDinner(record.getDinner());
+                        row.setSnack(record.getSnack());
+                        row.setDrink(record.getDrink());
+                        row.setTotal(total);
+                        row.setUpdateTime(record.getUpdateTime());
+                        // 会话变量：只对本连接（线程）可见
+                        upsertState.set(state);
+                        return state.getPreviousTotal() == null ? 1 : 2;
+                    }
+                }
+                case "selectUpsertState":
+                    return upsertState.get();
+                case "lockByDates": {
+                    // 按传入顺序逐行加锁，不存在的日期插入占位行
+                    for (Object item : (List<?>) args[0]) {
+                        MealRecord record = (MealRecord) item;
+                        lockRow(record.getRecordDate());
+                        synchronized (rows) {
+                            rows.computeIfAbsent(record.getRecordDate(), date -> {
+                                MealRecord row = new MealRecord();
+                                row.setId(nextId.getAndIncrement());
+                                row.setUserId(record.getUserId());
+                                row.setRecordDate(date);
+                                row.setTotal(Money.ZERO);
+                                row.setCreateTime(record.getCreateTime());
+                                row.setVersion(-1);
+                                return row;
+                            });
+                        }
+                    }
+                    return ((List<?>) args[0]).size();
+                }
+                case "selectByDatesForUpdate": {
+                    List<MealRecord> locked = new ArrayList<>();
+                    synchronized (rows) {
+                        for (Object date : (List<?>) args[1]) {
+                            assertTrue(rowLocks.get(date).isHeldByCurrentThread());
+                            locked.add(copy(rows.get(date)));
+                        }
+                    }
+                    return locked;
+                }
+                case "upsertBatch": {
+                    synchronized (rows) {
+                        for (Object item : (List<?>) args[0]) {
+                            MealRecord record = (MealRecord) item;
+                            MealRecord row = rows.get(record.getRecordDate());
+                            row.setBreakfast(record.getBreakfast());
+                            row.setLunch(record.getLunch());
+                            row.setTotal(record.getTotal());
+                            row.setVersion(row.getVersion() + 1);
+                        }
+                    }
+                    return ((List<?>) args[0]).size();
+                }
+                case "selectOne":
+                    return selectByWrapperDate((QueryWrapper<?>) args[0]);
+                case "updateById":
+                    return updateByVersion((MealRecord) args[0]);
+                case "delete":
+                    return deleteByVersion((QueryWrapper<?>) args[0]);
+                case "selectRecordDates": {
+                    recordDatesRange.add((LocalDate) args[1]);
+                    recordDatesRange.add((LocalDate) args[2]);
+                    return history.stream()
+                            .map(MealRecord::getRecordDate)
+                            .filter(d -> !d.isBefore((LocalDate) args[1]) && d.isBefore((LocalDate) args[2]))
+                            .collect(Collectors.toList());
+                }
+                case "streamAmounts": {
+                    @SuppressWarnings("unchecked")
+                    ResultHandler<MealRecord> handler = (ResultHandler<MealRecord>) args[3];
+                    for (MealRecord r : history) {
+                        if (!r.getRecordDate().isBefore((LocalDate) args[1]) && r.getRecordDate().isBefore((LocalDate) args[2])) {
+                            handler.handleResult(resultContext(r));
+                        }
+                    }
+                    return null;
+                }
+                case "sumByMonth":
+                    return sumByMonth((List<?>) args[1]);
+                case "selectList":
+                    return selectByWrapperRange((QueryWrapper<?>) args[0]);
+                default:
+                    throw new UnsupportedOperationException(method);
+            }
+        });
+    }
+
+    private MealRecord selectByWrapperDate(QueryWrapper<?> wrapper) {
+        wrapper.getSqlSegment();
+        synchronized (rows) {
+            for (Object value : wrapper.getParamNameValuePairs().values()) {
+                if (value instanceof LocalDate && rows.containsKey(value)) {
+                    return copy(rows.get(value));
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 模拟乐观锁插件：版本号一致时更新并把实体的版本号加1，否则不更新
+     */
+    private int updateByVersion(MealRecord record) {
+        synchronized (rows) {
+            updateAttempts++;
+            MealRecord row = rows.get(record.getRecordDate());
+            if (concurrentWrites > 0) {
+                concurrentWrites--;
+                row.setVersion(row.getVersion() + 1);
+            }
+            if (!row.getVersion().equals(record.getVersion())) {
+                return 0;
+            }
+            record.setVersion(record.getVersion() + 1);
+            rows.put(record.getRecordDate(), copy(record));
+            return 1;
+        }
+    }
+
+    private int deleteByVersion(QueryWrapper<?> wrapper) {
+        wrapper.getSqlSegment();
+        List<Object> values = new ArrayList<>(wrapper.getParamNameValuePairs().values());
+        synchronized (rows) {
+            return rows.values().removeIf(row -> values.contains(row.getId()) && values.contains(row.getVersion())) ? 1 : 0;
+        }
+    }
+
+    private static MealRecord copy(MealRecord source) {
+        MealRecord copy = new MealRecord();
+        copy.setId(source.getId());
+        copy.setUserId(source.getUserId());
+        copy.setRecordDate(source.getRecordDate());
+        copy.setBreakfast(source.getBreakfast());
+        copy.setLunch(source.getLunch());
+        copy.setDinner(source.getDinner());
+        copy.setSnack(source.getSnack());
+        copy.setDrink(source.getDrink());
+        copy.setTotal(source.getTotal());
+        copy.setCreateTime(source.getCreateTime());
+        copy.setVersion(source.getVersion());
+        return copy;
+    }
+
+    /**
+     * 模拟数据库按年月分组
+     */
+    private List<MonthlyTotal> sumByMonth(List<?> years) {
+        Map<String, MonthlyTotal> groups = new HashMap<>();
+        for (MealRecord r : history) {
+            if (!years.contains(r.getRecordDate().getYear())) {
+                continue;
+            }
+            MonthlyTotal group = groups.computeIfAbsent(r.getRecordDate().toString().substring(0, 7), k -> {
+                MonthlyTotal total = new MonthlyTotal();
+                total.setYear(r.getRecordDate().getYear());
+                total.setMonth(r.getRecordDate().getMonthValue());
+                total.setDays(0);
+                total.setTotal(Money.ZERO);
+                return total;
+            });
+            group.setDays(group.getDays() + 1);
+            group.setTotal(group.getTotal().plus(r.getTotal()));
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    /**
+     * 按查询条件中的日期参数（ge/lt）过滤记录
+     */
+    private List<MealRecord> selectByWrapperRange(QueryWrapper<?> wrapper) {
+        // 生成SQL片段时才填充参数
+        wrapper.getSqlSegment();
+        List<LocalDate> bounds = wrapper.getParamNameValuePairs().values().stream()
+                .filter(LocalDate.class::isInstance)
+                .map(LocalDate.class::cast)
+                .sorted()
+                .collect(Collectors.toList());
+        assertEquals(2, bounds.size());
+        return history.stream()
+                .filter(r -> !r.getRecordDate().isBefore(bounds.get(0)) && r.getRecordDate().isBefore(bounds.get(1)))
+                .collect(Collectors.toList());
+    }
+
+    private static ResultContext<MealRecord> resultContext(MealRecord record) {
+        return new ResultContext<MealRecord>() {
+            @Override
+            public MealRecord getResultObject() {
+                return record;
+            }
+
+            @Override
+            public int getResultCount() {
+                return 1;
+            }
+
+            @Override
+            public boolean isStopped() {
+                return false;
+            }
+
+            @Override
+            public void stop() {
+            }
+        };
+    }
+
+    private MealStatMapper mealStatMapper() {
+        return proxy(MealStatMapper.class, (method, args) -> {
+            if (!"applyDelta".equals(method)) {
+                throw new UnsupportedOperationException(method);
+            }
+            synchronized (stats) {
+                for (String period : new String[]{(String) args[1], (String) args[2]}) {
+                    long[] stat = stats.computeIfAbsent(period, p -> new long[2]);
+                    stat[0] += (Integer) args[3];
+                    stat[1] += ((Money) args[4]).getCents();
+                }
+            }
+            return 2;
+        });
+    }
+
+    private void releaseRowLocks() {
+        for (ReentrantLock lock : rowLocks.values()) {
+            while (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void lockRow(LocalDate date) {
+        rowLocks.computeIfAbsent(date, d -> new ReentrantLock()).lock();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, BiFunction<String, Object[], Object> handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> handler.apply(method.getName(), args));
+    }
+}
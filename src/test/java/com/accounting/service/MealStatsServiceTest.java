@@ -0,0 +1,244 @@
+package com.accounting.service;
+
+import com.accounting.entity.MealStat;
+import com.accounting.mapper.MealStatMapper;
+import com.accounting.util.Money;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class MealStatsServiceTest {
+
+    private static final Long USER_ID = 7L;
+
+    // 模拟 meal_stats 表中该用户的行（按周期）
+    private final Map<String, MealStat> rows = new TreeMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    // 明细表按月汇总的结果
+    private List<MealStat> months;
+    // 模拟全部汇总行上的行锁，事务提交或回滚时释放
+    private final ReentrantLock overallLock = new ReentrantLock();
+    // 对账读取明细时执行
+    private Runnable onAggregate = () -> { };
+
+    private MealStatsService service;
+
+    @BeforeEach
+    void setUp() {
+        months = Arrays.asList(month("2024-01", 10, 10000), month("2024-02", 5, 2500));
+
+        service = new MealStatsService();
+        ReflectionTestUtils.setField(service, "mealStatMapper", mealStatMapper());
+        ReflectionTestUtils.setField(service, "transactionTemplate", new TransactionTemplate(new NoopTransactionManager() {
+            @Override
+            public void commit(TransactionStatus status) {
+                releaseOverallLock();
+            }
+
+            @Override
+            public void rollback(TransactionStatus status) {
+                releaseOverallLock();
+            }
+        }));
+        ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+        service.init();
+    }
+
+    @Test
+    void rebuildsMissingAndStaleRowsAndDropsEmptyOnes() {
+        upsert("ALL", 3, 100);
+        upsert("2024-01", 10, 10000);
+        upsert("2023-12", 2, 300);
+        upsert("2023", 2, 300);
+
+        int drift = service.reconcileUser(USER_ID);
+
+        assertEquals(5, drift);
+        assertStat("ALL", 15, 12500);
+        assertStat("2024", 15, 12500);
+        assertStat("2024-01", 10, 10000);
+        assertStat("2024-02", 5, 2500);
+        assertFalse(rows.containsKey("2023-12"));
+        assertFalse(rows.containsKey("2023"));
+    }
+
+    /**
+     * 对账持有锁期间到达的保存要等对账提交后才累加增量，增量只计入一次
+     */
+    @Test
+    void savesWaitForTheReconcileAndAreCountedOnce() throws Exception {
+        upsert("ALL", 3, 100);
+        CompletableFuture<Void> save = new CompletableFuture<>();
+        onAggregate = () -> {
+            onAggregate = () -> { };
+            save.complete(null);
+            awaitQueued();
+        };
+        CompletableFuture<Void> concurrentSave = save.thenRunAsync(() -> {
+            // 与 applyDelta 一样先写全部汇总行
+            overallLock.lock();
+            try {
+                months = Arrays.asList(month("2024-01", 10, 10000), month("2024-02", 5, 2500),
+                        month("2024-03", 1, 800));
+                upsert("ALL", 1, 800);
+                upsert("2024", 1, 800);
+                upsert("2024-03", 1, 800);
+            } finally {
+                overallLock.unlock();
+            }
+        });
+
+        service.reconcileUser(USER_ID);
+        concurrentSave.get(5, TimeUnit.SECONDS);
+
+        assertStat("ALL", 16, 13300);
+        assertStat("2024", 16, 13300);
+        assertStat("2024-03", 1, 800);
+        assertEquals(0, service.reconcileUser(USER_ID));
+    }
+
+    /**
+     * 多个节点同时对账同一用户时依次执行，后执行的对账看到已修正的行，不会重复修正
+     */
+    @Test
+    void concurrentReconcilesDoNotApplyDriftTwice() throws Exception {
+        upsert("ALL", 3, 100);
+        upsert("2024-01", 8, 9000);
+        CompletableFuture<Void> started = new CompletableFuture<>();
+        onAggregate = () -> {
+            onAggregate = () -> { };
+            started.complete(null);
+            awaitQueued();
+        };
+        CompletableFuture<Integer> other = started.thenApplyAsync(ignored -> service.reconcileUser(USER_ID));
+
+        int drift = service.reconcileUser(USER_ID);
+
+        assertEquals(4, drift);
+        assertEquals(0, other.get(5, TimeUnit.SECONDS));
+        assertStat("ALL", 15, 12500);
+        assertStat("2024", 15, 12500);
+        assertStat("2024-01", 10, 10000);
+        assertStat("2024-02", 5, 2500);
+    }
+
+    @Test
+    void consistentStatsAreLeftUntouched() {
+        upsert("ALL", 15, 12500);
+        upsert("2024", 15, 12500);
+        upsert("2024-01", 10, 10000);
+        upsert("2024-02", 5, 2500);
+
+        assertEquals(0, service.reconcileUser(USER_ID));
+    }
+
+    private void assertStat(String period, int days, long cents) {
+        MealStat stat = rows.get(period);
+        assertEquals(days, stat.getDays(), period);
+        assertEquals(Money.ofCents(cents), stat.getTotalAmount(), period);
+    }
+
+    private void awaitQueued() {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!overallLock.hasQueuedThreads()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("没有等待锁的线程");
+            }
+            Thread.yield();
+        }
+    }
+
+    private void releaseOverallLock() {
+        while (overallLock.isHeldByCurrentThread()) {
+            overallLock.unlock();
+        }
+    }
+
+    private synchronized void upsert(String period, int days, long cents) {
+        MealStat stat = rows.get(period);
+        if (stat == null) {
+            stat = new MealStat();
+            stat.setId(nextId.getAndIncrement());
+            stat.setUserId(USER_ID);
+            stat.setPeriod(period);
+            stat.setDays(0);
+            stat.setTotalAmount(Money.ZERO);
+            rows.put(period, stat);
+        }
+        stat.setDays(stat.getDays() + days);
+        stat.setTotalAmount(stat.getTotalAmount().plus(Money.ofCents(cents)));
+    }
+
+    private synchronized void set(String period, int days, long cents) {
+        upsert(period, 0, 0);
+        MealStat stat = rows.get(period);
+        stat.setDays(days);
+        stat.setTotalAmount(Money.ofCents(cents));
+    }
+
+    private MealStatMapper mealStatMapper() {
+        return (MealStatMapper) Proxy.newProxyInstance(MealStatMapper.class.getClassLoader(),
+                new Class<?>[]{MealStatMapper.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "lockOverall":
+                            overallLock.lock();
+                            upsert("ALL", 0, 0);
+                            return 1;
+                        case "selectByUserForUpdate": {
+                            List<MealStat> snapshot = new ArrayList<>();
+                            for (MealStat row : rows.values()) {
+                                snapshot.add(copy(row));
+                            }
+                            return snapshot;
+                        }
+                        case "aggregateMonthsFromRecords":
+                            onAggregate.run();
+                            return months;
+                        case "setTotals":
+                            set((String) args[1], (Integer) args[2], ((Money) args[3]).getCents());
+                            return 1;
+                        case "deleteById": {
+                            Long id = (Long) args[0];
+                            return rows.values().removeIf(row -> row.getId().equals(id)) ? 1 : 0;
+                        }
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static MealStat month(String period, int days, long cents) {
+        MealStat stat = new MealStat();
+        stat.setPeriod(period);
+        stat.setDays(days);
+        stat.setTotalAmount(Money.ofCents(cents));
+        return stat;
+    }
+
+    private static MealStat copy(MealStat source) {
+        MealStat stat = new MealStat();
+        stat.setId(source.getId());
+        stat.setUserId(source.getUserId());
+        stat.setPeriod(source.getPeriod());
+        stat.setDays(source.getDays());
+        stat.setTotalAmount(source.getTotalAmount());
+        return stat;
+    }
+}
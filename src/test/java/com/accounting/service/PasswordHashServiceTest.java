@@ -0,0 +1,95 @@
+package com.accounting.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PasswordHashServiceTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private PasswordHashService service;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        service.shutdown();
+    }
+
+    @Test
+    void encodedPasswordMatches() {
+        service = newService(2, 4, 5000);
+
+        String hash = service.encode("secret");
+
+        assertTrue(service.matches("secret", hash));
+        assertFalse(service.matches("wrong", hash));
+        assertFalse(service.needsRehash(hash));
+        assertTrue(service.needsRehash(hash.replace("$04$", "$10$")));
+    }
+
+    @Test
+    void saturatedPoolRejectsImmediately() throws Exception {
+        service = newService(1, 1, 5000);
+        occupyWorkerAndQueue();
+
+        long start = System.nanoTime();
+        assertThrows(RejectedExecutionException.class, () -> service.matches("secret", "$2a$04$invalid"));
+        // 不等待哈希超时
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+    }
+
+    @Test
+    void queuedHashThatTimesOutIsRejected() throws Exception {
+        service = newService(1, 1, 100);
+        CountDownLatch started = new CountDownLatch(1);
+        service.rehashAsync("a", hash -> {
+            started.countDown();
+            await(release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertThrows(RejectedExecutionException.class, () -> service.encode("secret"));
+    }
+
+    /**
+     * 用阻塞的后台任务占满唯一的线程和队列
+     */
+    private void occupyWorkerAndQueue() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        service.rehashAsync("a", hash -> {
+            started.countDown();
+            await(release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        service.rehashAsync("b", hash -> await(release));
+    }
+
+    private static PasswordHashService newService(int threads, int queueCapacity, long timeoutMs) {
+        PasswordHashService service = new PasswordHashService();
+        ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+        // 最低cost，测试不在哈希计算上耗时
+        ReflectionTestUtils.setField(service, "strength", 4);
+        ReflectionTestUtils.setField(service, "threads", threads);
+        ReflectionTestUtils.setField(service, "queueCapacity", queueCapacity);
+        ReflectionTestUtils.setField(service, "timeoutMs", timeoutMs);
+        service.init();
+        return service;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.accounting.service;
+
+import com.accounting.entity.MealRecord;
+import com.accounting.redis.MealRecordsCodec;
+import com.accounting.redis.RedisNearCache;
+import com.accounting.redis.RedisValueStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 在真实Redis上执行各服务的Lua脚本；其他单元测试中的 InMemoryRedisTemplate 只按脚本文本模拟，
+ * 这里验证脚本本身的语义（续期阈值、代数比较、旧格式兼容等）。没有Docker时整个类跳过
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class RedisLuaScriptsTest {
+
+    private static final Long USER_ID = 7L;
+    private static final long DAY_SECONDS = TimeUnit.DAYS.toSeconds(1);
+
+    @Container
+    private static final GenericContainer<?> REDIS =
+            new GenericContainer<>(DockerImageName.parse("redis:7-alpine")).withExposedPorts(6379);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate redis;
+
+    @BeforeEach
+    void setUp() {
+        connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration(REDIS.getHost(), REDIS.getMappedPort(6379)));
+        connectionFactory.afterPropertiesSet();
+        redis = new StringRedisTemplate(connectionFactory);
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            connection.serverCommands().flushAll();
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        connectionFactory.destroy();
+    }
+
+    /**
+     * 续期脚本：剩余有效期高于阈值时不续期，低于阈值时续期token键；用户键只在仍指向该token时续期
+     */
+    @Test
+    void refreshOnlyExtendsLowTtlAndTheCurrentUserKey() {
+        JwtCacheService service = JwtCacheServiceTest.newService(redis, meterRegistry);
+        service.cacheToken("old", USER_ID, "tester");
+
+        assertTrue(service.refreshTokenCache("old", USER_ID));
+        assertEquals(0.0, refreshCount("performed"));
+        assertEquals(1.0, refreshCount("skipped"));
+
+        redis.expire("jwt_token:old", 100, TimeUnit.SECONDS);
+        redis.expire("user_token:" + USER_ID, 100, TimeUnit.SECONDS);
+        service.forgetRefresh(TokenLocalCache.hash("old"));
+        assertTrue(service.refreshTokenCache("old", USER_ID));
+        assertEquals(1.0, refreshCount("performed"));
+        assertTrue(redis.getExpire("jwt_token:old") > DAY_SECONDS - 60);
+        assertTrue(redis.getExpire("user_token:" + USER_ID) > DAY_SECONDS - 60);
+
+        // 重新登录后，旧token续期不再延长已指向新token的用户键
+        service.cacheToken("new", USER_ID, "tester");
+        redis.expire("jwt_token:old", 100, TimeUnit.SECONDS);
+        redis.expire("user_token:" + USER_ID, 100, TimeUnit.SECONDS);
+        service.forgetRefresh(TokenLocalCache.hash("old"));
+        assertTrue(service.refreshTokenCache("old", USER_ID));
+        assertTrue(redis.getExpire("jwt_token:old") > DAY_SECONDS - 60);
+        assertTrue(redis.getExpire("user_token:" + USER_ID) <= 100);
+
+        assertFalse(service.refreshTokenCache("missing", USER_ID));
+        assertEquals(1.0, refreshCount("missing"));
+    }
+
+    /**
+     * 吊销脚本兼容旧版本写入的带引号值，并且只删除仍指向该token的用户键
+     */
+    @Test
+    void revokeScriptsHandleLegacyQuotedValues() {
+        JwtCacheService service = JwtCacheServiceTest.newService(redis, meterRegistry);
+        redis.opsForValue().set("jwt_token:legacy", "\"7\"");
+        redis.opsForValue().set("user_token:" + USER_ID, "\"legacy\"");
+
+        service.removeToken("legacy");
+
+        assertFalse(redis.hasKey("jwt_token:legacy"));
+        assertFalse(redis.hasKey("user_token:" + USER_ID));
+
+        service.cacheToken("current", USER_ID, "tester");
+        redis.opsForValue().set("jwt_token:stale", "7");
+        service.removeToken("stale");
+        assertEquals("current", service.getUserToken(USER_ID));
+
+        service.removeUserTokens(USER_ID);
+        assertFalse(redis.hasKey("jwt_token:current"));
+        assertFalse(redis.hasKey("user_token:" + USER_ID));
+    }
+
+    /**
+     * 设置缓存：写回保留代数并写入加载标记，失效删除字段和标记并递增代数，租约用完即释放
+     */
+    @Test
+    void settingsLoadAndEvictMaintainGenerationAndLoadedMarker() {
+        UserSettingCache cache = newSettingsCache();
+        AtomicInteger loads = new AtomicInteger();
+        Map<String, String> database = new LinkedHashMap<>();
+        database.put("theme", "dark");
+        database.put("currency", "CNY");
+
+        assertEquals(database, cache.getAll(USER_ID, id -> load(loads, database)));
+        Map<Object, Object> hash = redis.opsForHash().entries(UserSettingCache.CACHE_PREFIX + USER_ID);
+        assertEquals("dark", hash.get("theme"));
+        assertEquals("0", hash.get("__gen__"));
+        assertTrue(hash.containsKey("__loaded__"));
+        assertTrue(redis.getExpire(UserSettingCache.CACHE_PREFIX + USER_ID) > 0);
+        assertFalse(redis.hasKey("user_settings_lease:" + USER_ID));
+
+        database.put("theme", "light");
+        cache.evict(USER_ID, "theme");
+        hash = redis.opsForHash().entries(UserSettingCache.CACHE_PREFIX + USER_ID);
+        assertEquals("1", hash.get("__gen__"));
+        assertFalse(hash.containsKey("theme"));
+        assertFalse(hash.containsKey("__loaded__"));
+        assertEquals("CNY", hash.get("currency"));
+
+        assertEquals("light", cache.get(USER_ID, "theme", id -> load(loads, database)));
+        assertEquals(2, loads.get());
+        assertEquals("1", redis.opsForHash().get(UserSettingCache.CACHE_PREFIX + USER_ID, "__gen__"));
+    }
+
+    /**
+     * 加载期间发生失效时代数已变化，写回脚本放弃写入；没有哈希时失效也留下带过期时间的代数
+     */
+    @Test
+    void settingsLoadOverlappingAnEvictionIsNotWrittenBack() {
+        UserSettingCache cache = newSettingsCache();
+        AtomicInteger loads = new AtomicInteger();
+        Map<String, String> database = new LinkedHashMap<>();
+        database.put("theme", "dark");
+
+        cache.getAll(USER_ID, id -> {
+            Map<String, String> stale = load(loads, database);
+            cache.evict(USER_ID, "theme");
+            return stale;
+        });
+
+        Map<Object, Object> hash = redis.opsForHash().entries(UserSettingCache.CACHE_PREFIX + USER_ID);
+        assertEquals(Collections.singletonMap("__gen__", "1"), hash);
+        assertTrue(redis.getExpire(UserSettingCache.CACHE_PREFIX + USER_ID) > 0);
+
+        cache.getAll(USER_ID, id -> load(loads, database));
+        assertEquals(2, loads.get());
+        assertTrue(redis.opsForHash().hasKey(UserSettingCache.CACHE_PREFIX + USER_ID, "__loaded__"));
+    }
+
+    /**
+     * 月快照：代数未变才写入，失效递增代数并删除快照，加载期间失效的结果不写回
+     */
+    @Test
+    void mealMonthSnapshotIsOnlyWrittenForTheObservedGeneration() {
+        MealMonthCache cache = newMealMonthCache();
+        YearMonth month = YearMonth.of(2024, 3);
+        String key = MealMonthCache.CACHE_PREFIX + USER_ID + ":" + month;
+        String generationKey = MealMonthCache.GENERATION_PREFIX + USER_ID + ":" + month;
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.getMonth(USER_ID, month, () -> month(loads));
+        assertTrue(redis.hasKey(key));
+        assertEquals(1, cache.getMonth(USER_ID, month, () -> month(loads)).size());
+        assertEquals(1, loads.get());
+
+        cache.evict(USER_ID, LocalDate.of(2024, 3, 5));
+        assertFalse(redis.hasKey(key));
+        assertEquals("1", redis.opsForValue().get(generationKey));
+        assertTrue(redis.getExpire(generationKey) > 0);
+
+        cache.getMonth(USER_ID, month, () -> {
+            cache.evict(USER_ID, LocalDate.of(2024, 3, 5));
+            return month(loads);
+        });
+        assertFalse(redis.hasKey(key));
+        assertEquals("2", redis.opsForValue().get(generationKey));
+
+        cache.getMonth(USER_ID, month, () -> month(loads));
+        assertTrue(redis.hasKey(key));
+        assertEquals(3, loads.get());
+        assertNull(redis.opsForValue().get(MealMonthCache.GENERATION_PREFIX + USER_ID + ":2024-04"));
+    }
+
+    private UserSettingCache newSettingsCache() {
+        return UserSettingCacheTest.newCache(redis, new RedisNearCache(false, 0, 100, 60, meterRegistry),
+                meterRegistry);
+    }
+
+    private MealMonthCache newMealMonthCache() {
+        MealMonthCache cache = new MealMonthCache();
+        ReflectionTestUtils.setField(cache, "stringRedisTemplate", redis);
+        ReflectionTestUtils.setField(cache, "redisValueStore",
+                new RedisValueStore(connectionFactory).register(MealMonthCache.CACHE_PREFIX, new MealRecordsCodec()));
+        ReflectionTestUtils.setField(cache, "meterRegistry", meterRegistry);
+        // 只使用Redis层，读取结果直接反映脚本写入的内容
+        ReflectionTestUtils.setField(cache, "localEnabled", false);
+        ReflectionTestUtils.setField(cache, "redisEnabled", true);
+        ReflectionTestUtils.setField(cache, "localMaximumSize", 100L);
+        ReflectionTestUtils.setField(cache, "localTtlSeconds", 600L);
+        ReflectionTestUtils.setField(cache, "redisTtlSeconds", 3600L);
+        cache.init();
+        return cache;
+    }
+
+    private double refreshCount(String result) {
+        return meterRegistry.get("jwt.token.refresh").tag("result", result).counter().count();
+    }
+
+    private static Map<String, String> load(AtomicInteger loads, Map<String, String> database) {
+        loads.incrementAndGet();
+        return new LinkedHashMap<>(database);
+    }
+
+    private static List<MealRecord> month(AtomicInteger loads) {
+        loads.incrementAndGet();
+        MealRecord record = new MealRecord();
+        record.setId(1L);
+        record.setUserId(USER_ID);
+        record.setRecordDate(LocalDate.of(2024, 3, 1));
+        record.setVersion(1);
+        return Collections.singletonList(record);
+    }
+}
@@ -0,0 +1,110 @@
+package com.accounting.service;
+
+import com.accounting.util.JwtPrincipal;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class TokenLocalCacheTest {
+
+    private StringRedisTemplate redisTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private TokenLocalCache cache;
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate = mock(StringRedisTemplate.class);
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new TokenLocalCache();
+        ReflectionTestUtils.setField(cache, "stringRedisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(cache, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(cache, "jwtCacheService", JwtCacheServiceTest.newService(redisTemplate, meterRegistry));
+        ReflectionTestUtils.setField(cache, "maximumSize", 100L);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 300L);
+        ReflectionTestUtils.setField(cache, "tokenLifetimeSeconds", 86400L);
+        ReflectionTestUtils.setField(cache, "revocationMaximumSize", 100L);
+        cache.init();
+    }
+
+    @Test
+    void invalidatedTokenIsRevokedAndBroadcast() {
+        JwtPrincipal principal = principal(1L, Instant.now());
+        cache.put("token-a", principal);
+
+        cache.invalidate("token-a");
+
+        assertNull(cache.get("token-a"));
+        assertTrue(cache.isRevoked("token-a", principal));
+        assertFalse(cache.isRevoked("token-b", principal));
+        verify(redisTemplate).convertAndSend(TokenLocalCache.REVOKE_CHANNEL, "t:" + hash("token-a"));
+    }
+
+    @Test
+    void tokenRevokedOnAnotherNodeIsRejected() {
+        JwtPrincipal principal = principal(1L, Instant.now());
+        cache.put("token-a", principal);
+
+        cache.onMessage(message("t:" + hash("token-a")), null);
+
+        assertNull(cache.get("token-a"));
+        assertTrue(cache.isRevoked("token-a", principal));
+    }
+
+    @Test
+    void userRevocationRejectsOnlyEarlierTokens() {
+        JwtPrincipal before = principal(1L, Instant.now().minus(1, ChronoUnit.MINUTES));
+        JwtPrincipal otherUser = principal(2L, Instant.now().minus(1, ChronoUnit.MINUTES));
+
+        cache.onMessage(message("u:1"), null);
+        JwtPrincipal after = principal(1L, Instant.now().plus(1, ChronoUnit.SECONDS));
+
+        assertTrue(cache.isRevoked("token-a", before));
+        assertFalse(cache.isRevoked("token-b", after));
+        assertFalse(cache.isRevoked("token-c", otherUser));
+    }
+
+    @Test
+    void degradedModeUsesTheSameRevocationList() {
+        JwtPrincipal principal = principal(1L, Instant.now());
+        cache.invalidate("token-a");
+
+        assertFalse(cache.acceptWithoutRedis("token-a", principal));
+        assertTrue(cache.acceptWithoutRedis("token-b", principal));
+        assertEquals(1.0, meterRegistry.counter("jwt.token.degraded", "result", "revoked").count());
+        assertEquals(1.0, meterRegistry.counter("jwt.token.degraded", "result", "accepted").count());
+    }
+
+    private static JwtPrincipal principal(Long userId, Instant issuedAt) {
+        return new JwtPrincipal(userId, "user" + userId, issuedAt, issuedAt.plus(1, ChronoUnit.HOURS));
+    }
+
+    private static DefaultMessage message(String body) {
+        return new DefaultMessage(TokenLocalCache.REVOKE_CHANNEL.getBytes(StandardCharsets.UTF_8),
+                body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String hash(String token) {
+        try {
+            byte[] bytes = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.accounting.service;
+
+import com.accounting.entity.User;
+import com.accounting.mapper.UserMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class UserCacheTest {
+
+    private static final String HASH = "$2a$10$abcdefghijklmnopqrstuv0123456789ABCDEFGHIJKLMNOPQRSTU";
+
+    private final AtomicInteger selectById = new AtomicInteger();
+    private final AtomicInteger selectOne = new AtomicInteger();
+
+    private InMemoryRedisTemplate redis;
+    private UserMapper userMapper;
+
+    @BeforeEach
+    void setUp() {
+        redis = new InMemoryRedisTemplate();
+        userMapper = (UserMapper) Proxy.newProxyInstance(UserMapper.class.getClassLoader(),
+                new Class<?>[]{UserMapper.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "selectById":
+                            selectById.incrementAndGet();
+                            return user();
+                        case "selectOne":
+                            selectOne.incrementAndGet();
+                            return user();
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    @Test
+    void passwordHashIsNeverWrittenToRedis() {
+        UserCache cache = newCache();
+
+        User loaded = cache.getByUsername("alice");
+
+        assertNull(loaded.getPassword());
+        Map<Object, Object> cached = redis.hash("user:id:42");
+        assertEquals("alice", cached.get("username"));
+        assertFalse(cached.containsKey("password"));
+        // 哈希和用户名索引由同一个脚本写入
+        assertEquals("42", redis.value("user:name:alice"));
+    }
+
+    @Test
+    void loginReusesHashKeptInLocalTier() {
+        UserCache cache = newCache();
+        cache.getByUsername("alice");
+
+        assertEquals(HASH, cache.getForLogin("alice").getPassword());
+        assertEquals(1, selectOne.get());
+        assertEquals(0, selectById.get());
+    }
+
+    @Test
+    void loginOnAnotherNodeLoadsHashFromDatabase() {
+        newCache().getByUsername("alice");
+        UserCache otherNode = newCache();
+
+        // 资料取自Redis，哈希按ID查询数据库，之后由本地层提供
+        assertEquals(HASH, otherNode.getForLogin("alice").getPassword());
+        assertEquals(HASH, otherNode.getForLogin("alice").getPassword());
+        assertEquals(1, selectOne.get());
+        assertEquals(1, selectById.get());
+        assertNull(otherNode.getById(42L).getPassword());
+    }
+
+    private UserCache newCache() {
+        UserCache cache = new UserCache();
+        ReflectionTestUtils.setField(cache, "userMapper", userMapper);
+        ReflectionTestUtils.setField(cache, "stringRedisTemplate", redis);
+        ReflectionTestUtils.setField(cache, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(cache, "localMaximumSize", 100L);
+        ReflectionTestUtils.setField(cache, "localTtlSeconds", 600L);
+        ReflectionTestUtils.setField(cache, "redisTtlHours", 24L);
+        ReflectionTestUtils.setField(cache, "negativeTtlSeconds", 300L);
+        cache.init();
+        return cache;
+    }
+
+    private static User user() {
+        User user = new User("alice", HASH);
+        user.setId(42L);
+        return user;
+    }
+}
@@ -0,0 +1,286 @@
+package com.accounting.service;
+
+import com.accounting.redis.RedisNearCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserSettingCacheTest {
+
+    private static final Long USER_ID = 42L;
+
+    private InMemoryRedisTemplate redis;
+    private SimpleMeterRegistry meterRegistry;
+    private UserSettingCache cache;
+
+    @BeforeEach
+    void setUp() {
+        redis = new InMemoryRedisTemplate();
+        meterRegistry = new SimpleMeterRegistry();
+        cache = newCache(redis, new RedisNearCache(false, 0, 100, 60, meterRegistry), meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cache.shutdown();
+    }
+
+    @Test
+    void concurrentColdReadsLoadFromDatabaseOnce() throws Exception {
+        int requests = 500;
+        AtomicInteger queries = new AtomicInteger();
+        Function<Long, Map<String, String>> loader = userId -> {
+            queries.incrementAndGet();
+            sleep(20);
+            return Collections.singletonMap("theme", "dark");
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(requests);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Map<String, String>>> results = new ArrayList<>(requests);
+        try {
+            for (int i = 0; i < requests; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return cache.getAll(USER_ID, loader);
+                }));
+            }
+            start.countDown();
+            for (Future<Map<String, String>> result : results) {
+                assertEquals("dark", result.get(10, TimeUnit.SECONDS).get("theme"));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, queries.get());
+        assertEquals(1.0, meterRegistry.counter("user.settings.cache.load").count());
+    }
+
+    @Test
+    void lateLoaderReusesResultWrittenAfterItsRead() throws Exception {
+        AtomicInteger queries = new AtomicInteger();
+        Function<Long, Map<String, String>> loader = userId -> {
+            queries.incrementAndGet();
+            return Collections.singletonMap("theme", "dark");
+        };
+        CountDownLatch missed = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        // 第一个请求读到空哈希后暂停，等另一个请求加载并释放租约后再继续
+        redis.afterHashRead(readNumber -> {
+            if (readNumber == 1) {
+                missed.countDown();
+                await(resume);
+            }
+        });
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Map<String, String>> late = executor.submit(() -> cache.getAll(USER_ID, loader));
+            assertTrue(missed.await(5, TimeUnit.SECONDS));
+            assertEquals("dark", cache.getAll(USER_ID, loader).get("theme"));
+            resume.countDown();
+            assertEquals("dark", late.get(5, TimeUnit.SECONDS).get("theme"));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, queries.get());
+        assertEquals(1.0, meterRegistry.counter("user.settings.cache.load").count());
+    }
+
+    @Test
+    void loadedHashIsServedWithoutQueryingAgain() {
+        AtomicInteger queries = new AtomicInteger();
+        Function<Long, Map<String, String>> loader = userId -> {
+            queries.incrementAndGet();
+            return Collections.singletonMap("theme", "dark");
+        };
+
+        cache.getAll(USER_ID, loader);
+        assertEquals("dark", cache.get(USER_ID, "theme", loader));
+        assertEquals("dark", cache.getAll(USER_ID, loader).get("theme"));
+
+        assertEquals(1, queries.get());
+    }
+
+    /**
+     * 加载读取数据库之后、写回之前有保存：失效使该次加载放弃写回，下次读取重新加载新值
+     */
+    @Test
+    void saveDuringLoadIsNotOverwrittenByStaleResult() throws Exception {
+        Map<String, String> database = new ConcurrentHashMap<>(Collections.singletonMap("theme", "dark"));
+        CountDownLatch queried = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        AtomicInteger queries = new AtomicInteger();
+        Function<Long, Map<String, String>> loader = userId -> {
+            Map<String, String> snapshot = new LinkedHashMap<>(database);
+            if (queries.incrementAndGet() == 1) {
+                queried.countDown();
+                await(resume);
+            }
+            return snapshot;
+        };
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Map<String, String>> stale = executor.submit(() -> cache.getAll(USER_ID, loader));
+            assertTrue(queried.await(5, TimeUnit.SECONDS));
+            // 保存：先写数据库，再失效缓存
+            database.put("theme", "light");
+            cache.evict(USER_ID, "theme");
+            resume.countDown();
+            assertEquals("dark", stale.get(5, TimeUnit.SECONDS).get("theme"));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals("light", cache.get(USER_ID, "theme", loader));
+        assertEquals(2, queries.get());
+    }
+
+    /**
+     * __loaded__、__gen__ 是哈希中的元数据字段：不能作为设置读取或失效，数据库中的同名历史数据不写入缓存
+     */
+    @Test
+    void reservedFieldsAreNotSettings() {
+        Map<String, String> database = new LinkedHashMap<>();
+        database.put("theme", "dark");
+        database.put("__gen__", "7");
+        Function<Long, Map<String, String>> loader = userId -> new LinkedHashMap<>(database);
+
+        assertEquals(Collections.singletonMap("theme", "dark"), cache.getAll(USER_ID, loader));
+        assertEquals("0", redis.hash("user_settings:42").get("__gen__"));
+        assertNull(cache.get(USER_ID, "__gen__", loader));
+        assertNull(cache.get(USER_ID, "__loaded__", loader));
+        assertThrows(IllegalArgumentException.class, () -> cache.evict(USER_ID, "__gen__"));
+        assertTrue(UserSettingCache.isReservedKey("__loaded__"));
+        assertFalse(UserSettingCache.isReservedKey("theme"));
+    }
+
+    @Test
+    void nearCachesOnTwoNodesStayCoherent() {
+        SimpleMeterRegistry registryA = new SimpleMeterRegistry();
+        SimpleMeterRegistry registryB = new SimpleMeterRegistry();
+        RedisNearCache nearA = new RedisNearCache(true, 0, 100, 60, registryA).register(UserSettingCache.CACHE_PREFIX);
+        RedisNearCache nearB = new RedisNearCache(true, 0, 100, 60, registryB).register(UserSettingCache.CACHE_PREFIX);
+        redis.addKeyspaceListener(nearA);
+        redis.addKeyspaceListener(nearB);
+        UserSettingCache nodeA = newCache(redis, nearA, registryA);
+        UserSettingCache nodeB = newCache(redis, nearB, registryB);
+        Map<String, String> database = new ConcurrentHashMap<>(Collections.singletonMap("theme", "dark"));
+        Function<Long, Map<String, String>> loader = userId -> new LinkedHashMap<>(database);
+        try {
+            assertEquals("dark", nodeB.get(USER_ID, "theme", loader));
+            assertEquals("dark", nodeB.get(USER_ID, "theme", loader));
+            int reads = redis.hashReads();
+            // 节点B已有本地副本，不再访问Redis
+            assertEquals("dark", nodeB.get(USER_ID, "theme", loader));
+            assertEquals(reads, redis.hashReads());
+
+            database.put("theme", "light");
+            nodeA.evict(USER_ID, "theme");
+
+            // 节点A的失效经键空间通知使节点B的副本失效
+            assertEquals("light", nodeB.get(USER_ID, "theme", loader));
+            assertEquals("light", nodeA.get(USER_ID, "theme", loader));
+            assertEquals("light", nodeB.getAll(USER_ID, loader).get("theme"));
+        } finally {
+            nodeA.shutdown();
+            nodeB.shutdown();
+        }
+    }
+
+    /**
+     * 近端缓存中的本地副本同样含有元数据字段：保留字段不从副本中读取，被拒绝的失效也不写Redis，
+     * 因而不会发出键空间通知使其他节点的副本失效
+     */
+    @Test
+    void reservedFieldsOnNearCachePathNeitherReadMetadataNorInvalidateOtherNodes() {
+        SimpleMeterRegistry registryA = new SimpleMeterRegistry();
+        SimpleMeterRegistry registryB = new SimpleMeterRegistry();
+        RedisNearCache nearA = new RedisNearCache(true, 0, 100, 60, registryA).register(UserSettingCache.CACHE_PREFIX);
+        RedisNearCache nearB = new RedisNearCache(true, 0, 100, 60, registryB).register(UserSettingCache.CACHE_PREFIX);
+        redis.addKeyspaceListener(nearA);
+        redis.addKeyspaceListener(nearB);
+        UserSettingCache nodeA = newCache(redis, nearA, registryA);
+        UserSettingCache nodeB = newCache(redis, nearB, registryB);
+        Function<Long, Map<String, String>> loader = userId -> Collections.singletonMap("theme", "dark");
+        try {
+            assertEquals("dark", nodeB.get(USER_ID, "theme", loader));
+            assertEquals("dark", nodeB.get(USER_ID, "theme", loader));
+            int reads = redis.hashReads();
+            double invalidations = registryB.get("redis.near.invalidations").counter().count();
+
+            assertNull(nodeB.get(USER_ID, "__gen__", loader));
+            assertNull(nodeB.get(USER_ID, "__loaded__", loader));
+            assertThrows(IllegalArgumentException.class, () -> nodeA.evict(USER_ID, "__loaded__"));
+
+            // 节点B的副本仍然有效，没有再访问Redis
+            assertEquals("dark", nodeB.get(USER_ID, "theme", loader));
+            assertEquals(reads, redis.hashReads());
+            assertEquals(invalidations, registryB.get("redis.near.invalidations").counter().count());
+        } finally {
+            nodeA.shutdown();
+            nodeB.shutdown();
+        }
+    }
+
+    static UserSettingCache newCache(StringRedisTemplate redis, RedisNearCache nearCache,
+                                     SimpleMeterRegistry meterRegistry) {
+        UserSettingCache cache = new UserSettingCache();
+        ReflectionTestUtils.setField(cache, "stringRedisTemplate", redis);
+        ReflectionTestUtils.setField(cache, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(cache, "redisNearCache", nearCache);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 86400L);
+        ReflectionTestUtils.setField(cache, "staleWhileRevalidate", true);
+        ReflectionTestUtils.setField(cache, "staleSeconds", 3600L);
+        // 关闭提前刷新，测试结果不受随机数影响
+        ReflectionTestUtils.setField(cache, "earlyExpirationBeta", 0.0);
+        ReflectionTestUtils.setField(cache, "leaseMs", 3000L);
+        ReflectionTestUtils.setField(cache, "leaseWaitMs", 2000L);
+        ReflectionTestUtils.setField(cache, "refreshThreads", 1);
+        ReflectionTestUtils.setField(cache, "fallbackMaximumSize", 100L);
+        cache.init();
+        return cache;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.accounting.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ETagsTest {
+
+    @Test
+    void recordTagIncludesIdAndVersion() {
+        assertEquals("\"12.3\"", ETags.of(12L, 3));
+        assertEquals("\"12.0\"", ETags.of(12L, null));
+    }
+
+    @Test
+    void matchesListsAndWildcard() {
+        String current = ETags.of(12L, 3);
+
+        assertTrue(ETags.matches("\"12.3\"", current));
+        assertTrue(ETags.matches("\"12.2\", \"12.3\"", current));
+        assertTrue(ETags.matches("*", current));
+        assertFalse(ETags.matches("\"12.2\"", current));
+        // 删除后重新创建的同日记录版本号从0开始，ID不同
+        assertFalse(ETags.matches("\"11.3\"", current));
+    }
+
+    /**
+     * If-Match 使用强比较，弱ETag不匹配；If-None-Match 使用弱比较
+     */
+    @Test
+    void weakTagsOnlyMatchWeakComparison() {
+        String current = ETags.of(12L, 3);
+
+        assertFalse(ETags.matches("W/\"12.3\"", current));
+        assertTrue(ETags.matches("W/\"12.3\", \"12.3\"", current));
+        assertTrue(ETags.matchesWeak("W/\"12.3\"", current));
+        assertTrue(ETags.matchesWeak("\"12.3\"", current));
+        assertFalse(ETags.matchesWeak("W/\"12.2\"", current));
+    }
+
+    @Test
+    void contentTagIsStableDigest() {
+        String etag = ETags.ofContent("2024-03-01,2024-03-02");
+
+        assertTrue(etag.matches("\"[0-9a-f]{16}\""));
+        assertEquals(etag, ETags.ofContent("2024-03-01,2024-03-02"));
+        assertNotEquals(etag, ETags.ofContent("2024-03-01"));
+        assertEquals("\"e3b0c44298fc1c14\"", ETags.ofContent(""));
+    }
+
+    @Test
+    void nothingMatchesMissingResource() {
+        assertFalse(ETags.matches("*", null));
+        assertFalse(ETags.matches("\"12.3\"", null));
+        assertFalse(ETags.matches("*", ETags.NONE));
+        assertFalse(ETags.matchesWeak("*", ETags.NONE));
+        // 客户端缓存的"不存在"结果仍可按ETag验证
+        assertTrue(ETags.matchesWeak(ETags.NONE, ETags.NONE));
+    }
+}
@@ -0,0 +1,155 @@
+package com.accounting.util;
+
+import com.accounting.redis.RedisCircuitOpenException;
+import com.accounting.service.JwtCacheService;
+import com.accounting.service.TokenLocalCache;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class JwtUtilTest {
+
+    @Mock
+    private JwtCacheService jwtCacheService;
+
+    @Mock
+    private TokenLocalCache tokenLocalCache;
+
+    @InjectMocks
+    private JwtUtil jwtUtil;
+
+    @Test
+    void acceptsTokenPresentInRedis() {
+        String token = jwtUtil.generateToken("alice", 1L);
+        when(jwtCacheService.refreshTokenCache(token, 1L)).thenReturn(true);
+
+        JwtPrincipal principal = jwtUtil.verifyToken(token);
+
+        assertNotNull(principal);
+        assertEquals(1L, principal.getUserId());
+        verify(tokenLocalCache).put(token, principal);
+    }
+
+    @Test
+    void rejectsLoggedOutTokenWithoutRecaching() {
+        String token = jwtUtil.generateToken("alice", 1L);
+        jwtUtil.logout(token);
+        // 登出后Redis中已没有该token
+        when(jwtCacheService.refreshTokenCache(token, 1L)).thenReturn(false);
+
+        assertNull(jwtUtil.verifyToken(token));
+        verify(jwtCacheService).removeToken(token);
+        verify(tokenLocalCache).invalidate(token);
+        verify(tokenLocalCache, never()).put(anyString(), any());
+    }
+
+    @Test
+    void rejectsForceLoggedOutTokenWithoutRecaching() {
+        String token = jwtUtil.generateToken("alice", 1L);
+        jwtUtil.forceLogout(1L);
+        when(jwtCacheService.refreshTokenCache(token, 1L)).thenReturn(false);
+
+        assertNull(jwtUtil.verifyToken(token));
+        // 只有签发时写入一次
+        verify(jwtCacheService).cacheToken(anyString(), anyLong(), anyString());
+    }
+
+    /**
+     * Redis熔断时仅验签接受，但不写入本地缓存，恢复后重新走完整校验
+     */
+    @Test
+    void acceptsWithoutRedisWhileCircuitIsOpenWithoutCaching() {
+        String token = jwtUtil.generateToken("alice", 1L);
+        when(jwtCacheService.refreshTokenCache(token, 1L)).thenThrow(new RedisCircuitOpenException());
+        when(tokenLocalCache.acceptWithoutRedis(anyString(), any())).thenReturn(true);
+
+        JwtPrincipal principal = jwtUtil.verifyToken(token);
+
+        assertNotNull(principal);
+        assertEquals(1L, principal.getUserId());
+        verify(tokenLocalCache).acceptWithoutRedis(token, principal);
+        verify(tokenLocalCache, never()).put(anyString(), any());
+    }
+
+    @Test
+    void rejectsTokenRevokedLocallyWhileCircuitIsOpen() {
+        String token = jwtUtil.generateToken("alice", 1L);
+        when(jwtCacheService.refreshTokenCache(token, 1L)).thenThrow(new RedisCircuitOpenException());
+        when(tokenLocalCache.acceptWithoutRedis(anyString(), any())).thenReturn(false);
+
+        assertNull(jwtUtil.verifyToken(token));
+        verify(tokenLocalCache, never()).put(anyString(), any());
+    }
+
+    /**
+     * 命令本身的错误不是Redis不可用，不降级
+     */
+    @Test
+    void commandErrorsAreNotTreatedAsRedisDown() {
+        String token = jwtUtil.generateToken("alice", 1L);
+        when(jwtCacheService.refreshTokenCache(token, 1L)).thenThrow(new IllegalStateException("WRONGTYPE"));
+
+        assertNull(jwtUtil.verifyToken(token));
+        verify(tokenLocalCache, never()).acceptWithoutRedis(anyString(), any());
+        verify(tokenLocalCache, never()).put(anyString(), any());
+    }
+
+    @Test
+    void rejectsLocallyRevokedTokenBeforeRedis() {
+        String token = jwtUtil.generateToken("alice", 1L);
+        when(tokenLocalCache.isRevoked(anyString(), any())).thenReturn(true);
+
+        assertNull(jwtUtil.verifyToken(token));
+        verify(jwtCacheService, never()).refreshTokenCache(anyString(), anyLong());
+    }
+
+    @Test
+    void rejectsTamperedToken() {
+        String token = jwtUtil.generateToken("alice", 1L);
+
+        assertNull(jwtUtil.verifyToken(token + "x"));
+        verify(jwtCacheService, never()).refreshTokenCache(anyString(), anyLong());
+    }
+
+    @Test
+    void parseTokenReadsAllClaimsAtOnce() {
+        Instant before = Instant.now().minusSeconds(1);
+        String token = jwtUtil.generateToken("alice", 1L);
+
+        JwtPrincipal principal = jwtUtil.parseToken(token);
+
+        assertEquals(1L, principal.getUserId());
+        assertEquals("alice", principal.getUsername());
+        assertFalse(principal.getIssuedAt().isBefore(before.truncatedTo(ChronoUnit.SECONDS)));
+        assertEquals(principal.getIssuedAt().plus(24, ChronoUnit.HOURS), principal.getExpiresAt());
+        assertFalse(principal.isExpired());
+    }
+
+    @Test
+    void locallyCachedPrincipalIsReturnedWithoutParsing() {
+        JwtPrincipal cached = new JwtPrincipal(1L, "alice", Instant.now(), Instant.now().plusSeconds(60));
+        // 不是合法的JWT：命中本地缓存时不会再解析
+        when(tokenLocalCache.get("opaque")).thenReturn(cached);
+
+        assertSame(cached, jwtUtil.verifyToken("opaque"));
+        verify(jwtCacheService, never()).refreshTokenCache(anyString(), anyLong());
+    }
+}
@@ -0,0 +1,105 @@
+package com.accounting.util;
+
+import com.accounting.dto.MealRecordRequest;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MealRecordValidatorTest {
+
+    private static final LocalDate DATE = LocalDate.of(2024, 3, 1);
+
+    @Test
+    void acceptsValidRequest() {
+        MealRecordRequest request = request(DATE);
+        request.setLunch(Money.ZERO);
+        request.setCustomItems(customItems(repeat('项', MealRecordValidator.MAX_ITEM_NAME_LENGTH), Money.ofCents(100)));
+
+        assertDoesNotThrow(() -> MealRecordValidator.validate(request));
+    }
+
+    @Test
+    void rejectsInvalidRequest() {
+        assertMessage("请求数据不能为空", () -> MealRecordValidator.validate(null));
+        assertMessage("记录日期不能为空", () -> MealRecordValidator.validate(request(null)));
+
+        MealRecordRequest negative = request(DATE);
+        negative.setDrink(Money.ofCents(-1));
+        assertMessage("金额不能为负数", () -> MealRecordValidator.validate(negative));
+
+        MealRecordRequest longName = request(DATE);
+        longName.setCustomItems(customItems(repeat('项', MealRecordValidator.MAX_ITEM_NAME_LENGTH + 1), Money.ZERO));
+        assertMessage("动态项目名称不能为空且不能超过50个字符", () -> MealRecordValidator.validate(longName));
+
+        MealRecordRequest blankName = request(DATE);
+        blankName.setCustomItems(customItems("  ", Money.ZERO));
+        assertMessage("动态项目名称不能为空且不能超过50个字符", () -> MealRecordValidator.validate(blankName));
+
+        MealRecordRequest negativeItem = request(DATE);
+        negativeItem.setCustomItems(customItems("水果", Money.ofCents(-100)));
+        assertMessage("动态项目 \"水果\" 的金额不能为负数", () -> MealRecordValidator.validate(negativeItem));
+    }
+
+    @Test
+    void batchRejectsEmptyOversizedAndDuplicateDates() {
+        assertMessage("请求数据不能为空", () -> MealRecordValidator.validateBatch(null));
+        assertMessage("请求数据不能为空", () -> MealRecordValidator.validateBatch(Collections.emptyList()));
+
+        List<MealRecordRequest> oversized = new ArrayList<>();
+        for (int i = 0; i <= MealRecordValidator.MAX_BATCH_SIZE; i++) {
+            oversized.add(request(DATE.plusDays(i)));
+        }
+        assertMessage("单次最多保存366天的记录", () -> MealRecordValidator.validateBatch(oversized));
+        assertDoesNotThrow(() -> MealRecordValidator.validateBatch(oversized.subList(0, MealRecordValidator.MAX_BATCH_SIZE)));
+
+        assertMessage("第3条: 日期 2024-03-01 重复", () -> MealRecordValidator.validateBatch(
+                Arrays.asList(request(DATE), request(DATE.plusDays(1)), request(DATE))));
+    }
+
+    /**
+     * 批量中任一条不合法时带序号整批拒绝
+     */
+    @Test
+    void batchReportsPositionOfInvalidRequest() {
+        MealRecordRequest negative = request(DATE.plusDays(1));
+        negative.setBreakfast(Money.ofCents(-5));
+
+        assertMessage("第2条: 金额不能为负数", () -> MealRecordValidator.validateBatch(
+                Arrays.asList(request(DATE), negative)));
+        assertMessage("第1条: 请求数据不能为空", () -> MealRecordValidator.validateBatch(
+                Collections.singletonList(null)));
+    }
+
+    private static void assertMessage(String message, Runnable validation) {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, validation::run);
+        assertEquals(message, e.getMessage());
+    }
+
+    private static MealRecordRequest request(LocalDate date) {
+        MealRecordRequest request = new MealRecordRequest();
+        request.setRecordDate(date);
+        return request;
+    }
+
+    private static Map<String, Money> customItems(String name, Money amount) {
+        Map<String, Money> items = new LinkedHashMap<>();
+        items.put(name, amount);
+        return items;
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
@@ -0,0 +1,67 @@
+package com.accounting.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.InvalidFormatException;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MoneyTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void roundsToCentsHalfUp() {
+        assertEquals(1235, Money.of(new BigDecimal("12.345")).getCents());
+        assertEquals(-1235, Money.of(new BigDecimal("-12.345")).getCents());
+        assertEquals(1200, Money.of(new BigDecimal("12")).getCents());
+        assertSame(Money.ZERO, Money.of(new BigDecimal("0.004")));
+    }
+
+    @Test
+    void alwaysConvertsToScaleTwo() {
+        assertEquals(new BigDecimal("12.00"), Money.ofCents(1200).toBigDecimal());
+        assertEquals(2, Money.ZERO.toBigDecimal().scale());
+        assertEquals("-0.05", Money.ofCents(-5).toString());
+    }
+
+    /**
+     * 与 BigDecimal.divide(n, 2, HALF_UP) 的结果逐一比较，覆盖正负数和恰好一半的余数
+     */
+    @Test
+    void divideMatchesBigDecimalHalfUp() {
+        for (long cents = -1000; cents <= 1000; cents += 7) {
+            for (long divisor : new long[]{1, 2, 3, 4, 7, 31, -3}) {
+                BigDecimal expected = BigDecimal.valueOf(cents, 2)
+                        .divide(BigDecimal.valueOf(divisor), 2, RoundingMode.HALF_UP);
+                assertEquals(expected, Money.ofCents(cents).divide(divisor).toBigDecimal(),
+                        cents + " / " + divisor);
+            }
+        }
+    }
+
+    @Test
+    void arithmeticOverflowThrows() {
+        assertThrows(ArithmeticException.class, () -> Money.ofCents(Long.MAX_VALUE).plus(Money.ofCents(1)));
+        assertEquals(Money.ofCents(300), Money.ofCents(300).plus(null));
+    }
+
+    @Test
+    void jsonUsesTwoDecimalNumbers() throws Exception {
+        assertEquals("12.50", objectMapper.writeValueAsString(Money.ofCents(1250)));
+        assertEquals("0.00", objectMapper.writeValueAsString(Money.ZERO));
+
+        assertEquals(Money.ofCents(1250), objectMapper.readValue("12.5", Money.class));
+        assertEquals(Money.ofCents(1235), objectMapper.readValue("12.345", Money.class));
+        assertEquals(Money.ofCents(700), objectMapper.readValue("7", Money.class));
+        assertEquals(Money.ofCents(1250), objectMapper.readValue("\" 12.50 \"", Money.class));
+        assertNull(objectMapper.readValue("\"\"", Money.class));
+        assertThrows(InvalidFormatException.class, () -> objectMapper.readValue("\"abc\"", Money.class));
+    }
+}